@@ -0,0 +1,104 @@
+/*
+ * AbstractDictionary.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl
+ */
+
+import java.util.*;
+
+/**
+ * A skeleton {@link Dictionary} that implements the bulk operations and the traversals with the single-key ones.
+ * Implementations that can do better, for instance by resizing once per batch or by walking their own storage,
+ * override them.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public abstract class AbstractDictionary<K extends Comparable<K>, V> implements Dictionary<K, V> {
+    public void putAll(Map<? extends K, ? extends V> m) throws NullPointerException {
+        checkEntries(m);
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+    
+    public Map<K, V> getAll(Collection<? extends K> keys) throws NullPointerException {
+        Map<K, V> found = new HashMap<K, V>();
+        for (K key : keys) {
+            V val = get(key);
+            if (val != null)
+                found.put(key, val);
+        }
+        return found;
+    }
+    
+    public int deleteAll(Collection<? extends K> keys) throws NullPointerException {
+        checkKeys(keys);
+        int deleted = 0;
+        for (K key : keys)
+            if (delete(key) != null)
+                deleted++;
+        return deleted;
+    }
+    
+    /**
+     * Looks up each key of {@link #getAllKeys()}. Skips keys that are deleted along the way, which only happens if
+     * another thread deletes them.
+     */
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (K key : getAllKeys()) {
+            V val = get(key);
+            if (val != null)
+                visitor.visit(key, val);
+        }
+    }
+    
+    /**
+     * Looks up each key of {@link #getAllKeys()} as it goes.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+        final Iterator<K> keys = getAllKeys().iterator();
+        return new Iterator<Map.Entry<K, V>>() {
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+            
+            public Map.Entry<K, V> next() {
+                K key = keys.next();
+                return new AbstractMap.SimpleImmutableEntry<K, V>(key, get(key));
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    /**
+     * Checks a batch for null keys or values before any of it is stored.
+     * 
+     * @param m the batch
+     * @throws NullPointerException if any key or value is null
+     */
+    static void checkEntries(Map<?, ?> m) throws NullPointerException {
+        for (Map.Entry<?, ?> e : m.entrySet()) {
+            if (e.getKey() == null)
+                throw new NullPointerException("Key is not allowed to be null");
+            if (e.getValue() == null)
+                throw new NullPointerException("Value is not allowed to be null");
+        }
+    }
+    
+    /**
+     * Checks a batch for null keys before any of it is deleted.
+     * 
+     * @param keys the batch
+     * @throws NullPointerException if any key is null
+     */
+    static void checkKeys(Collection<?> keys) throws NullPointerException {
+        for (Object key : keys)
+            if (key == null)
+                throw new NullPointerException("Key is not allowed to be null");
+    }
+}
@@ -0,0 +1,685 @@
+/*
+ * BPlusTree.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+
+/**
+ * An in-memory B+ tree.
+ * <p>
+ * Every node holds up to {@code fanout} keys in a sorted array, so a lookup reads a few wide nodes, binary searching
+ * each one, instead of chasing a pointer per comparison as {@link RedBlackTree} does. The mappings are all in the
+ * leaves, which are linked left to right, so ordered scans walk along arrays. Inner nodes hold only copies of keys to
+ * steer by; a key may stay in an inner node after it's deleted from the leaves, which does no harm.
+ * <p>
+ * Every node but the root holds at least {@code fanout / 2} keys. A node that gets too full splits in two; one that
+ * gets too empty borrows a key from a sibling or, if neither sibling can spare one, merges with one.
+ * <p>
+ * Like the red-black tree, it answers {@link #min()}, {@link #max()}, {@link #floor(Comparable)} and
+ * {@link #ceiling(Comparable)}, and {@link #range(Comparable, Comparable)} and {@link #cursor(Comparable, Comparable)}
+ * in O(log n + k) for k keys. {@code forEach} and the iterator visit the keys in order.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class BPlusTree<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+    final static int DEF_FANOUT = 64;
+    
+    private final int fanout; // the most keys a node holds
+    private final int minKeys; // the fewest keys a node other than the root holds
+    
+    private Node root;
+    private Leaf first; // the leftmost leaf; never changes, since splits and merges keep the left node
+    private int size;
+    private int modCount; // the number of keys added or removed, so cursors can tell the tree has changed
+    
+    // Set by insert and remove on the way back up.
+    private V oldValue; // the value replaced or removed
+    private Object splitKey; // the smallest key of the node a split made, for the parent to steer by
+    
+    /**
+     * Makes a new B+ tree whose nodes hold up to {@code fanout} keys.
+     * 
+     * @param fanout the most keys a node holds
+     * @throws IllegalArgumentException if {@code fanout} is less than 3
+     */
+    public BPlusTree(int fanout) throws IllegalArgumentException {
+        if (fanout < 3)
+            throw new IllegalArgumentException("Illegal fanout: " + fanout);
+        
+        this.fanout = fanout;
+        minKeys = fanout / 2;
+        clear();
+    }
+    
+    public BPlusTree() {
+        this(DEF_FANOUT);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public V get(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        Leaf leaf = leafFor(key);
+        int i = search(leaf, key);
+        return i >= 0 ? (V) leaf.vals[i] : null;
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        return get(key) != null;
+    }
+    
+    public boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next)
+            for (int i = 0; i < leaf.n; i++)
+                if (value.equals(leaf.vals[i]))
+                    return true;
+        return false;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public Set<K> getAllKeys() {
+        Set<K> keys = new HashSet<K>(size);
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next)
+            for (int i = 0; i < leaf.n; i++)
+                keys.add((K) leaf.keys[i]);
+        return keys;
+    }
+    
+    /**
+     * Visits the entries in order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next)
+            for (int i = 0; i < leaf.n; i++)
+                visitor.visit((K) leaf.keys[i], (V) leaf.vals[i]);
+    }
+    
+    /**
+     * Iterates over the entries in order. The leaves don't hold entry objects, so it makes one for each mapping.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+        final Cursor c = cursor();
+        return new Iterator<Map.Entry<K, V>>() {
+            public boolean hasNext() {
+                return c.hasNext();
+            }
+            
+            public Map.Entry<K, V> next() {
+                K key = c.next();
+                return new AbstractMap.SimpleImmutableEntry<K, V>(key, c.value());
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    public V put(K key, V val) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        oldValue = null;
+        Node right = insert(root, key, val);
+        if (right != null) { // The root split; grow a new one above the halves.
+            Inner r = new Inner(fanout);
+            r.keys[0] = splitKey;
+            r.children[0] = root;
+            r.children[1] = right;
+            r.n = 1;
+            root = r;
+        }
+        splitKey = null;
+        V previousValue = oldValue;
+        oldValue = null;
+        return previousValue;
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        oldValue = null;
+        remove(root, key);
+        if (root instanceof Inner && root.n == 0) // The root's last two children merged.
+            root = ((Inner) root).children[0];
+        V previousValue = oldValue;
+        oldValue = null;
+        return previousValue;
+    }
+    
+    public void clear() {
+        first = new Leaf(fanout);
+        root = first;
+        size = 0;
+        modCount++;
+    }
+    
+    /**
+     * Returns the smallest key, or {@code null} if the tree is empty.
+     * 
+     * @return the smallest key
+     */
+    @SuppressWarnings("unchecked")
+    public K min() {
+        return size == 0 ? null : (K) first.keys[0];
+    }
+    
+    /**
+     * Returns the largest key, or {@code null} if the tree is empty.
+     * 
+     * @return the largest key
+     */
+    @SuppressWarnings("unchecked")
+    public K max() {
+        if (size == 0)
+            return null;
+        Node n = root;
+        while (n instanceof Inner)
+            n = ((Inner) n).children[n.n];
+        return (K) n.keys[n.n - 1];
+    }
+    
+    /**
+     * Returns the largest key less than or equal to {@code key}, or {@code null} if there is none.
+     * 
+     * @param key
+     * @return the floor of {@code key}
+     * @throws NullPointerException if {@code key} is null
+     */
+    @SuppressWarnings("unchecked")
+    public K floor(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        // The leaf for key holds its floor unless every key in it is greater than key. Then, since the parent steered
+        // key here, the floor is the last key of the leaf before, if there is one.
+        Leaf prev = null;
+        Node n = root;
+        while (n instanceof Inner) {
+            Inner in = (Inner) n;
+            int i = childIndex(in, key);
+            if (i > 0)
+                prev = rightmostLeaf(in.children[i - 1]);
+            n = in.children[i];
+        }
+        Leaf leaf = (Leaf) n;
+        int i = search(leaf, key);
+        if (i >= 0)
+            return (K) leaf.keys[i];
+        i = -i - 2; // the last key less than key
+        if (i >= 0)
+            return (K) leaf.keys[i];
+        return prev == null || prev.n == 0 ? null : (K) prev.keys[prev.n - 1];
+    }
+    
+    /**
+     * Returns the smallest key greater than or equal to {@code key}, or {@code null} if there is none.
+     * 
+     * @param key
+     * @return the ceiling of {@code key}
+     * @throws NullPointerException if {@code key} is null
+     */
+    @SuppressWarnings("unchecked")
+    public K ceiling(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        Leaf leaf = leafFor(key);
+        int i = search(leaf, key);
+        if (i < 0)
+            i = -i - 1;
+        if (i == leaf.n) { // Every key in the leaf is less than key; the next leaf starts above it.
+            leaf = leaf.next;
+            i = 0;
+        }
+        return leaf == null ? null : (K) leaf.keys[i];
+    }
+    
+    /**
+     * Returns the keys from {@code lo}, inclusive, to {@code hi}, exclusive, in order.
+     * 
+     * @param lo the lowest key to return
+     * @param hi the key above the highest key to return
+     * @return the keys in the range
+     * @throws NullPointerException if {@code lo} or {@code hi} is null
+     */
+    public List<K> range(K lo, K hi) throws NullPointerException {
+        List<K> keys = new ArrayList<K>();
+        for (Cursor c = cursor(lo, hi); c.hasNext();)
+            keys.add(c.next());
+        return keys;
+    }
+    
+    /**
+     * Returns a cursor over every key, in order.
+     * 
+     * @return the cursor
+     */
+    public Cursor cursor() {
+        return new Cursor(first, 0, null);
+    }
+    
+    /**
+     * Returns a cursor over the keys from {@code lo}, inclusive, to {@code hi}, exclusive, in order.
+     * 
+     * @param lo the lowest key to return
+     * @param hi the key above the highest key to return
+     * @return the cursor
+     * @throws NullPointerException if {@code lo} or {@code hi} is null
+     */
+    public Cursor cursor(K lo, K hi) throws NullPointerException {
+        if (lo == null || hi == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        Leaf leaf = leafFor(lo);
+        int i = search(leaf, lo);
+        return new Cursor(leaf, i >= 0 ? i : -i - 1, hi);
+    }
+    
+    public String toString() {
+        return fanout == DEF_FANOUT ? "B+ Tree" : String.format("B+ Tree (%d)", fanout);
+    }
+    
+    /**
+     * Binary searches the keys of a node.
+     * 
+     * @return the index of {@code key}, or {@code -(insertion point) - 1} if it's not there
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> int search(Node node, K key) {
+        int lo = 0;
+        int hi = node.n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo((K) node.keys[mid]);
+            if (cmp == 0)
+                return mid;
+            if (cmp < 0)
+                hi = mid - 1;
+            else
+                lo = mid + 1;
+        }
+        return -lo - 1;
+    }
+    
+    /**
+     * Returns the index of the child of {@code in} that {@code key} belongs under: the number of keys in {@code in} that
+     * are less than or equal to it.
+     */
+    private static <K extends Comparable<K>> int childIndex(Inner in, K key) {
+        int i = search(in, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+    
+    private Leaf leafFor(K key) {
+        Node n = root;
+        while (n instanceof Inner) {
+            Inner in = (Inner) n;
+            n = in.children[childIndex(in, key)];
+        }
+        return (Leaf) n;
+    }
+    
+    private static Leaf rightmostLeaf(Node n) {
+        while (n instanceof Inner)
+            n = ((Inner) n).children[n.n];
+        return (Leaf) n;
+    }
+    
+    /**
+     * Puts the mapping in {@code node}'s subtree, setting {@link #oldValue} if the key was already there.
+     * 
+     * @return the new right half of {@code node} if it split, with its smallest key in {@link #splitKey}, or
+     *         {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    private Node insert(Node node, K key, V val) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = search(leaf, key);
+            if (i >= 0) {
+                oldValue = (V) leaf.vals[i];
+                leaf.vals[i] = val;
+                return null;
+            }
+            i = -i - 1;
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.n - i);
+            System.arraycopy(leaf.vals, i, leaf.vals, i + 1, leaf.n - i);
+            leaf.keys[i] = key;
+            leaf.vals[i] = val;
+            leaf.n++;
+            size++;
+            modCount++;
+            return leaf.n > fanout ? splitLeaf(leaf) : null;
+        }
+        
+        Inner in = (Inner) node;
+        int i = childIndex(in, key);
+        Node right = insert(in.children[i], key, val);
+        if (right == null)
+            return null;
+        System.arraycopy(in.keys, i, in.keys, i + 1, in.n - i);
+        System.arraycopy(in.children, i + 1, in.children, i + 2, in.n - i);
+        in.keys[i] = splitKey;
+        in.children[i + 1] = right;
+        in.n++;
+        return in.n > fanout ? splitInner(in) : null;
+    }
+    
+    private Leaf splitLeaf(Leaf leaf) {
+        int mid = leaf.n / 2;
+        Leaf right = new Leaf(fanout);
+        right.n = leaf.n - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.n);
+        System.arraycopy(leaf.vals, mid, right.vals, 0, right.n);
+        Arrays.fill(leaf.keys, mid, leaf.n, null);
+        Arrays.fill(leaf.vals, mid, leaf.n, null);
+        leaf.n = mid;
+        
+        right.next = leaf.next;
+        leaf.next = right;
+        splitKey = right.keys[0];
+        return right;
+    }
+    
+    private Inner splitInner(Inner in) {
+        int mid = in.n / 2; // keys[mid] moves up to the parent
+        Inner right = new Inner(fanout);
+        right.n = in.n - mid - 1;
+        System.arraycopy(in.keys, mid + 1, right.keys, 0, right.n);
+        System.arraycopy(in.children, mid + 1, right.children, 0, right.n + 1);
+        splitKey = in.keys[mid];
+        Arrays.fill(in.keys, mid, in.n, null);
+        Arrays.fill(in.children, mid + 1, in.n + 1, null);
+        in.n = mid;
+        return right;
+    }
+    
+    /**
+     * Removes the key from {@code node}'s subtree, setting {@link #oldValue} if it was there.
+     * 
+     * @return whether {@code node} is left with too few keys
+     */
+    @SuppressWarnings("unchecked")
+    private boolean remove(Node node, K key) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = search(leaf, key);
+            if (i < 0)
+                return false;
+            oldValue = (V) leaf.vals[i];
+            leaf.n--;
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.n - i);
+            System.arraycopy(leaf.vals, i + 1, leaf.vals, i, leaf.n - i);
+            leaf.keys[leaf.n] = null;
+            leaf.vals[leaf.n] = null;
+            size--;
+            modCount++;
+            return leaf.n < minKeys;
+        }
+        
+        Inner in = (Inner) node;
+        int i = childIndex(in, key);
+        if (!remove(in.children[i], key))
+            return false;
+        rebalance(in, i);
+        return in.n < minKeys;
+    }
+    
+    /**
+     * Refills the child at index {@code i} of {@code in}, which has too few keys, from a sibling.
+     */
+    private void rebalance(Inner in, int i) {
+        Node child = in.children[i];
+        Node left = i > 0 ? in.children[i - 1] : null;
+        Node right = i < in.n ? in.children[i + 1] : null;
+        
+        if (left != null && left.n > minKeys)
+            borrowFromLeft(in, i - 1, left, child);
+        else if (right != null && right.n > minKeys)
+            borrowFromRight(in, i, child, right);
+        else if (left != null)
+            merge(in, i - 1, left, child);
+        else
+            merge(in, i, child, right);
+    }
+    
+    /**
+     * Moves the last key of {@code left} to the front of {@code right}, its sibling to the right of key {@code k} of
+     * {@code parent}.
+     */
+    private void borrowFromLeft(Inner parent, int k, Node left, Node right) {
+        if (right instanceof Leaf) {
+            Leaf l = (Leaf) left;
+            Leaf r = (Leaf) right;
+            System.arraycopy(r.keys, 0, r.keys, 1, r.n);
+            System.arraycopy(r.vals, 0, r.vals, 1, r.n);
+            r.keys[0] = l.keys[l.n - 1];
+            r.vals[0] = l.vals[l.n - 1];
+            l.keys[l.n - 1] = null;
+            l.vals[l.n - 1] = null;
+            parent.keys[k] = r.keys[0];
+        } else {
+            Inner l = (Inner) left;
+            Inner r = (Inner) right;
+            System.arraycopy(r.keys, 0, r.keys, 1, r.n);
+            System.arraycopy(r.children, 0, r.children, 1, r.n + 1);
+            r.keys[0] = parent.keys[k];
+            r.children[0] = l.children[l.n];
+            parent.keys[k] = l.keys[l.n - 1];
+            l.keys[l.n - 1] = null;
+            l.children[l.n] = null;
+        }
+        left.n--;
+        right.n++;
+    }
+    
+    /**
+     * Moves the first key of {@code right} to the end of {@code left}, its sibling to the left of key {@code k} of
+     * {@code parent}.
+     */
+    private void borrowFromRight(Inner parent, int k, Node left, Node right) {
+        if (left instanceof Leaf) {
+            Leaf l = (Leaf) left;
+            Leaf r = (Leaf) right;
+            l.keys[l.n] = r.keys[0];
+            l.vals[l.n] = r.vals[0];
+            System.arraycopy(r.keys, 1, r.keys, 0, r.n - 1);
+            System.arraycopy(r.vals, 1, r.vals, 0, r.n - 1);
+            r.keys[r.n - 1] = null;
+            r.vals[r.n - 1] = null;
+            parent.keys[k] = r.keys[0];
+        } else {
+            Inner l = (Inner) left;
+            Inner r = (Inner) right;
+            l.keys[l.n] = parent.keys[k];
+            l.children[l.n + 1] = r.children[0];
+            parent.keys[k] = r.keys[0];
+            System.arraycopy(r.keys, 1, r.keys, 0, r.n - 1);
+            System.arraycopy(r.children, 1, r.children, 0, r.n);
+            r.keys[r.n - 1] = null;
+            r.children[r.n] = null;
+        }
+        left.n++;
+        right.n--;
+    }
+    
+    /**
+     * Moves everything in {@code right} into {@code left}, its sibling to the left of key {@code k} of {@code parent},
+     * and takes {@code right} and that key out of {@code parent}.
+     */
+    private void merge(Inner parent, int k, Node left, Node right) {
+        if (left instanceof Leaf) {
+            Leaf l = (Leaf) left;
+            Leaf r = (Leaf) right;
+            System.arraycopy(r.keys, 0, l.keys, l.n, r.n);
+            System.arraycopy(r.vals, 0, l.vals, l.n, r.n);
+            l.n += r.n;
+            l.next = r.next;
+        } else {
+            Inner l = (Inner) left;
+            Inner r = (Inner) right;
+            l.keys[l.n] = parent.keys[k];
+            System.arraycopy(r.keys, 0, l.keys, l.n + 1, r.n);
+            System.arraycopy(r.children, 0, l.children, l.n + 1, r.n + 1);
+            l.n += r.n + 1;
+        }
+        
+        parent.n--;
+        System.arraycopy(parent.keys, k + 1, parent.keys, k, parent.n - k);
+        System.arraycopy(parent.children, k + 2, parent.children, k + 1, parent.n - k);
+        parent.keys[parent.n] = null;
+        parent.children[parent.n + 1] = null;
+    }
+    
+    /**
+     * A node; the arrays have room for one key more than the fanout, so a node can overflow before it splits.
+     */
+    private abstract static class Node {
+        final Object[] keys;
+        int n; // the number of keys
+        
+        Node(int fanout) {
+            keys = new Object[fanout + 1];
+        }
+    }
+    
+    private static class Leaf extends Node {
+        final Object[] vals;
+        Leaf next; // the leaf to the right
+        
+        Leaf(int fanout) {
+            super(fanout);
+            vals = new Object[fanout + 1];
+        }
+    }
+    
+    /**
+     * An inner node: {@code children[i]} holds the keys from {@code keys[i - 1]}, inclusive, to {@code keys[i]},
+     * exclusive.
+     */
+    private static class Inner extends Node {
+        final Node[] children;
+        
+        Inner(int fanout) {
+            super(fanout);
+            children = new Node[fanout + 2];
+        }
+    }
+    
+    /**
+     * An in-order walk over a range of keys, along the leaves.
+     * <p>
+     * Adding or removing keys while a cursor is open makes its next step throw a
+     * {@link ConcurrentModificationException}; changing the value of a key doesn't.
+     */
+    public class Cursor implements Iterator<K> {
+        private final K hi; // null for no upper bound
+        private final int expectedModCount = modCount;
+        private Leaf leaf; // the leaf of the next key, or null at the end
+        private int i; // the index of the next key in leaf
+        private Object value; // the value of the key next() returned last, or null before the first
+        
+        private Cursor(Leaf leaf, int i, K hi) {
+            this.leaf = leaf;
+            this.i = i;
+            this.hi = hi;
+            skipToKey();
+        }
+        
+        /**
+         * Moves past the end of the leaf to the next one, and ends the walk at hi.
+         */
+        @SuppressWarnings("unchecked")
+        private void skipToKey() {
+            while (leaf != null && i == leaf.n) {
+                leaf = leaf.next;
+                i = 0;
+            }
+            if (leaf != null && hi != null && hi.compareTo((K) leaf.keys[i]) <= 0)
+                leaf = null;
+        }
+        
+        public boolean hasNext() {
+            return leaf != null;
+        }
+        
+        @SuppressWarnings("unchecked")
+        public K next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (leaf == null)
+                throw new NoSuchElementException();
+            K key = (K) leaf.keys[i];
+            value = leaf.vals[i];
+            i++;
+            skipToKey();
+            return key;
+        }
+        
+        /**
+         * Returns the value of the key {@link #next()} returned last.
+         * 
+         * @return the value
+         * @throws IllegalStateException if {@code next} hasn't been called
+         */
+        @SuppressWarnings("unchecked")
+        public V value() throws IllegalStateException {
+            if (value == null)
+                throw new IllegalStateException();
+            return (V) value;
+        }
+        
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
+
+class BPlusTreeSupplier implements DictionarySupplier {
+    private final int fanout;
+    
+    /**
+     * Constructs empty {@code BPlusTree}'s whose nodes hold up to {@code fanout} keys.
+     * 
+     * @param fanout the most keys a node holds
+     * 
+     * @see BPlusTree
+     */
+    public BPlusTreeSupplier(int fanout) {
+        this.fanout = fanout;
+    }
+    
+    public BPlusTreeSupplier() {
+        this(BPlusTree.DEF_FANOUT);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return new BPlusTree<K, V>(fanout);
+    }
+    
+    public String toString() {
+        return fanout == BPlusTree.DEF_FANOUT ? "BPT" : String.format("BPT(%d)", fanout);
+    }
+}
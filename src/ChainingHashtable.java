@@ -2,28 +2,77 @@ import java.util.*;
 
 /**
  * A general-chaining hash table.
+ * <p>
+ * Each bucket is a whole {@link Dictionary}, made on first use by the delegate supplier. When the table resizes, it
+ * either rebuilds all the buckets at once or, in {@link Resizing#INCREMENTAL} mode, keeps the old buckets around and
+ * moves a few of them into the new array on every {@code put} and {@code delete}, so that no single operation pays
+ * for the whole rebuild. A {@link ResizeListener}, if set, is told of each resize once it ends.
  * 
  * @author Jackson Scholl
  * 
  * @param <K> The key type
  * @param <V> The value type
  */
-public class ChainingHashtable<K extends Comparable<K>, V> implements Dictionary<K, V> {
+public class ChainingHashtable<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
     final static int DEF_SIZE = 11;
     final static double DEF_MAX = 7.0;
-    final static double DEF_MIN = 5.0;
+    final static double DEF_MIN = 1.0;
     final static double DEF_SET = 3.0;
     final static DictionarySupplier DEF_SUPPLIER = new LinkedListSupplier();
+    final static Resizing DEF_RESIZING = Resizing.STOP_THE_WORLD;
+    final static Indexing DEF_INDEXING = Indexing.MODULO;
     
-    private Dictionary<K, V>[] array;
+    /**
+     * The fewest old buckets each {@code put} or {@code delete} moves while an incremental resize is under way.
+     */
+    final static int MIGRATION_STEP = 4;
+    
+    private Dictionary<K, V>[] array; // buckets; null until something is put in them
     private int size;
     private int capacity;
+    private final int floor; // the capacity the table starts at, and never shrinks below
+    
+    private Dictionary<K, V>[] oldArray; // the buckets an incremental resize is moving out of, or null
+    private int oldCapacity;
+    private int migrated; // old buckets below this index have been moved into array
+    private int migrationStep; // old buckets each put or delete moves; enough to finish before the next resize
+    private int migratedEntries; // entries moved so far by the incremental resize under way
+    private long migrationNanos; // time spent moving them, if anyone's listening
     
     private final double maxFullness;
     private final double minFullness;
     private final double setFullness;
     
     private final DictionarySupplier supplier;
+    private final Resizing resizing;
+    private final Indexing indexing;
+    
+    private ResizeListener listener; // null if no one's listening
+    
+    // Puts each entry it visits into its bucket of the current array; resizes move the old buckets' entries with it.
+    private final EntryVisitor<K, V> mover = new EntryVisitor<K, V>() {
+        public void visit(K key, V value) {
+            bucket(array, indexing.index(hash(key), capacity), true).put(key, value);
+        }
+    };
+    
+    /**
+     * How the table moves its entries into a new bucket array when it resizes.
+     */
+    public enum Resizing {
+        /**
+         * Rebuild the whole table during the operation that crosses the threshold.
+         */
+        STOP_THE_WORLD,
+        
+        /**
+         * Allocate the new bucket array, then move a few old buckets into it during each later {@code put} or
+         * {@code delete}: {@link ChainingHashtable#MIGRATION_STEP}, or more if the fullness ratios leave fewer
+         * operations than that would take before the next resize. Lookups check whichever array still holds the key's
+         * bucket.
+         */
+        INCREMENTAL
+    }
     
     /**
      * Primary constructor.
@@ -32,21 +81,76 @@ public class ChainingHashtable<K extends Comparable<K>, V> implements Dictionary
      * @param maximum
      * @param minimum
      * @param setFactor
+     * @param resizeMode how the table resizes
+     * @param indexMode how hashes are turned into buckets
+     * @param expectedSize how many entries the table should hold without resizing; it never shrinks below this
+     * @throws IllegalArgumentException if {@code minimum} is less than zero or {@code setFactor} is less than or
+     *             equal to {@code minimum} or {@code maximum} is less than or equal to {@code setFactor} or
+     *             {@code expectedSize} is negative
      */
-    public ChainingHashtable(DictionarySupplier delegateSupplier, double maximum, double minimum, double setFactor) {
+    public ChainingHashtable(DictionarySupplier delegateSupplier, double maximum, double minimum, double setFactor,
+            Resizing resizeMode, Indexing indexMode, int expectedSize) throws IllegalArgumentException {
+        if (0 > minimum)
+            throw new IllegalArgumentException("Illegal minimum fullness: " + minimum);
+        if (minimum >= setFactor)
+            throw new IllegalArgumentException("Minimum fullness is greater than or equal to set.");
+        if (setFactor >= maximum)
+            throw new IllegalArgumentException("Set fullness is greater than or equal to maximum.");
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        
         supplier = delegateSupplier;
+        resizing = resizeMode;
+        indexing = indexMode;
         size = 0;
-        capacity = DEF_SIZE;
+        floor = indexing.capacity(Math.max(DEF_SIZE, (int) Math.ceil(expectedSize / setFactor)));
+        capacity = floor;
         maxFullness = maximum;
         minFullness = minimum;
         setFullness = setFactor;
         
-        @SuppressWarnings("unchecked")
-        Dictionary<K, V>[] a = (Dictionary<K, V>[]) new Dictionary[capacity];
-        array = a;
-        
-        for (int i = 0; i < capacity; i++)
-            array[i] = newDictionary();
+        array = newArray(capacity);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param delegateSupplier
+     * @param maximum
+     * @param minimum
+     * @param setFactor
+     * @param resizeMode
+     * @param indexMode
+     */
+    public ChainingHashtable(DictionarySupplier delegateSupplier, double maximum, double minimum, double setFactor,
+            Resizing resizeMode, Indexing indexMode) {
+        this(delegateSupplier, maximum, minimum, setFactor, resizeMode, indexMode, 0);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param delegateSupplier
+     * @param maximum
+     * @param minimum
+     * @param setFactor
+     * @param resizeMode
+     */
+    public ChainingHashtable(DictionarySupplier delegateSupplier, double maximum, double minimum, double setFactor,
+            Resizing resizeMode) {
+        this(delegateSupplier, maximum, minimum, setFactor, resizeMode, DEF_INDEXING);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param delegateSupplier
+     * @param maximum
+     * @param minimum
+     * @param setFactor
+     */
+    public ChainingHashtable(DictionarySupplier delegateSupplier, double maximum, double minimum, double setFactor) {
+        this(delegateSupplier, maximum, minimum, setFactor, DEF_RESIZING);
     }
     
     /**
@@ -60,6 +164,16 @@ public class ChainingHashtable<K extends Comparable<K>, V> implements Dictionary
         this(delegateSupplier, factor * (1.0 + margin), factor / (1.0 + margin), factor);
     }
     
+    /**
+     * Constructor for a table that holds {@code expectedSize} entries without resizing.
+     * 
+     * @param delegateSupplier
+     * @param expectedSize
+     */
+    public ChainingHashtable(DictionarySupplier delegateSupplier, int expectedSize) {
+        this(delegateSupplier, DEF_MAX, DEF_MIN, DEF_SET, DEF_RESIZING, DEF_INDEXING, expectedSize);
+    }
+    
     /**
      * Constructor.
      * 
@@ -85,42 +199,117 @@ public class ChainingHashtable<K extends Comparable<K>, V> implements Dictionary
     }
     
     private int hash(K key) {
-        return Math.abs(key.hashCode());
+        return indexing.spread(key.hashCode());
     }
     
-    private Dictionary<K, V> getMap(K key) throws NullPointerException {
+    /**
+     * Returns the bucket {@code key} belongs in, which is in the old array if an incremental resize hasn't moved it
+     * yet.
+     * 
+     * @param key the key
+     * @param create whether to make the bucket if it doesn't exist yet
+     * @return the bucket, or {@code null} if it doesn't exist and {@code create} is false
+     * @throws NullPointerException if the key is null
+     */
+    private Dictionary<K, V> getMap(K key, boolean create) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
-        int index = hash(key) % capacity;
-        return array[index];
+        int h = hash(key);
+        if (oldArray != null) {
+            int old = indexing.index(h, oldCapacity);
+            if (old >= migrated)
+                return bucket(oldArray, old, create);
+        }
+        return bucket(array, indexing.index(h, capacity), create);
+    }
+    
+    private Dictionary<K, V> bucket(Dictionary<K, V>[] a, int index, boolean create) {
+        if (a[index] == null && create)
+            a[index] = newDictionary();
+        return a[index];
     }
     
     public V get(K key) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
-        return getMap(key).get(key);
+        Dictionary<K, V> st = getMap(key, false);
+        return st == null ? null : st.get(key);
     }
     
     public Set<K> getAllKeys() {
-        Set<K> keySet = new HashSet<K>(size);
+        final Set<K> keySet = new HashSet<K>(size);
+        forEach(new EntryVisitor<K, V>() {
+            public void visit(K key, V value) {
+                keySet.add(key);
+            }
+        });
+        return keySet;
+    }
+    
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
         for (Dictionary<K, V> st : array)
             if (st != null)
-                keySet.addAll(st.getAllKeys());
-        return keySet;
+                st.forEach(visitor);
+        if (oldArray != null)
+            for (Dictionary<K, V> st : oldArray)
+                if (st != null)
+                    st.forEach(visitor);
+    }
+    
+    /**
+     * Chains the iterators of the buckets, so it makes one iterator per bucket that isn't null.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+            private Dictionary<K, V>[] buckets = array;
+            private int i; // the next bucket of buckets
+            private Iterator<Map.Entry<K, V>> bucket = Collections.<Map.Entry<K, V>> emptyList().iterator();
+            
+            public boolean hasNext() {
+                while (!bucket.hasNext()) {
+                    if (i == buckets.length) {
+                        if (buckets != array || oldArray == null)
+                            return false;
+                        buckets = oldArray; // Then the buckets an incremental resize hasn't moved yet
+                        i = 0;
+                    } else {
+                        Dictionary<K, V> st = buckets[i++];
+                        if (st != null)
+                            bucket = st.iterator();
+                    }
+                }
+                return true;
+            }
+            
+            public Map.Entry<K, V> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return bucket.next();
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
     
     public boolean containsKey(K key) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
-        return getMap(key).containsKey(key);
+        Dictionary<K, V> st = getMap(key, false);
+        return st != null && st.containsKey(key);
     }
     
     public boolean containsValue(V value) throws NullPointerException {
         if (value == null)
             throw new NullPointerException("Value is not allowed to be null");
         for (Dictionary<K, V> st : array)
-            if (st.containsValue(value))
+            if (st != null && st.containsValue(value))
                 return true;
+        if (oldArray != null)
+            for (Dictionary<K, V> st : oldArray)
+                if (st != null && st.containsValue(value))
+                    return true;
         return false;
     }
     
@@ -130,7 +319,10 @@ public class ChainingHashtable<K extends Comparable<K>, V> implements Dictionary
         if (val == null)
             throw new NullPointerException("Value is not allowed to be null");
         
-        V value = getMap(key).put(key, val);
+        if (oldArray != null)
+            migrate(migrationStep);
+        
+        V value = getMap(key, true).put(key, val);
         if (value == null) {
             size++;
             resize();
@@ -142,7 +334,11 @@ public class ChainingHashtable<K extends Comparable<K>, V> implements Dictionary
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
         
-        V value = getMap(key).delete(key);
+        if (oldArray != null)
+            migrate(migrationStep);
+        
+        Dictionary<K, V> st = getMap(key, false);
+        V value = st == null ? null : st.delete(key);
         if (value != null) {
             size--;
             resize();
@@ -150,53 +346,302 @@ public class ChainingHashtable<K extends Comparable<K>, V> implements Dictionary
         return value;
     }
     
+    /**
+     * Resizes once for the whole batch, up front and all at once, instead of as the table fills.
+     */
+    public void putAll(Map<? extends K, ? extends V> m) throws NullPointerException {
+        checkEntries(m);
+        if (oldArray != null)
+            migrate(oldCapacity);
+        if (size + m.size() > capacity * maxFullness)
+            rebuild(indexing.capacity((int) ((size + m.size()) / setFullness)));
+        
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K key = e.getKey();
+            if (bucket(array, indexing.index(hash(key), capacity), true).put(key, e.getValue()) == null)
+                size++;
+        }
+        
+        resize(); // Repeated keys may have left the table emptier than planned.
+    }
+    
+    public Map<K, V> getAll(Collection<? extends K> keys) throws NullPointerException {
+        Map<K, V> found = new HashMap<K, V>();
+        for (K key : keys) {
+            Dictionary<K, V> st = getMap(key, false);
+            V val = st == null ? null : st.get(key);
+            if (val != null)
+                found.put(key, val);
+        }
+        return found;
+    }
+    
+    /**
+     * Deletes every key first and resizes once at the end.
+     */
+    public int deleteAll(Collection<? extends K> keys) throws NullPointerException {
+        checkKeys(keys);
+        if (oldArray != null) // The steps the deletes would have taken one at a time
+            migrate((int) Math.min(oldCapacity, (long) migrationStep * keys.size()));
+        int deleted = 0;
+        for (K key : keys) {
+            Dictionary<K, V> st = getMap(key, false);
+            if (st != null && st.delete(key) != null)
+                deleted++;
+        }
+        size -= deleted;
+        resize();
+        return deleted;
+    }
+    
+    /**
+     * Drops the buckets, and any incremental resize under way, and starts again from the initial capacity.
+     */
     public void clear() {
-        for (K key : getAllKeys())
-            delete(key);
+        array = newArray(floor);
+        capacity = floor;
+        oldArray = null;
+        size = 0;
+    }
+    
+    /**
+     * Sets the listener told of every resize from now on, replacing any before it. An incremental resize under way is
+     * reported when it ends, but only the time spent moving since the listener was set is counted.
+     * 
+     * @param listener is told of each resize, or {@code null} to stop telling anyone
+     */
+    public void setResizeListener(ResizeListener listener) {
+        this.listener = listener;
     }
     
     private Dictionary<K, V> newDictionary() {
         return supplier.<K, V> getNew();
     }
     
+    private Dictionary<K, V>[] newArray(int length) {
+        @SuppressWarnings("unchecked")
+        Dictionary<K, V>[] a = (Dictionary<K, V>[]) new Dictionary[length];
+        return a;
+    }
+    
     private void resize() {
-        if (!(size < capacity * minFullness && capacity > 11) && !(size > capacity * maxFullness))
+        if (!(size < capacity * minFullness && capacity > floor) && !(size > capacity * maxFullness))
             return;
         
-        int newcap = (int) (size / setFullness);
+        int newcap = indexing.capacity(Math.max(floor, (int) (size / setFullness)));
+        if (newcap == capacity) // Rounding up to a power of two can land back on the current capacity.
+            return;
         
-        @SuppressWarnings("unchecked")
-        Dictionary<K, V>[] a = (Dictionary<K, V>[]) new Dictionary[newcap];
+        if (resizing == Resizing.INCREMENTAL) {
+            assert oldArray == null; // The migration step saw to it that the last resize has ended.
+            oldArray = array;
+            oldCapacity = capacity;
+            migrated = 0;
+            migratedEntries = 0;
+            migrationNanos = 0;
+            this.array = newArray(newcap);
+            this.capacity = newcap;
+            migrationStep = migrationStep();
+            return;
+        }
         
-        for (int i = 0; i < newcap; i++)
-            a[i] = newDictionary();
+        rebuild(newcap);
+    }
+    
+    /**
+     * Returns how many old buckets each {@code put} or {@code delete} must move for the resize that has just started to
+     * end before the next one can: the fewest operations that could take the table past its maximum or minimum fullness
+     * again must be enough to move all of them.
+     */
+    private int migrationStep() {
+        long ops = (long) Math.floor(capacity * maxFullness) + 1 - size; // puts to grow again
+        if (capacity > floor)
+            ops = Math.min(ops, size - ((long) Math.ceil(capacity * minFullness) - 1)); // deletes to shrink again
+        ops = Math.max(1, ops);
+        return (int) Math.max(MIGRATION_STEP, (oldCapacity + ops - 1) / ops);
+    }
+    
+    /**
+     * Moves every entry into a new array of buckets at once. There must be no incremental resize under way.
+     * 
+     * @param newcap the new capacity
+     */
+    private void rebuild(int newcap) {
+        long start = listener == null ? 0 : System.nanoTime();
+        int oldcap = capacity;
+        Dictionary<K, V>[] old = array;
+        this.array = newArray(newcap);
+        this.capacity = newcap;
         
-        for (K key : this.getAllKeys()) {
-            V val = this.get(key);
-            int index = hash(key) % newcap;
-            a[index].put(key, val);
+        for (Dictionary<K, V> st : old)
+            if (st != null)
+                st.forEach(mover);
+        
+        if (listener != null)
+            listener.resized(new ResizeEvent(this, oldcap, newcap, size, System.nanoTime() - start));
+    }
+    
+    /**
+     * Moves up to {@code buckets} more of the old buckets into the new array, ending the resize once they're all moved.
+     * 
+     * @param buckets the number of old buckets to move
+     */
+    private void migrate(int buckets) {
+        long start = listener == null ? 0 : System.nanoTime();
+        int end = Math.min(oldCapacity, migrated + buckets);
+        while (migrated < end) {
+            Dictionary<K, V> st = oldArray[migrated];
+            if (st != null) {
+                st.forEach(mover);
+                migratedEntries += st.size();
+                oldArray[migrated] = null;
+            }
+            migrated++;
         }
+        if (listener != null)
+            migrationNanos += System.nanoTime() - start;
         
-        this.array = a;
-        this.capacity = newcap;
+        if (migrated == oldCapacity) {
+            int oldcap = oldCapacity;
+            oldArray = null;
+            oldCapacity = 0;
+            migrated = 0;
+            if (listener != null)
+                listener.resized(new ResizeEvent(this, oldcap, capacity, migratedEntries, migrationNanos));
+        }
+    }
+    
+    /**
+     * Measures how the entries are spread over the buckets, in one pass over them that allocates only the histogram.
+     * While an incremental resize is under way, the old buckets not yet moved are counted along with the new ones.
+     * 
+     * @return the chain lengths as of now
+     */
+    public BucketStats bucketStats() {
+        int[] chains = new int[16]; // chains[n] is the number of buckets holding n entries
+        int buckets = 0;
+        int maxChain = 0;
+        for (int a = 0; a < 2; a++) {
+            Dictionary<K, V>[] arr = a == 0 ? array : oldArray;
+            if (arr == null)
+                continue;
+            for (int i = a == 0 ? 0 : migrated; i < arr.length; i++) {
+                int n = arr[i] == null ? 0 : arr[i].size();
+                if (n >= chains.length)
+                    chains = Arrays.copyOf(chains, Math.max(n + 1, 2 * chains.length));
+                chains[n]++;
+                maxChain = Math.max(maxChain, n);
+                buckets++;
+            }
+        }
+        return new BucketStats(buckets, size, Arrays.copyOf(chains, maxChain + 1));
     }
     
     public String toString() {
+        String name = resizing == DEF_RESIZING ? "Chaining Hashtable" : "Incremental Chaining Hashtable";
+        if (indexing != DEF_INDEXING)
+            name += ", power-of-two indexing";
         if (setFullness == DEF_SET && maxFullness == DEF_MAX && minFullness == DEF_MIN)
-            return String.format("Chaining Hashtable (%s)", supplier);
+            return String.format("%s (%s)", name, supplier);
         else if (setFullness == DEF_SET)
-            return String.format("Chaining Hashtable (%s, %.0f, %.0f)", supplier, maxFullness, minFullness);
+            return String.format("%s (%s, %.0f, %.0f)", name, supplier, maxFullness, minFullness);
         else
-            return String.format("Chaining Hashtable (%s, %.0f, %.0f, %.0f)", supplier, maxFullness, minFullness,
-                    setFullness);
+            return String.format("%s (%s, %.0f, %.0f, %.0f)", name, supplier, maxFullness, minFullness, setFullness);
+    }
+    
+    /**
+     * How the entries of a {@code ChainingHashtable} are spread over its buckets at one point.
+     */
+    public static final class BucketStats {
+        private final int buckets;
+        private final int size;
+        private final int[] chains;
+        
+        private BucketStats(int buckets, int size, int[] chains) {
+            this.buckets = buckets;
+            this.size = size;
+            this.chains = chains;
+        }
+        
+        /**
+         * Returns the number of buckets.
+         * 
+         * @return the bucket count
+         */
+        public int buckets() {
+            return buckets;
+        }
+        
+        /**
+         * Returns the number of entries.
+         * 
+         * @return the size
+         */
+        public int size() {
+            return size;
+        }
+        
+        /**
+         * Returns the mean number of entries in a bucket.
+         * 
+         * @return the load factor
+         */
+        public double loadFactor() {
+            return (double) size / buckets;
+        }
+        
+        /**
+         * Returns the number of buckets that hold the given number of entries.
+         * 
+         * @param entries the chain length of the buckets to count
+         * @return the bucket count
+         */
+        public int chains(int entries) {
+            return entries >= 0 && entries < chains.length ? chains[entries] : 0;
+        }
+        
+        /**
+         * Returns the most entries in any bucket.
+         * 
+         * @return the longest chain length
+         */
+        public int maxChain() {
+            return chains.length - 1;
+        }
+        
+        /**
+         * Returns the fraction of the buckets that are empty.
+         * 
+         * @return the empty-bucket ratio
+         */
+        public double emptyRatio() {
+            return (double) chains(0) / buckets;
+        }
+        
+        /**
+         * Returns a summary, then the number of buckets of each chain length there are any of.
+         */
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d entries in %d buckets (load %.3f); %.2f%% empty, longest chain %d%n", size,
+                    buckets, loadFactor(), 100 * emptyRatio(), maxChain()));
+            sb.append(String.format("%8s %10s%n", "chain", "count"));
+            for (int n = 0; n < chains.length; n++)
+                if (chains[n] > 0)
+                    sb.append(String.format("%8d %10d%n", n, chains[n]));
+            return sb.toString();
+        }
     }
 }
 
-class ChainingHashtableSupplier implements DictionarySupplier {
+class ChainingHashtableSupplier implements SizedDictionarySupplier {
     private final double max;
     private final double min;
     private final double set;
     private final DictionarySupplier supplier;
+    private final ChainingHashtable.Resizing resizing;
+    private final Indexing indexing;
+    private final int expectedSize;
     
     /**
      * Constructs empty {@code ChainingHashtable}'s with the specified {@code maximum}, {@code minimum}, and {@code set}
@@ -206,15 +651,51 @@ class ChainingHashtableSupplier implements DictionarySupplier {
      * @param maximum the maximum fullness
      * @param minimum the minimum fullness
      * @param setFactor
+     * @param resizeMode how the tables resize
+     * @param indexMode how hashes are turned into buckets
+     * @param expectedSize how many entries the tables hold before their first resize
      * 
      * @see ChainingHashtable
      */
     public ChainingHashtableSupplier(DictionarySupplier delegateSupplier, double maximum, double minimum,
-            double setFactor) {
+            double setFactor, ChainingHashtable.Resizing resizeMode, Indexing indexMode, int expectedSize) {
         supplier = delegateSupplier;
         max = maximum;
         min = minimum;
         set = setFactor;
+        resizing = resizeMode;
+        indexing = indexMode;
+        this.expectedSize = expectedSize;
+    }
+    
+    public ChainingHashtableSupplier(DictionarySupplier delegateSupplier, double maximum, double minimum,
+            double setFactor, ChainingHashtable.Resizing resizeMode, Indexing indexMode) {
+        this(delegateSupplier, maximum, minimum, setFactor, resizeMode, indexMode, 0);
+    }
+    
+    public ChainingHashtableSupplier(DictionarySupplier delegateSupplier, double maximum, double minimum,
+            double setFactor, ChainingHashtable.Resizing resizeMode) {
+        this(delegateSupplier, maximum, minimum, setFactor, resizeMode, ChainingHashtable.DEF_INDEXING);
+    }
+    
+    public ChainingHashtableSupplier(DictionarySupplier delegateSupplier, double maximum, double minimum,
+            double setFactor) {
+        this(delegateSupplier, maximum, minimum, setFactor, ChainingHashtable.DEF_RESIZING);
+    }
+    
+    public ChainingHashtableSupplier(DictionarySupplier delegateSupplier, ChainingHashtable.Resizing resizeMode) {
+        this(delegateSupplier, ChainingHashtable.DEF_MAX, ChainingHashtable.DEF_MIN, ChainingHashtable.DEF_SET,
+                resizeMode);
+    }
+    
+    public ChainingHashtableSupplier(DictionarySupplier delegateSupplier, Indexing indexMode) {
+        this(delegateSupplier, ChainingHashtable.DEF_MAX, ChainingHashtable.DEF_MIN, ChainingHashtable.DEF_SET,
+                ChainingHashtable.DEF_RESIZING, indexMode);
+    }
+    
+    public ChainingHashtableSupplier(DictionarySupplier delegateSupplier, int expectedSize) {
+        this(delegateSupplier, ChainingHashtable.DEF_MAX, ChainingHashtable.DEF_MIN, ChainingHashtable.DEF_SET,
+                ChainingHashtable.DEF_RESIZING, ChainingHashtable.DEF_INDEXING, expectedSize);
     }
     
     public ChainingHashtableSupplier(DictionarySupplier delegateSupplier, double maximum, double minimum) {
@@ -234,10 +715,19 @@ class ChainingHashtableSupplier implements DictionarySupplier {
     }
     
     public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
-        return new ChainingHashtable<K, V>(supplier, max, min, set);
+        return getNew(expectedSize);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew(int expectedSize) {
+        return new ChainingHashtable<K, V>(supplier, max, min, set, resizing, indexing, expectedSize);
     }
     
     public String toString() {
-        return String.format("HT:%s", supplier.toString());
+        String name = resizing == ChainingHashtable.Resizing.INCREMENTAL ? "HT-INC" : "HT";
+        if (indexing != ChainingHashtable.DEF_INDEXING)
+            name += "-P2";
+        if (expectedSize != 0)
+            name += "[" + expectedSize + "]";
+        return String.format("%s:%s", name, supplier.toString());
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Codec.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Turns keys or values into bytes and back, for dictionaries that keep them off the heap.
+ * <p>
+ * A codec must write equal objects as equal bytes, since stored keys are compared, and hashed, as bytes; and it must
+ * read back an object equal to the one it wrote. Most codecs write every object in the same number of bytes; one whose
+ * {@link #width()} is {@link #VARIABLE} writes its own length, and can only be used where the width doesn't matter,
+ * such as in a {@link Snapshot}.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <T> The type encoded
+ */
+public interface Codec<T> {
+    /**
+     * The width of a codec whose objects take different numbers of bytes.
+     */
+    int VARIABLE = -1;
+    
+    /**
+     * Returns how many bytes every object takes, or {@link #VARIABLE}.
+     * 
+     * @return the width in bytes
+     */
+    int width();
+    
+    /**
+     * Writes {@code t} at the buffer's position, advancing it past what it wrote.
+     * 
+     * @param t the object to write
+     * @param out the buffer to write it to
+     * @throws IllegalArgumentException if {@code t} doesn't fit in the width
+     * @throws BufferOverflowException if {@code t} doesn't fit in the buffer; what was written of it is left behind
+     */
+    void encode(T t, ByteBuffer out) throws IllegalArgumentException, BufferOverflowException;
+    
+    /**
+     * Reads an object from the buffer's position, advancing it past what it read.
+     * 
+     * @param in the buffer to read from
+     * @return the object
+     * @throws BufferUnderflowException if the buffer ends partway through the object
+     */
+    T decode(ByteBuffer in) throws BufferUnderflowException;
+}
+
+/**
+ * The codecs for the common key and value types.
+ */
+final class Codecs {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private Codecs() {}
+    
+    static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        public int width() {
+            return 4;
+        }
+        
+        public void encode(Integer t, ByteBuffer out) {
+            out.putInt(t);
+        }
+        
+        public Integer decode(ByteBuffer in) {
+            return in.getInt();
+        }
+        
+        public String toString() {
+            return "int";
+        }
+    };
+    
+    static final Codec<Long> LONG = new Codec<Long>() {
+        public int width() {
+            return 8;
+        }
+        
+        public void encode(Long t, ByteBuffer out) {
+            out.putLong(t);
+        }
+        
+        public Long decode(ByteBuffer in) {
+            return in.getLong();
+        }
+        
+        public String toString() {
+            return "long";
+        }
+    };
+    
+    /**
+     * Strings of any length, as an int length and then the UTF-8.
+     */
+    static final Codec<String> STRING = new Codec<String>() {
+        public int width() {
+            return VARIABLE;
+        }
+        
+        public void encode(String t, ByteBuffer out) {
+            byte[] bytes = t.getBytes(UTF_8);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+        
+        public String decode(ByteBuffer in) {
+            int length = in.getInt();
+            if (length > in.remaining())
+                throw new BufferUnderflowException();
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+        
+        public String toString() {
+            return "string";
+        }
+    };
+    
+    /**
+     * Returns a codec for strings of up to {@code maxBytes} bytes of UTF-8. Every string takes the full width: a
+     * two-byte length, then the bytes, then zeros.
+     * 
+     * @param maxBytes the most bytes of UTF-8 a string may take
+     * @return the codec
+     * @throws IllegalArgumentException if {@code maxBytes} is negative or more than a two-byte length can count
+     */
+    static Codec<String> string(final int maxBytes) throws IllegalArgumentException {
+        if (maxBytes < 0 || maxBytes > 0xffff)
+            throw new IllegalArgumentException("Illegal string width: " + maxBytes);
+        
+        return new Codec<String>() {
+            public int width() {
+                return 2 + maxBytes;
+            }
+            
+            public void encode(String t, ByteBuffer out) throws IllegalArgumentException {
+                byte[] bytes = t.getBytes(UTF_8);
+                if (bytes.length > maxBytes)
+                    throw new IllegalArgumentException("String too long: " + bytes.length + " bytes");
+                out.putShort((short) bytes.length);
+                out.put(bytes);
+                for (int i = bytes.length; i < maxBytes; i++)
+                    out.put((byte) 0);
+            }
+            
+            public String decode(ByteBuffer in) {
+                byte[] bytes = new byte[in.getShort() & 0xffff];
+                in.get(bytes);
+                in.position(in.position() + maxBytes - bytes.length);
+                return new String(bytes, UTF_8);
+            }
+            
+            public String toString() {
+                return "string(" + maxBytes + ")";
+            }
+        };
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * ConcurrentChainingHashtable.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * A thread-safe general-chaining hash table.
+ * <p>
+ * The table is split into segments by the high bits of the key's hash. Each segment is a small chaining table of its
+ * own, with buckets made by the delegate supplier, a read-write lock, and its own size. Lookups take the segment's read
+ * lock, so they only wait for writers to the same segment; {@code put} and {@code delete} take its write lock. A segment
+ * resizes on its own and incrementally, as in {@link ChainingHashtable.Resizing#INCREMENTAL} mode: it allocates the new
+ * bucket array, then each {@code put} or {@code delete} on the segment moves a few old buckets into it, enough that
+ * the move ends before the next resize could start. So no operation, read or write, waits for more than one such
+ * step of a rehash, and lookups check whichever array still holds the key's bucket.
+ * <p>
+ * {@code size}, {@code containsValue} and {@code getAllKeys} visit the segments one at a time, so they may miss the
+ * effect of operations that run alongside them. {@code clear} likewise clears one segment at a time.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ConcurrentChainingHashtable<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+    final static int DEF_CONCURRENCY = 16;
+    final static DictionarySupplier DEF_SUPPLIER = new LinkedListSupplier();
+    
+    private final Segment<K, V>[] segments;
+    private final int segmentShift; // the segment is the top bits of the 31-bit hash
+    
+    private final DictionarySupplier supplier;
+    private final double maxFullness;
+    private final double minFullness;
+    private final double setFullness;
+    private final int floor; // the capacity each segment starts at, and never shrinks below
+    
+    /**
+     * Primary constructor.
+     * 
+     * @param delegateSupplier makes the buckets; the buckets only need to be safe for concurrent reads
+     * @param concurrency the number of segments, which is rounded up to a power of two
+     * @param maximum
+     * @param minimum
+     * @param setFactor
+     * @param expectedSize how many entries the table should hold without resizing, assuming they spread evenly over
+     *            the segments; no segment shrinks below its share of this
+     * @throws IllegalArgumentException if {@code concurrency} isn't positive, {@code minimum} is less than zero,
+     *             {@code setFactor} is less than or equal to {@code minimum}, {@code maximum} is less than or equal to
+     *             {@code setFactor} or {@code expectedSize} is negative
+     */
+    public ConcurrentChainingHashtable(DictionarySupplier delegateSupplier, int concurrency, double maximum,
+            double minimum, double setFactor, int expectedSize) throws IllegalArgumentException {
+        if (concurrency <= 0 || concurrency > 1 << 16)
+            throw new IllegalArgumentException("Illegal concurrency: " + concurrency);
+        if (0 > minimum)
+            throw new IllegalArgumentException("Illegal minimum fullness: " + minimum);
+        if (minimum >= setFactor)
+            throw new IllegalArgumentException("Minimum fullness is greater than or equal to set.");
+        if (setFactor >= maximum)
+            throw new IllegalArgumentException("Set fullness is greater than or equal to maximum.");
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        
+        supplier = delegateSupplier;
+        maxFullness = maximum;
+        minFullness = minimum;
+        setFullness = setFactor;
+        
+        int count = Indexing.POWER_OF_TWO.capacity(concurrency);
+        segmentShift = 31 - Integer.numberOfTrailingZeros(count);
+        floor = Math.max(ChainingHashtable.DEF_SIZE, (int) Math.ceil((double) expectedSize / count / setFactor));
+        
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] s = (Segment<K, V>[]) new Segment[count];
+        for (int i = 0; i < count; i++)
+            s[i] = new Segment<K, V>(this);
+        segments = s;
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param delegateSupplier
+     * @param concurrency
+     * @param maximum
+     * @param minimum
+     * @param setFactor
+     */
+    public ConcurrentChainingHashtable(DictionarySupplier delegateSupplier, int concurrency, double maximum,
+            double minimum, double setFactor) throws IllegalArgumentException {
+        this(delegateSupplier, concurrency, maximum, minimum, setFactor, 0);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param delegateSupplier
+     * @param concurrency
+     * @param expectedSize
+     */
+    public ConcurrentChainingHashtable(DictionarySupplier delegateSupplier, int concurrency, int expectedSize) {
+        this(delegateSupplier, concurrency, ChainingHashtable.DEF_MAX, ChainingHashtable.DEF_MIN,
+                ChainingHashtable.DEF_SET, expectedSize);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param delegateSupplier
+     * @param concurrency
+     */
+    public ConcurrentChainingHashtable(DictionarySupplier delegateSupplier, int concurrency) {
+        this(delegateSupplier, concurrency, 0);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param delegateSupplier
+     */
+    public ConcurrentChainingHashtable(DictionarySupplier delegateSupplier) {
+        this(delegateSupplier, DEF_CONCURRENCY);
+    }
+    
+    /**
+     * Default constructor.
+     */
+    public ConcurrentChainingHashtable() {
+        this(DEF_SUPPLIER);
+    }
+    
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> s : segments)
+            size += s.size;
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        for (Segment<K, V> s : segments)
+            if (s.size != 0)
+                return false;
+        return true;
+    }
+    
+    private static int hash(Object key) {
+        return Indexing.POWER_OF_TWO.spread(key.hashCode());
+    }
+    
+    private Segment<K, V> segmentFor(int h) {
+        return segments[segmentShift == 31 ? 0 : h >>> segmentShift];
+    }
+    
+    public V get(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        int h = hash(key);
+        Segment<K, V> s = segmentFor(h);
+        s.readLock().lock();
+        try {
+            Dictionary<K, V> st = s.bucket(h, false);
+            return st == null ? null : st.get(key);
+        } finally {
+            s.readLock().unlock();
+        }
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        int h = hash(key);
+        Segment<K, V> s = segmentFor(h);
+        s.readLock().lock();
+        try {
+            Dictionary<K, V> st = s.bucket(h, false);
+            return st != null && st.containsKey(key);
+        } finally {
+            s.readLock().unlock();
+        }
+    }
+    
+    public boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        for (Segment<K, V> s : segments) {
+            s.readLock().lock();
+            try {
+                if (s.containsValue(value))
+                    return true;
+            } finally {
+                s.readLock().unlock();
+            }
+        }
+        return false;
+    }
+    
+    public Set<K> getAllKeys() {
+        final Set<K> keySet = new HashSet<K>();
+        forEach(new EntryVisitor<K, V>() {
+            public void visit(K key, V value) {
+                keySet.add(key);
+            }
+        });
+        return keySet;
+    }
+    
+    /**
+     * Visits one segment at a time, under its read lock, so the visitor may see some of the changes made to the other
+     * segments meanwhile.
+     */
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (Segment<K, V> s : segments) {
+            s.readLock().lock();
+            try {
+                s.forEach(visitor);
+            } finally {
+                s.readLock().unlock();
+            }
+        }
+    }
+    
+    public V put(K key, V val) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        int h = hash(key);
+        Segment<K, V> s = segmentFor(h);
+        s.writeLock().lock();
+        try {
+            if (s.oldArray != null)
+                s.migrate(s.migrationStep);
+            V value = s.bucket(h, true).put(key, val);
+            if (value == null) {
+                s.size++;
+                s.resizeIfNeeded();
+            }
+            return value;
+        } finally {
+            s.writeLock().unlock();
+        }
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        int h = hash(key);
+        Segment<K, V> s = segmentFor(h);
+        s.writeLock().lock();
+        try {
+            if (s.oldArray != null)
+                s.migrate(s.migrationStep);
+            Dictionary<K, V> st = s.bucket(h, false);
+            V value = st == null ? null : st.delete(key);
+            if (value != null) {
+                s.size--;
+                s.resizeIfNeeded();
+            }
+            return value;
+        } finally {
+            s.writeLock().unlock();
+        }
+    }
+    
+    public void clear() {
+        for (Segment<K, V> s : segments) {
+            s.writeLock().lock();
+            try {
+                s.array = s.newArray(floor);
+                s.oldArray = null;
+                s.size = 0;
+            } finally {
+                s.writeLock().unlock();
+            }
+        }
+    }
+    
+    public String toString() {
+        return String.format("Concurrent Chaining Hashtable (%s, %d segments)", supplier, segments.length);
+    }
+    
+    /**
+     * One independently locked and resized part of the table. The lock is the segment itself.
+     */
+    @SuppressWarnings("serial")
+    private static class Segment<K extends Comparable<K>, V> extends ReentrantReadWriteLock {
+        private final ConcurrentChainingHashtable<K, V> table;
+        Dictionary<K, V>[] array; // buckets; null until something is put in them
+        Dictionary<K, V>[] oldArray; // the buckets a resize is moving out of, or null
+        int migrated; // old buckets below this index have been moved into array
+        int migrationStep; // old buckets each put or delete moves; enough to finish before the next resize
+        volatile int size; // only written under the write lock; volatile so size() can read it without locking
+        
+        // Puts each entry it visits into its bucket of the current array; resizes move the old buckets' entries with it.
+        private final EntryVisitor<K, V> mover = new EntryVisitor<K, V>() {
+            public void visit(K key, V value) {
+                int h = hash(key);
+                Dictionary<K, V> st = array[h % array.length];
+                if (st == null)
+                    st = array[h % array.length] = table.supplier.<K, V> getNew();
+                st.put(key, value);
+            }
+        };
+        
+        Segment(ConcurrentChainingHashtable<K, V> table) {
+            this.table = table;
+            array = newArray(table.floor);
+        }
+        
+        Dictionary<K, V>[] newArray(int length) {
+            @SuppressWarnings("unchecked")
+            Dictionary<K, V>[] a = (Dictionary<K, V>[]) new Dictionary[length];
+            return a;
+        }
+        
+        /**
+         * Returns the bucket of the given hash, which is in the old array if a resize hasn't moved it yet. Must hold a
+         * lock, and the write lock to create it.
+         * 
+         * @param h the key's hash
+         * @param create whether to make the bucket if it doesn't exist yet
+         * @return the bucket, or {@code null} if it doesn't exist and {@code create} is false
+         */
+        Dictionary<K, V> bucket(int h, boolean create) {
+            Dictionary<K, V>[] a = array;
+            if (oldArray != null && h % oldArray.length >= migrated)
+                a = oldArray;
+            int index = h % a.length;
+            if (a[index] == null && create)
+                a[index] = table.supplier.<K, V> getNew();
+            return a[index];
+        }
+        
+        /**
+         * Must hold a lock.
+         */
+        boolean containsValue(V value) {
+            for (Dictionary<K, V> st : array)
+                if (st != null && st.containsValue(value))
+                    return true;
+            if (oldArray != null)
+                for (Dictionary<K, V> st : oldArray)
+                    if (st != null && st.containsValue(value))
+                        return true;
+            return false;
+        }
+        
+        /**
+         * Must hold a lock.
+         */
+        void forEach(EntryVisitor<? super K, ? super V> visitor) {
+            for (Dictionary<K, V> st : array)
+                if (st != null)
+                    st.forEach(visitor);
+            if (oldArray != null)
+                for (Dictionary<K, V> st : oldArray)
+                    if (st != null)
+                        st.forEach(visitor);
+        }
+        
+        /**
+         * Starts moving this segment into a new array if its size is out of bounds. Must hold the write lock.
+         */
+        void resizeIfNeeded() {
+            int capacity = array.length;
+            if (!(size < capacity * table.minFullness && capacity > table.floor)
+                    && !(size > capacity * table.maxFullness))
+                return;
+            
+            int newcap = Math.max(table.floor, (int) (size / table.setFullness));
+            if (newcap == capacity)
+                return;
+            assert oldArray == null; // The migration step saw to it that the last resize has ended.
+            oldArray = array;
+            migrated = 0;
+            array = newArray(newcap);
+            
+            // The fewest puts or deletes that could take the segment past its maximum or minimum fullness again must
+            // be enough to move every old bucket.
+            long ops = (long) Math.floor(newcap * table.maxFullness) + 1 - size;
+            if (newcap > table.floor)
+                ops = Math.min(ops, size - ((long) Math.ceil(newcap * table.minFullness) - 1));
+            ops = Math.max(1, ops);
+            migrationStep = (int) Math.max(ChainingHashtable.MIGRATION_STEP, (capacity + ops - 1) / ops);
+        }
+        
+        /**
+         * Moves up to {@code buckets} more of the old buckets into the new array, ending the resize once they're all
+         * moved. Must hold the write lock.
+         * 
+         * @param buckets the number of old buckets to move
+         */
+        void migrate(int buckets) {
+            int end = Math.min(oldArray.length, migrated + buckets);
+            while (migrated < end) {
+                Dictionary<K, V> st = oldArray[migrated];
+                if (st != null) {
+                    st.forEach(mover);
+                    oldArray[migrated] = null;
+                }
+                migrated++;
+            }
+            if (migrated == oldArray.length)
+                oldArray = null;
+        }
+    }
+}
+
+class ConcurrentChainingHashtableSupplier implements SizedDictionarySupplier {
+    private final DictionarySupplier supplier;
+    private final int concurrency;
+    private final int expectedSize;
+    
+    /**
+     * Constructs empty {@code ConcurrentChainingHashtable}'s with the specified number of segments.
+     * 
+     * @param delegateSupplier
+     * @param concurrency the number of segments
+     * @param expectedSize how many entries the tables hold before their first resize
+     * 
+     * @see ConcurrentChainingHashtable
+     */
+    public ConcurrentChainingHashtableSupplier(DictionarySupplier delegateSupplier, int concurrency,
+            int expectedSize) {
+        supplier = delegateSupplier;
+        this.concurrency = concurrency;
+        this.expectedSize = expectedSize;
+    }
+    
+    public ConcurrentChainingHashtableSupplier(DictionarySupplier delegateSupplier, int concurrency) {
+        this(delegateSupplier, concurrency, 0);
+    }
+    
+    public ConcurrentChainingHashtableSupplier(DictionarySupplier delegateSupplier) {
+        this(delegateSupplier, ConcurrentChainingHashtable.DEF_CONCURRENCY);
+    }
+    
+    public ConcurrentChainingHashtableSupplier() {
+        this(ConcurrentChainingHashtable.DEF_SUPPLIER);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return getNew(expectedSize);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew(int expectedSize) {
+        return new ConcurrentChainingHashtable<K, V>(supplier, concurrency, expectedSize);
+    }
+    
+    public String toString() {
+        String name = "CHT";
+        if (concurrency != ConcurrentChainingHashtable.DEF_CONCURRENCY)
+            name += "(" + concurrency + ")";
+        if (expectedSize != 0)
+            name += "[" + expectedSize + "]";
+        return String.format("%s:%s", name, supplier.toString());
+    }
+}
@@ -4,16 +4,22 @@
  * Copyright (c) 2013 Jackson Scholl
  */
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * A map; maps keys to values.
+ * <p>
+ * {@link #forEach(EntryVisitor)} and {@link #iterator()} walk the mappings where they are stored, so a full scan
+ * doesn't have to build a set of the keys with {@link #getAllKeys()} and then look each one up again.
  * 
  * @param <K> Key type
  * @param <V> Value type
  * 
  */
-public interface Dictionary<K extends Comparable<K>, V> {
+public interface Dictionary<K extends Comparable<K>, V> extends Iterable<Map.Entry<K, V>> {
     /**
      * Returns the current number of key-value mappings.
      * 
@@ -63,6 +69,23 @@ public interface Dictionary<K extends Comparable<K>, V> {
      */
     Set<K> getAllKeys();
     
+    /**
+     * Shows every mapping to {@code visitor}, one at a time, in no particular order. The visitor must not modify this
+     * map.
+     * 
+     * @param visitor the visitor
+     */
+    void forEach(EntryVisitor<? super K, ? super V> visitor);
+    
+    /**
+     * Returns an iterator over the mappings, in no particular order. The entries may be the map's own, in which case
+     * they change along with it. The iterator need not support {@code remove}, nor the entries {@code setValue}, and
+     * the map must not be modified while the iterator is in use.
+     * 
+     * @return an iterator over the mappings
+     */
+    Iterator<Map.Entry<K, V>> iterator();
+    
     /**
      * Associates the specified value with the specified key in this map. If the map previously contained a mapping for
      * the key, the old value is replaced by the specified value.
@@ -90,6 +113,37 @@ public interface Dictionary<K extends Comparable<K>, V> {
      */
     V delete(K key) throws NullPointerException, UnsupportedOperationException;
     
+    /**
+     * Copies all of the mappings from the specified map into this map, as if by calling {@code put} on each of them.
+     * Implementations may make room for all of them up front rather than resizing as they go.
+     * 
+     * @param m the mappings to store in this map
+     * 
+     * @throws NullPointerException if {@code m} contains a null key or value, in which case this map is unchanged
+     */
+    void putAll(Map<? extends K, ? extends V> m) throws NullPointerException;
+    
+    /**
+     * Looks up all of the specified keys at once.
+     * 
+     * @param keys the keys to locate
+     * @return a map from each of the keys that is in this map to its value
+     * 
+     * @throws NullPointerException if {@code keys} contains null
+     */
+    Map<K, V> getAll(Collection<? extends K> keys) throws NullPointerException;
+    
+    /**
+     * Removes the mappings for all of the specified keys that are present, as if by calling {@code delete} on each of
+     * them.
+     * 
+     * @param keys the keys whose mappings are to be removed
+     * @return the number of mappings removed
+     * 
+     * @throws NullPointerException if {@code keys} contains null, in which case this map is unchanged
+     */
+    int deleteAll(Collection<? extends K> keys) throws NullPointerException;
+    
     /**
      * Remove all mappings. The map will be empty after this call returns.
      * 
@@ -97,6 +151,23 @@ public interface Dictionary<K extends Comparable<K>, V> {
     void clear();
 }
 
+/**
+ * Is shown the mappings of a dictionary one at a time.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @see Dictionary#forEach(EntryVisitor)
+ */
+interface EntryVisitor<K, V> {
+    /**
+     * Visits one mapping.
+     * 
+     * @param key the key
+     * @param value the value mapped to {@code key}
+     */
+    void visit(K key, V value);
+}
+
 /**
  * Makes dictionaries.
  * 
@@ -110,3 +181,19 @@ interface DictionarySupplier {
      */
     <K extends Comparable<K>, V> Dictionary<K, V> getNew();
 }
+
+/**
+ * Makes dictionaries sized up front for a given number of entries, when that's known before they're filled.
+ * 
+ * @author Jackson Scholl
+ */
+interface SizedDictionarySupplier extends DictionarySupplier {
+    /**
+     * Returns a new dictionary that holds {@code expectedSize} entries without resizing.
+     * 
+     * @param expectedSize how many entries it will hold
+     * @return new dictionary
+     * @throws IllegalArgumentException if {@code expectedSize} is negative
+     */
+    <K extends Comparable<K>, V> Dictionary<K, V> getNew(int expectedSize) throws IllegalArgumentException;
+}
@@ -0,0 +1,1672 @@
+/*
+ * DictionaryBenchmark.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl
+ */
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Benchmark harness for the dictionary implementations.
+ * <p>
+ * Every benchmark is run in its own freshly forked JVM (so that the JIT profile of one dictionary does not pollute
+ * another), for a number of untimed warmup iterations followed by the timed measurement iterations. Each iteration
+ * calls the benchmark's untimed {@code setup} and then times {@code run} only; all keys and operations are generated
+ * up front from a fixed seed, so the timed loop contains nothing but dictionary calls. Where the JVM can report it,
+ * the bytes allocated by {@code run} are recorded alongside the time. Benchmarks that time each operation on its own
+ * also report latency percentiles.
+ * <p>
+ * Options (named after their JMH counterparts):
+ * 
+ * <pre>
+ *   -s   suite           which suite to run: ops, delete-load, probe-load, int, indexing, resize, concurrent,
+ *                        bulk, presize, scan, clear, value-index, ordered, mapped, snapshot, durable,
+ *                        cache, hit-ratio, ttl, instrumented
+ *                        (default: ops)
+ *   -bm  a,b,...         only run the named benchmarks
+ *   -d   a,b,...         only run against the named dictionaries
+ *   -n   size            number of keys (default: 10000)
+ *   -wi  count           warmup iterations (default: 5)
+ *   -i   count           measurement iterations (default: 10)
+ *   -f   count           forks per benchmark, 0 to run in this JVM (default: 1)
+ *   -t   count           most threads for the concurrent and instrumented suites (default: available processors)
+ *   -rf  json|csv        result format (default: json)
+ *   -rff file            result file (default: benchmark.json or benchmark.csv)
+ * </pre>
+ * 
+ * @author Jackson Scholl
+ */
+public class DictionaryBenchmark {
+    private static final long SEED = 1176072517698283250L;
+    private static final String SAMPLE = "#sample";
+    
+    /**
+     * Number of {@code containsValue} calls per iteration; each one is a full scan.
+     */
+    private static final int SCAN_OPS = 1000;
+    
+    /**
+     * Number of {@code getAllKeys} calls per iteration.
+     */
+    private static final int KEY_SET_OPS = 10;
+    
+    /**
+     * Written by every benchmark so that the JIT can't throw away the results.
+     */
+    static int sink;
+    
+    /**
+     * Reports per-thread allocation, or {@code null} if this JVM can't.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    
+    private String suite = "ops";
+    private Set<String> benchmarks = null;
+    private Set<String> dictionaries = null;
+    private int size = 10000;
+    private int warmups = 5;
+    private int iterations = 10;
+    private int forks = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String format = "json";
+    private String resultFile = null;
+    private int only = -1;
+    
+    private final Map<String, Result> results = new LinkedHashMap<String, Result>();
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        DictionaryBenchmark bench = new DictionaryBenchmark();
+        bench.parse(args);
+        
+        if (bench.only >= 0) {
+            bench.runInChild();
+            return;
+        }
+        
+        long start = System.currentTimeMillis();
+        bench.runAll(args);
+        long end = System.currentTimeMillis();
+        
+        bench.printResults(System.out);
+        String file = bench.resultFile != null ? bench.resultFile : "benchmark." + bench.format;
+        bench.writeResults(file);
+        System.out.printf("%nResults written to %s; took %.3f seconds%n", file, (end - start) / 1000.0);
+    }
+    
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for option " + opt);
+            String val = args[++i];
+            
+            if (opt.equals("-s"))
+                suite = val;
+            else if (opt.equals("-bm"))
+                benchmarks = new HashSet<String>(Arrays.asList(val.split(",")));
+            else if (opt.equals("-d"))
+                dictionaries = new HashSet<String>(Arrays.asList(val.split(",")));
+            else if (opt.equals("-n"))
+                size = Integer.parseInt(val);
+            else if (opt.equals("-wi"))
+                warmups = Integer.parseInt(val);
+            else if (opt.equals("-i"))
+                iterations = Integer.parseInt(val);
+            else if (opt.equals("-f"))
+                forks = Integer.parseInt(val);
+            else if (opt.equals("-t"))
+                threads = Integer.parseInt(val);
+            else if (opt.equals("-rf"))
+                format = val.toLowerCase();
+            else if (opt.equals("-rff"))
+                resultFile = val;
+            else if (opt.equals("-only"))
+                only = Integer.parseInt(val);
+            else
+                throw new IllegalArgumentException("Unknown option " + opt);
+        }
+        if (!format.equals("json") && !format.equals("csv"))
+            throw new IllegalArgumentException("Unknown result format " + format);
+    }
+    
+    /**
+     * Runs every benchmark of the selected suite, either here or in forked JVMs.
+     * 
+     * @param args the command line, passed on to the forks
+     */
+    private void runAll(String[] args) throws IOException, InterruptedException {
+        List<Benchmark> list = suite(suite);
+        System.out.printf("Suite %s: %d benchmarks, n=%d, %d warmup + %d measurement iterations, %d fork(s)%n%n", suite,
+                list.size(), size, warmups, iterations, forks);
+        
+        for (int b = 0; b < list.size(); b++) {
+            Benchmark bm = list.get(b);
+            System.out.printf("%-16s %-16s ", bm.name, bm.dictionary);
+            if (forks == 0) {
+                measure(bm, false);
+            } else {
+                for (int f = 0; f < forks; f++)
+                    fork(args, b);
+            }
+            Result res = results.get(bm.id());
+            System.out.printf("%s%n", res == null ? "no samples" : res.samples);
+        }
+    }
+    
+    /**
+     * Runs one benchmark in a new JVM and collects the samples it prints.
+     * 
+     * @param args the original command line
+     * @param index the benchmark to run
+     */
+    private void fork(String[] args, int index) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(DictionaryBenchmark.class.getName());
+        cmd.addAll(Arrays.asList(args));
+        cmd.add("-only");
+        cmd.add(Integer.toString(index));
+        
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(SAMPLE)) {
+                String[] parts = line.split("\t");
+                double[] pcts = new double[4];
+                for (int i = 0; i < 4; i++)
+                    pcts[i] = Double.parseDouble(parts[6 + i]);
+                record(parts[1], parts[2], Integer.parseInt(parts[3]), Double.parseDouble(parts[4]),
+                        Double.parseDouble(parts[5]), pcts, Double.parseDouble(parts[10]));
+            } else {
+                System.out.println(line);
+            }
+        }
+        in.close();
+        if (p.waitFor() != 0)
+            throw new IllegalStateException("Fork exited with status " + p.exitValue());
+    }
+    
+    private void runInChild() {
+        measure(suite(suite).get(only), true);
+    }
+    
+    /**
+     * Warms up and then measures a single benchmark.
+     * 
+     * @param bm the benchmark
+     * @param child whether to print the samples for a parent JVM instead of recording them
+     */
+    private void measure(Benchmark bm, boolean child) {
+        for (int i = 0; i < warmups; i++) {
+            bm.setup();
+            sink += bm.run();
+        }
+        for (int i = 0; i < iterations; i++) {
+            bm.setup();
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+            int ops = bm.run();
+            long end = System.nanoTime();
+            long endBytes = allocatedBytes();
+            sink += ops;
+            
+            double nsPerOp = ((double) (end - start)) / ops;
+            double bytesPerOp = ((double) (endBytes - startBytes)) / ops;
+            
+            double[] pcts = new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN };
+            long[] latencies = bm.latencies();
+            if (latencies != null) {
+                long[] sorted = Arrays.copyOf(latencies, ops);
+                Arrays.sort(sorted);
+                pcts[0] = sorted[(int) (0.5 * (ops - 1))];
+                pcts[1] = sorted[(int) (0.99 * (ops - 1))];
+                pcts[2] = sorted[(int) (0.999 * (ops - 1))];
+                pcts[3] = sorted[ops - 1];
+            }
+            
+            double hitRatio = bm.hitRatio();
+            
+            if (child)
+                System.out.printf("%s\t%s\t%s\t%d\t%s\t%s\t%s\t%s\t%s\t%s\t%s%n", SAMPLE, bm.name, bm.dictionary,
+                        size, nsPerOp, bytesPerOp, pcts[0], pcts[1], pcts[2], pcts[3], hitRatio);
+            else
+                record(bm.name, bm.dictionary, size, nsPerOp, bytesPerOp, pcts, hitRatio);
+        }
+    }
+    
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+    }
+    
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    /**
+     * Records one measurement iteration.
+     * 
+     * @param pcts the 50th, 99th and 99.9th percentile and maximum latencies in ns, or NaNs if there are none
+     * @param hitRatio the fraction of lookups that hit, or NaN if there isn't one
+     */
+    private void record(String name, String dictionary, int n, double nsPerOp, double bytesPerOp, double[] pcts,
+            double hitRatio) {
+        String id = name + "\t" + dictionary;
+        Result res = results.get(id);
+        if (res == null) {
+            res = new Result(name, dictionary, n);
+            results.put(id, res);
+        }
+        res.samples.add(nsPerOp);
+        res.alloc.add(bytesPerOp);
+        if (!Double.isNaN(pcts[0])) {
+            res.p50.add(pcts[0]);
+            res.p99.add(pcts[1]);
+            res.p999.add(pcts[2]);
+            res.max = Double.isNaN(res.max) ? pcts[3] : Math.max(res.max, pcts[3]);
+        }
+        if (!Double.isNaN(hitRatio))
+            res.hitRatio.add(hitRatio);
+    }
+    
+    private void printResults(PrintStream out) {
+        out.printf("%n%-16s %-16s %10s %12s %10s %10s%n", "Benchmark", "Dictionary", "Size", "ns/op", "Error", "B/op");
+        boolean latencies = false, hitRatios = false;
+        for (Result res : results.values()) {
+            out.printf("%-16s %-16s %10d %12.3f %10.3f %10.1f%n", res.benchmark, res.dictionary, res.size,
+                    res.samples.mean(), res.samples.stddevMean(), res.alloc.mean());
+            latencies |= res.p50.size() > 0;
+            hitRatios |= res.hitRatio.size() > 0;
+        }
+        
+        if (hitRatios) {
+            out.printf("%n%-16s %-16s %10s %12s%n", "Benchmark", "Dictionary", "Size", "hit ratio");
+            for (Result res : results.values())
+                if (res.hitRatio.size() > 0)
+                    out.printf("%-16s %-16s %10d %12.4f%n", res.benchmark, res.dictionary, res.size,
+                            res.hitRatio.mean());
+        }
+        
+        if (!latencies)
+            return;
+        out.printf("%n%-16s %-16s %10s %12s %12s %12s %12s%n", "Benchmark", "Dictionary", "Size", "p50 ns", "p99 ns",
+                "p99.9 ns", "max ns");
+        for (Result res : results.values())
+            if (res.p50.size() > 0)
+                out.printf("%-16s %-16s %10d %12.0f %12.0f %12.0f %12.0f%n", res.benchmark, res.dictionary, res.size,
+                        res.p50.mean(), res.p99.mean(), res.p999.mean(), res.max);
+    }
+    
+    private void writeResults(String file) throws IOException {
+        PrintStream out = new PrintStream(new File(file));
+        try {
+            if (format.equals("csv")) {
+                out.println("benchmark,dictionary,size,samples,mean_ns_per_op,error_ns_per_op,alloc_bytes_per_op,"
+                        + "p50_ns,p99_ns,p999_ns,max_ns,hit_ratio");
+                for (Result res : results.values()) {
+                    out.printf(Locale.ROOT, "%s,%s,%d,%d,%.5f,%.5f,%.3f", csv(res.benchmark), csv(res.dictionary),
+                            res.size, res.samples.size(), res.samples.mean(), res.samples.stddevMean(),
+                            res.alloc.mean());
+                    if (res.p50.size() > 0)
+                        out.printf(Locale.ROOT, ",%.0f,%.0f,%.0f,%.0f", res.p50.mean(), res.p99.mean(),
+                                res.p999.mean(), res.max);
+                    else
+                        out.print(",,,,");
+                    if (res.hitRatio.size() > 0)
+                        out.printf(Locale.ROOT, ",%.5f%n", res.hitRatio.mean());
+                    else
+                        out.println(",");
+                }
+            } else {
+                out.println("[");
+                int i = 0;
+                for (Result res : results.values()) {
+                    out.printf(Locale.ROOT, "  {\"benchmark\": %s, \"dictionary\": %s, \"size\": %d, \"samples\": %d, "
+                            + "\"mean_ns_per_op\": %.5f, \"error_ns_per_op\": %.5f, \"alloc_bytes_per_op\": %.3f",
+                            json(res.benchmark), json(res.dictionary), res.size, res.samples.size(),
+                            res.samples.mean(), res.samples.stddevMean(), res.alloc.mean());
+                    if (res.p50.size() > 0)
+                        out.printf(Locale.ROOT, ", \"p50_ns\": %.0f, \"p99_ns\": %.0f, \"p999_ns\": %.0f, "
+                                + "\"max_ns\": %.0f", res.p50.mean(), res.p99.mean(), res.p999.mean(), res.max);
+                    if (res.hitRatio.size() > 0)
+                        out.printf(Locale.ROOT, ", \"hit_ratio\": %.5f", res.hitRatio.mean());
+                    out.printf("}%s%n", ++i < results.size() ? "," : "");
+                }
+                out.println("]");
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    private static String csv(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0)
+            return s;
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+    
+    private static String json(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+    
+    /**
+     * Builds the benchmarks of the named suite. Must be deterministic, since forks find their benchmark by index.
+     * 
+     * @param name the suite name
+     * @return the benchmarks, in the order they will be run
+     */
+    private List<Benchmark> suite(String name) {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        
+        if (name.equals("ops")) {
+            DictionarySupplier LLsup = new LinkedListSupplier();
+            DictionarySupplier RBTsup = new RedBlackTreeSupplier();
+            DictionarySupplier[] sups = new DictionarySupplier[] { LLsup, RBTsup, new ProbingHashtableSupplier(),
+                    new ProbingHashtableSupplier(0.55, 0.45), new ProbingHashtableSupplier(0.60, 0.40),
+                    new ProbingHashtableSupplier(0.65, 0.38), new ProbingHashtableSupplier(0.70, 0.36),
+                    new ProbingHashtableSupplier(0.80, 0.30), new ProbingHashtableSupplier(0.90, 0.27),
+                    new ProbingHashtableSupplier(0.95, 0.15), new ChainingHashtableSupplier(LLsup),
+                    new ChainingHashtableSupplier(RBTsup), new ChainingHashtableSupplier(new ProbingHashtableSupplier()),
+                    new RobinHoodHashtableSupplier(), new RobinHoodHashtableSupplier(0.95, 0.15), new MockSupplier() };
+            Workload w = new Workload(size);
+            
+            for (DictionarySupplier sup : sups) {
+                list.add(new GetBenchmark(sup, w));
+                list.add(new PutBenchmark(sup, w));
+                list.add(new DeleteBenchmark(sup, w, size));
+                list.add(new ContainsKeyBenchmark(sup, w));
+                list.add(new ContainsValueBenchmark(sup, w));
+                list.add(new GetAllKeysBenchmark(sup, w));
+                list.add(new MixedBenchmark(sup, w));
+            }
+        } else if (name.equals("delete-load")) {
+            // Delete a tenth of the keys from tables held at a given load factor: the table is resized to just
+            // under the load and grows only just over it, and the minimum is low enough that it never shrinks.
+            // Keys are spread over the whole int range; dense keys would hash into one long cluster.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            double[] loads = new double[] { 0.50, 0.60, 0.70, 0.80, 0.90, 0.95 };
+            ProbingHashtable.Deletion[] modes = ProbingHashtable.Deletion.values();
+            
+            for (ProbingHashtable.Deletion mode : modes)
+                for (double load : loads)
+                    list.add(new DeleteBenchmark(new ProbingHashtableSupplier(load + 0.02, 0.05, load - 0.01, mode), w,
+                            size / 10));
+        } else if (name.equals("probe-load")) {
+            // Hits, misses and deletes against linear probing and Robin Hood tables held at a given load factor, as
+            // in delete-load; both index by modulo, so the capacities aren't rounded away from that load. The lookups
+            // are drawn from the whole int range, so nearly all of them miss.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            double[] loads = new double[] { 0.50, 0.60, 0.70, 0.80, 0.90, 0.95 };
+            
+            for (double load : loads) {
+                DictionarySupplier[] sups = new DictionarySupplier[] {
+                        new ProbingHashtableSupplier(load + 0.02, 0.05, load - 0.01,
+                                ProbingHashtable.Deletion.BACKWARD_SHIFT),
+                        new RobinHoodHashtableSupplier(load + 0.02, 0.05, load - 0.01, Indexing.MODULO) };
+                for (DictionarySupplier sup : sups) {
+                    list.add(new GetBenchmark("getHit", sup, w, w.deletes));
+                    list.add(new GetBenchmark("getMiss", sup, w, w.lookups));
+                    list.add(new DeleteBenchmark(sup, w, size / 10));
+                }
+            }
+        } else if (name.equals("int")) {
+            // Integer-to-Integer tables through the Dictionary interface, against IntIntDictionary used directly.
+            // The "Seq" benchmarks put the keys 0 to n - 1 in order, as ids arrive; a table that uses an int as its
+            // own hash lays them out as one long cluster, which its misses and deletes then walk.
+            Workload w = new Workload(size);
+            Workload seq = new Workload(size, 2 * size, true);
+            DictionarySupplier[] sups = new DictionarySupplier[] { new ProbingHashtableSupplier(),
+                    new ProbingHashtableSupplier(ProbingHashtable.DEF_MAX, ProbingHashtable.DEF_MIN,
+                            ProbingHashtable.DEF_SET, ProbingHashtable.Deletion.BACKWARD_SHIFT),
+                    new RobinHoodHashtableSupplier(), new IntIntDictionarySupplier() };
+            
+            for (DictionarySupplier sup : sups) {
+                list.add(new PutBenchmark(sup, w));
+                list.add(new GetBenchmark(sup, w));
+                list.add(new DeleteBenchmark(sup, w, size));
+                list.add(new PutBenchmark("putSeq", sup, seq));
+                list.add(new GetBenchmark("getSeq", sup, seq, seq.lookups));
+                list.add(new DeleteBenchmark("deleteSeq", sup, seq, size));
+            }
+            list.add(new IntIntBenchmark("put", w));
+            list.add(new IntIntBenchmark("get", w));
+            list.add(new IntIntBenchmark("delete", w));
+            list.add(new IntIntBenchmark("putSeq", "put", seq));
+            list.add(new IntIntBenchmark("getSeq", "get", seq));
+            list.add(new IntIntBenchmark("deleteSeq", "delete", seq));
+        } else if (name.equals("indexing")) {
+            // Modulo indexing against power-of-two capacities with a mixed hash, for both kinds of table.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            
+            for (Indexing indexing : Indexing.values()) {
+                DictionarySupplier[] sups = new DictionarySupplier[] {
+                        new ProbingHashtableSupplier(indexing),
+                        new ProbingHashtableSupplier(ProbingHashtable.DEF_MAX, ProbingHashtable.DEF_MIN,
+                                ProbingHashtable.DEF_SET, ProbingHashtable.Deletion.BACKWARD_SHIFT, indexing),
+                        new ChainingHashtableSupplier(new LinkedListSupplier(), indexing),
+                        new ChainingHashtableSupplier(new ProbingHashtableSupplier(), indexing) };
+                for (DictionarySupplier sup : sups) {
+                    list.add(new PutBenchmark(sup, w));
+                    list.add(new GetBenchmark("getHit", sup, w, w.deletes));
+                    list.add(new GetBenchmark("getMiss", sup, w, w.lookups));
+                    list.add(new DeleteBenchmark(sup, w, size / 10));
+                }
+            }
+        } else if (name.equals("concurrent")) {
+            // Mixed and read-heavy (95% get) operations from 1, 2, 4, ... threads at once, against one global lock, lock
+            // striping and no locks at all.
+            Workload w = new Workload(size);
+            List<Integer> counts = new ArrayList<Integer>();
+            for (int t = 1; t < threads; t *= 2)
+                counts.add(t);
+            counts.add(threads);
+            
+            DictionarySupplier[] sups = new DictionarySupplier[] {
+                    new SynchronizedSupplier(new ChainingHashtableSupplier(new LinkedListSupplier())),
+                    new ConcurrentChainingHashtableSupplier(new LinkedListSupplier()),
+                    new ConcurrentChainingHashtableSupplier(new LinkedListSupplier(), 64),
+                    new LockFreeProbingHashtableSupplier() };
+            for (DictionarySupplier sup : sups) {
+                for (int t : counts)
+                    list.add(new ThreadedMixedBenchmark("mixed", sup, w, w.mix, t));
+                for (int t : counts)
+                    list.add(new ThreadedMixedBenchmark("reads", sup, w, w.reads, t));
+            }
+        } else if (name.equals("bulk")) {
+            // The batch operations against the same work done one key at a time.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            DictionarySupplier[] sups = new DictionarySupplier[] { new ProbingHashtableSupplier(),
+                    new ProbingHashtableSupplier(Indexing.POWER_OF_TWO),
+                    new ChainingHashtableSupplier(new LinkedListSupplier()), new RobinHoodHashtableSupplier() };
+            
+            for (DictionarySupplier sup : sups) {
+                list.add(new PutBenchmark(sup, w));
+                list.add(new PutAllBenchmark(sup, w));
+                list.add(new GetBenchmark(sup, w));
+                list.add(new GetAllBenchmark(sup, w));
+                list.add(new DeleteBenchmark(sup, w, size));
+                list.add(new DeleteAllBenchmark(sup, w));
+            }
+        } else if (name.equals("presize")) {
+            // Filling tables from empty against filling tables made for the whole workload up front. fill times the
+            // construction too, so the presized tables pay for their larger first array.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            DictionarySupplier LLsup = new LinkedListSupplier();
+            DictionarySupplier[] sups = new DictionarySupplier[] { new ProbingHashtableSupplier(),
+                    new ProbingHashtableSupplier(size), new ChainingHashtableSupplier(LLsup),
+                    new ChainingHashtableSupplier(LLsup, size), new RobinHoodHashtableSupplier(),
+                    new RobinHoodHashtableSupplier(size), new IntIntDictionarySupplier(),
+                    new IntIntDictionarySupplier(size) };
+            
+            for (DictionarySupplier sup : sups) {
+                list.add(new FillBenchmark(sup, w));
+                list.add(new PutLatencyBenchmark(sup, w));
+            }
+        } else if (name.equals("scan")) {
+            // Visiting every entry through getAllKeys and get, through forEach, and through the entry iterator.
+            Workload w = new Workload(size);
+            DictionarySupplier LLsup = new LinkedListSupplier();
+            DictionarySupplier[] sups = new DictionarySupplier[] { new RedBlackTreeSupplier(),
+                    new ProbingHashtableSupplier(), new ChainingHashtableSupplier(LLsup),
+                    new ChainingHashtableSupplier(new RedBlackTreeSupplier()), new RobinHoodHashtableSupplier(),
+                    new ConcurrentChainingHashtableSupplier(LLsup) };
+            
+            for (DictionarySupplier sup : sups)
+                for (String scan : new String[] { "getAllKeys", "forEach", "iterator" })
+                    list.add(new ScanBenchmark(scan, sup, w));
+        } else if (name.equals("clear")) {
+            // Emptying a full dictionary.
+            Workload w = new Workload(size);
+            DictionarySupplier[] sups = new DictionarySupplier[] { new RedBlackTreeSupplier(),
+                    new ChainingHashtableSupplier(new LinkedListSupplier()),
+                    new ChainingHashtableSupplier(new RedBlackTreeSupplier()),
+                    new ChainingHashtableSupplier(new LinkedListSupplier(), ChainingHashtable.Resizing.INCREMENTAL),
+                    new ProbingHashtableSupplier() };
+            
+            for (DictionarySupplier sup : sups)
+                list.add(new ClearBenchmark(sup, w));
+        } else if (name.equals("value-index")) {
+            // containsValue with and without a value index, and what the index costs the writes.
+            Workload w = new Workload(size);
+            DictionarySupplier[] sups = new DictionarySupplier[] { new RedBlackTreeSupplier(),
+                    new ProbingHashtableSupplier(), new ChainingHashtableSupplier(new LinkedListSupplier()) };
+            
+            for (DictionarySupplier sup : sups) {
+                for (DictionarySupplier s : new DictionarySupplier[] { sup, new ValueIndexedSupplier(sup) }) {
+                    list.add(new ContainsValueBenchmark(s, w));
+                    list.add(new PutBenchmark(s, w));
+                    list.add(new DeleteBenchmark(s, w, size));
+                }
+            }
+        } else if (name.equals("ordered")) {
+            // The red-black tree against B+ trees of a few fanouts. Rerun with several -n to see where the wide nodes
+            // start to pay: small trees fit in cache either way.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            DictionarySupplier[] sups = new DictionarySupplier[] { new RedBlackTreeSupplier(),
+                    new BPlusTreeSupplier(16), new BPlusTreeSupplier(), new BPlusTreeSupplier(256) };
+            
+            for (DictionarySupplier sup : sups) {
+                list.add(new PutBenchmark(sup, w));
+                list.add(new GetBenchmark("getHit", sup, w, w.deletes));
+                list.add(new GetBenchmark("getMiss", sup, w, w.lookups));
+                list.add(new DeleteBenchmark(sup, w, size));
+                list.add(new MixedBenchmark(sup, w));
+                list.add(new ScanBenchmark("forEach", sup, w));
+            }
+        } else if (name.equals("mapped")) {
+            // Starting up with a full table: rebuilding a probing table by putting every entry against reopening a
+            // mapped one, either just mapping it or also reading every entry. The file stays in the page cache between
+            // iterations, so this is a warm restart; a cold one also waits for the disk. Then what the mapped table
+            // costs per operation once it's open, against the heap table it's modelled on.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            list.add(new FillBenchmark(new ProbingHashtableSupplier(), w));
+            list.add(new FillBenchmark(new ProbingHashtableSupplier(size), w));
+            list.add(new ReopenBenchmark("reopen", w, false));
+            list.add(new ReopenBenchmark("reopenGet", w, true));
+            
+            DictionarySupplier[] sups = new DictionarySupplier[] {
+                    new ProbingHashtableSupplier(ProbingHashtable.DEF_MAX, ProbingHashtable.DEF_MIN,
+                            ProbingHashtable.DEF_SET, ProbingHashtable.Deletion.BACKWARD_SHIFT, Indexing.POWER_OF_TWO),
+                    new MappedProbingHashtableSupplier(Codecs.INTEGER, Codecs.INTEGER) };
+            for (DictionarySupplier sup : sups) {
+                list.add(new PutBenchmark(sup, w));
+                list.add(new GetBenchmark("getHit", sup, w, w.deletes));
+                list.add(new GetBenchmark("getMiss", sup, w, w.lookups));
+                list.add(new DeleteBenchmark(sup, w, size));
+            }
+        } else if (name.equals("snapshot")) {
+            // Saving a full table to a file and loading it back, into a table sized from the snapshot's header and into
+            // one that grows as it fills.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            DictionarySupplier[] sups = new DictionarySupplier[] { new ProbingHashtableSupplier(),
+                    new ChainingHashtableSupplier(new LinkedListSupplier()), new RobinHoodHashtableSupplier() };
+            
+            for (DictionarySupplier sup : sups) {
+                list.add(new SnapshotBenchmark("save", sup, w));
+                list.add(new SnapshotBenchmark("load", sup, w));
+                list.add(new SnapshotBenchmark("loadUnsized", sup, w));
+            }
+        } else if (name.equals("durable")) {
+            // Durable puts from 1, 4 and 16 threads, syncing the log as soon as possible or gathering writes for up to
+            // 0.1 ms or 1 ms first. Every put waits for a sync, so keep -n small.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            for (long micros : new long[] { 0, 100, 1000 })
+                for (int t : new int[] { 1, 4, 16 })
+                    list.add(new DurablePutBenchmark(w, micros, t));
+        } else if (name.equals("cache")) {
+            // What keeping the use order costs: LRU caches big enough for every key, and a tenth of that so the puts
+            // evict, against the unbounded tables they index with.
+            Workload w = new Workload(size);
+            DictionarySupplier PHTsup = new ProbingHashtableSupplier();
+            DictionarySupplier CHTsup = new ChainingHashtableSupplier(new LinkedListSupplier());
+            DictionarySupplier[] sups = new DictionarySupplier[] { PHTsup, new LRUCacheSupplier(size, PHTsup),
+                    new LRUCacheSupplier(Math.max(1, size / 10), PHTsup), CHTsup, new LRUCacheSupplier(size, CHTsup),
+                    new LRUCacheSupplier(Math.max(1, size / 10), CHTsup) };
+            
+            for (DictionarySupplier sup : sups) {
+                list.add(new PutBenchmark(sup, w));
+                list.add(new GetBenchmark(sup, w));
+                list.add(new MixedBenchmark(sup, w));
+            }
+        } else if (name.equals("hit-ratio")) {
+            // How often caches of 1% and 10% of the keys hit, read through (a miss puts the key), on a Zipfian trace and
+            // on the same trace broken up by scans of keys that are never used again. The unbounded table hits on every
+            // key but the first use of each, which is as good as any cache can do. Rerun with -n 1000000 or so: a few
+            // thousand accesses barely fill the larger caches.
+            int keys = Math.max(100, size / 10);
+            Random r = new Random(SEED);
+            Integer[] zipf = CacheTrace.zipf(r, size, keys, CacheTrace.ZIPF_EXPONENT);
+            Integer[] scan = CacheTrace.withScans(zipf, keys, keys / 10);
+            
+            List<DictionarySupplier> sups = new ArrayList<DictionarySupplier>();
+            sups.add(LRUCache.DEF_INDEX);
+            for (int capacity : new int[] { keys / 100, keys / 10 }) {
+                sups.add(new LRUCacheSupplier(capacity));
+                sups.add(new TinyLfuCacheSupplier(capacity));
+            }
+            for (DictionarySupplier sup : sups) {
+                list.add(new HitRatioBenchmark("zipf", sup, zipf));
+                list.add(new HitRatioBenchmark("scan", sup, scan));
+            }
+        } else if (name.equals("ttl")) {
+            // A steady stream of new entries into an expiring dictionary that holds n of them, on a simulated clock, so
+            // that every put expires an old entry; against the same work on the bare table, deleting the oldest entry
+            // by hand. Rerun with -n in the millions: the time per operation shouldn't grow with n, and nor should
+            // the worst put.
+            list.add(new ExpiryBenchmark(LRUCache.DEF_INDEX, size, true));
+            list.add(new ExpiryBenchmark(LRUCache.DEF_INDEX, size, false));
+        } else if (name.equals("instrumented")) {
+            // What instrumentation costs: the bare tables, timing every call, and timing one call in 16 (the default).
+            // Then the thread-safe tables, bare and instrumented, read from 1, 2, 4, ... threads at once, to show
+            // whether the counters make the threads contend.
+            Workload w = new Workload(size);
+            DictionarySupplier[] delegates = new DictionarySupplier[] { new ProbingHashtableSupplier(),
+                    new ChainingHashtableSupplier(new LinkedListSupplier()) };
+            
+            for (DictionarySupplier delegate : delegates) {
+                for (DictionarySupplier sup : new DictionarySupplier[] { delegate, new InstrumentedSupplier(delegate, 1),
+                        new InstrumentedSupplier(delegate) }) {
+                    list.add(new PutBenchmark(sup, w));
+                    list.add(new GetBenchmark(sup, w));
+                    list.add(new ContainsKeyBenchmark(sup, w));
+                    list.add(new MixedBenchmark(sup, w));
+                }
+            }
+            
+            List<Integer> counts = new ArrayList<Integer>();
+            for (int t = 1; t < threads; t *= 2)
+                counts.add(t);
+            counts.add(threads);
+            DictionarySupplier[] concurrent = new DictionarySupplier[] { new LockFreeProbingHashtableSupplier(),
+                    new ConcurrentChainingHashtableSupplier(new LinkedListSupplier()) };
+            for (DictionarySupplier delegate : concurrent)
+                for (DictionarySupplier sup : new DictionarySupplier[] { delegate, new InstrumentedSupplier(delegate) })
+                    for (int t : counts)
+                        list.add(new ThreadedMixedBenchmark("reads", sup, w, w.reads, t));
+        } else if (name.equals("resize")) {
+            // Per-put latencies while filling chaining tables that resize all at once or incrementally.
+            Workload w = new Workload(size, Integer.MAX_VALUE);
+            DictionarySupplier[] delegates = new DictionarySupplier[] { new LinkedListSupplier(),
+                    new ProbingHashtableSupplier() };
+            
+            for (DictionarySupplier delegate : delegates)
+                for (ChainingHashtable.Resizing mode : ChainingHashtable.Resizing.values())
+                    list.add(new PutLatencyBenchmark(new ChainingHashtableSupplier(delegate, mode), w));
+            list.add(new PutLatencyBenchmark(new ProbingHashtableSupplier(), w));
+        } else {
+            throw new IllegalArgumentException("Unknown suite " + name);
+        }
+        
+        List<Benchmark> selected = new ArrayList<Benchmark>();
+        for (Benchmark bm : list)
+            if ((benchmarks == null || benchmarks.contains(bm.name))
+                    && (dictionaries == null || dictionaries.contains(bm.dictionary)))
+                selected.add(bm);
+        return selected;
+    }
+    
+    /**
+     * The samples of one benchmark against one dictionary.
+     */
+    static class Result {
+        final String benchmark;
+        final String dictionary;
+        final int size;
+        final StatsList samples = new StatsList(); // ns/op
+        final StatsList alloc = new StatsList(); // bytes/op
+        final StatsList p50 = new StatsList(); // latency percentiles in ns, if the benchmark reports them
+        final StatsList p99 = new StatsList();
+        final StatsList p999 = new StatsList();
+        double max = Double.NaN;
+        final StatsList hitRatio = new StatsList(); // if the benchmark reports one
+        
+        Result(String name, String dict, int n) {
+            benchmark = name;
+            dictionary = dict;
+            size = n;
+        }
+    }
+    
+    /**
+     * A single benchmark. {@code setup} is called before every iteration and is not timed; {@code run} is.
+     */
+    abstract static class Benchmark {
+        final String name;
+        final String dictionary;
+        
+        Benchmark(String name, String dictionary) {
+            this.name = name;
+            this.dictionary = dictionary;
+        }
+        
+        String id() {
+            return name + "\t" + dictionary;
+        }
+        
+        void setup() {}
+        
+        /**
+         * Runs the timed part of the benchmark.
+         * 
+         * @return the number of operations performed
+         */
+        abstract int run();
+        
+        /**
+         * Returns the latency of each operation of the last {@code run}, in ns, or {@code null} if the benchmark only
+         * times the run as a whole.
+         * 
+         * @return the latencies
+         */
+        long[] latencies() {
+            return null;
+        }
+        
+        /**
+         * Returns the fraction of the lookups of the last {@code run} that hit, or NaN if the benchmark doesn't count
+         * them.
+         * 
+         * @return the hit ratio
+         */
+        double hitRatio() {
+            return Double.NaN;
+        }
+    }
+    
+    /**
+     * Pre-generated, pre-boxed key streams, shared by every dictionary in a suite so they all see the same input.
+     */
+    static class Workload {
+        final int size;
+        final Integer[] fill; // keys put before the timed part
+        final Integer[] lookups; // keys (or values) looked up; roughly half are present
+        final Integer[] deletes; // the fill keys, shuffled
+        final byte[] mix; // operation codes for the mixed benchmark: 0 get, 1 put, 2 delete
+        final byte[] reads; // the same, for read-heavy benchmarks
+        
+        Workload(int n) {
+            this(n, 2 * n);
+        }
+        
+        /**
+         * @param n the number of keys in each stream
+         * @param bound keys are drawn uniformly from {@code [0, bound)}
+         */
+        Workload(int n, int bound) {
+            this(n, bound, false);
+        }
+        
+        /**
+         * @param n the number of keys in each stream
+         * @param bound keys are drawn uniformly from {@code [0, bound)}
+         * @param sequential fill with the keys {@code 0} to {@code n - 1} in order instead
+         */
+        Workload(int n, int bound, boolean sequential) {
+            Random r = new Random(SEED);
+            size = n;
+            fill = sequential ? sequence(n) : keys(r, n, bound);
+            lookups = keys(r, n, bound);
+            
+            List<Integer> shuffled = new ArrayList<Integer>(Arrays.asList(fill));
+            Collections.shuffle(shuffled, r);
+            deletes = shuffled.toArray(new Integer[n]);
+            
+            mix = new byte[n];
+            for (int i = 0; i < n; i++) {
+                int c = r.nextInt(14); // 10 gets : 3 puts : 1 delete
+                mix[i] = (byte) (c < 10 ? 0 : c < 13 ? 1 : 2);
+            }
+            
+            reads = new byte[n];
+            for (int i = 0; i < n; i++) {
+                int c = r.nextInt(40); // 38 gets : 1 put : 1 delete
+                reads[i] = (byte) (c < 38 ? 0 : c < 39 ? 1 : 2);
+            }
+        }
+        
+        private static Integer[] sequence(int count) {
+            Integer[] keys = new Integer[count];
+            for (int i = 0; i < count; i++)
+                keys[i] = i;
+            return keys;
+        }
+        
+        private static Integer[] keys(Random r, int count, int bound) {
+            Integer[] keys = new Integer[count];
+            for (int i = 0; i < count; i++)
+                keys[i] = r.nextInt(bound);
+            return keys;
+        }
+        
+        Dictionary<Integer, Integer> filled(DictionarySupplier sup) {
+            Dictionary<Integer, Integer> dict = sup.getNew();
+            for (Integer k : fill)
+                dict.put(k, k);
+            return dict;
+        }
+    }
+    
+    /**
+     * A benchmark against a dictionary from the given supplier, using a shared workload.
+     */
+    abstract static class DictionaryBenchmarkCase extends Benchmark {
+        final DictionarySupplier supplier;
+        final Workload w;
+        Dictionary<Integer, Integer> dict;
+        
+        DictionaryBenchmarkCase(String name, DictionarySupplier sup, Workload w) {
+            super(name, sup.toString());
+            this.supplier = sup;
+            this.w = w;
+        }
+        
+        void setup() {
+            dict = w.filled(supplier);
+        }
+    }
+    
+    static class GetBenchmark extends DictionaryBenchmarkCase {
+        private final Integer[] keys;
+        
+        /**
+         * @param keys the keys to look up
+         */
+        GetBenchmark(String name, DictionarySupplier sup, Workload w, Integer[] keys) {
+            super(name, sup, w);
+            this.keys = keys;
+        }
+        
+        GetBenchmark(DictionarySupplier sup, Workload w) {
+            this("get", sup, w, w.lookups);
+        }
+        
+        int run() {
+            int hits = 0;
+            for (Integer k : keys)
+                if (dict.get(k) != null)
+                    hits++;
+            sink += hits;
+            return keys.length;
+        }
+    }
+    
+    static class PutBenchmark extends DictionaryBenchmarkCase {
+        PutBenchmark(String name, DictionarySupplier sup, Workload w) {
+            super(name, sup, w);
+        }
+        
+        PutBenchmark(DictionarySupplier sup, Workload w) {
+            this("put", sup, w);
+        }
+        
+        void setup() {
+            dict = supplier.getNew();
+        }
+        
+        int run() {
+            Integer[] keys = w.fill;
+            for (Integer k : keys)
+                dict.put(k, k);
+            sink += dict.size();
+            return keys.length;
+        }
+    }
+    
+    /**
+     * Makes a new dictionary and puts the fill keys into it, timing the construction along with the puts.
+     */
+    static class FillBenchmark extends DictionaryBenchmarkCase {
+        FillBenchmark(DictionarySupplier sup, Workload w) {
+            super("fill", sup, w);
+        }
+        
+        void setup() {
+        }
+        
+        int run() {
+            Integer[] keys = w.fill;
+            dict = supplier.getNew();
+            for (Integer k : keys)
+                dict.put(k, k);
+            sink += dict.size();
+            return keys.length;
+        }
+    }
+    
+    /**
+     * Puts the fill keys into a new dictionary, timing every put on its own, to catch the ones that resize.
+     */
+    static class PutLatencyBenchmark extends DictionaryBenchmarkCase {
+        private final long[] latencies;
+        
+        PutLatencyBenchmark(DictionarySupplier sup, Workload w) {
+            super("putLatency", sup, w);
+            latencies = new long[w.size];
+        }
+        
+        void setup() {
+            dict = supplier.getNew();
+        }
+        
+        int run() {
+            Integer[] keys = w.fill;
+            for (int i = 0; i < keys.length; i++) {
+                long start = System.nanoTime();
+                dict.put(keys[i], keys[i]);
+                latencies[i] = System.nanoTime() - start;
+            }
+            sink += dict.size();
+            return keys.length;
+        }
+        
+        long[] latencies() {
+            return latencies;
+        }
+    }
+    
+    static class PutAllBenchmark extends DictionaryBenchmarkCase {
+        private final Map<Integer, Integer> batch;
+        
+        PutAllBenchmark(DictionarySupplier sup, Workload w) {
+            super("putAll", sup, w);
+            batch = new HashMap<Integer, Integer>();
+            for (Integer k : w.fill)
+                batch.put(k, k);
+        }
+        
+        void setup() {
+            dict = supplier.getNew();
+        }
+        
+        int run() {
+            dict.putAll(batch);
+            sink += dict.size();
+            return w.fill.length;
+        }
+    }
+    
+    static class GetAllBenchmark extends DictionaryBenchmarkCase {
+        private final List<Integer> keys;
+        
+        GetAllBenchmark(DictionarySupplier sup, Workload w) {
+            super("getAll", sup, w);
+            keys = Arrays.asList(w.lookups);
+        }
+        
+        int run() {
+            sink += dict.getAll(keys).size();
+            return keys.size();
+        }
+    }
+    
+    static class DeleteAllBenchmark extends DictionaryBenchmarkCase {
+        private final List<Integer> keys;
+        
+        DeleteAllBenchmark(DictionarySupplier sup, Workload w) {
+            super("deleteAll", sup, w);
+            keys = Arrays.asList(w.deletes);
+        }
+        
+        int run() {
+            sink += dict.deleteAll(keys);
+            return keys.size();
+        }
+    }
+    
+    static class DeleteBenchmark extends DictionaryBenchmarkCase {
+        private final int count;
+        
+        /**
+         * @param count how many of the shuffled fill keys to delete per iteration
+         */
+        DeleteBenchmark(String name, DictionarySupplier sup, Workload w, int count) {
+            super(name, sup, w);
+            this.count = count;
+        }
+        
+        DeleteBenchmark(DictionarySupplier sup, Workload w, int count) {
+            this("delete", sup, w, count);
+        }
+        
+        int run() {
+            Integer[] keys = w.deletes;
+            int hits = 0;
+            for (int i = 0; i < count; i++)
+                if (dict.delete(keys[i]) != null)
+                    hits++;
+            sink += hits;
+            return count;
+        }
+    }
+    
+    static class ContainsKeyBenchmark extends DictionaryBenchmarkCase {
+        ContainsKeyBenchmark(DictionarySupplier sup, Workload w) {
+            super("containsKey", sup, w);
+        }
+        
+        int run() {
+            Integer[] keys = w.lookups;
+            int hits = 0;
+            for (Integer k : keys)
+                if (dict.containsKey(k))
+                    hits++;
+            sink += hits;
+            return keys.length;
+        }
+    }
+    
+    static class ContainsValueBenchmark extends DictionaryBenchmarkCase {
+        ContainsValueBenchmark(DictionarySupplier sup, Workload w) {
+            super("containsValue", sup, w);
+        }
+        
+        int run() {
+            Integer[] values = w.lookups;
+            int ops = Math.min(values.length, SCAN_OPS);
+            int hits = 0;
+            for (int i = 0; i < ops; i++)
+                if (dict.containsValue(values[i]))
+                    hits++;
+            sink += hits;
+            return ops;
+        }
+    }
+    
+    static class ClearBenchmark extends DictionaryBenchmarkCase {
+        ClearBenchmark(DictionarySupplier sup, Workload w) {
+            super("clear", sup, w);
+        }
+        
+        int run() {
+            int n = dict.size();
+            dict.clear();
+            sink += dict.size();
+            return n;
+        }
+    }
+    
+    /**
+     * Opens a mapped table of the fill keys, which the first setup writes to a file, and optionally reads back every
+     * entry.
+     */
+    static class ReopenBenchmark extends Benchmark {
+        private final Workload w;
+        private final boolean read;
+        private File file;
+        
+        ReopenBenchmark(String name, Workload w, boolean read) {
+            super(name, "MPHT");
+            this.w = w;
+            this.read = read;
+        }
+        
+        void setup() {
+            if (file != null)
+                return;
+            try {
+                file = File.createTempFile("benchmark", ".map");
+                file.deleteOnExit();
+                MappedProbingHashtable<Integer, Integer> dict = open();
+                for (Integer k : w.fill)
+                    dict.put(k, k);
+                dict.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        private MappedProbingHashtable<Integer, Integer> open() throws IOException {
+            return new MappedProbingHashtable<Integer, Integer>(file, Codecs.INTEGER, Codecs.INTEGER);
+        }
+        
+        int run() {
+            try {
+                MappedProbingHashtable<Integer, Integer> dict = open();
+                int hits = dict.size();
+                if (read)
+                    for (Integer k : w.deletes)
+                        if (dict.get(k) != null)
+                            hits++;
+                sink += hits;
+                return w.size;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+    
+    /**
+     * Saves a full dictionary to a file, or loads one back, with {@code "loadUnsized"} putting the entries into a
+     * dictionary that wasn't sized for them. The first setup writes the file the loads read.
+     */
+    static class SnapshotBenchmark extends DictionaryBenchmarkCase {
+        private File file;
+        
+        SnapshotBenchmark(String name, DictionarySupplier sup, Workload w) {
+            super(name, sup, w);
+        }
+        
+        void setup() {
+            super.setup();
+            if (file != null)
+                return;
+            try {
+                file = File.createTempFile("benchmark", ".snapshot");
+                file.deleteOnExit();
+                Snapshot.save(dict, Codecs.INTEGER, Codecs.INTEGER, file);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        int run() {
+            try {
+                if (name.equals("save")) {
+                    sink += (int) Snapshot.save(dict, Codecs.INTEGER, Codecs.INTEGER, file);
+                    return dict.size();
+                }
+                
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    Dictionary<Integer, Integer> loaded;
+                    if (name.equals("load")) {
+                        loaded = Snapshot.load(in.getChannel(), Codecs.INTEGER, Codecs.INTEGER, supplier);
+                    } else {
+                        loaded = supplier.getNew();
+                        Snapshot.load(in.getChannel(), Codecs.INTEGER, Codecs.INTEGER, loaded);
+                    }
+                    sink += loaded.size();
+                    return loaded.size();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+    
+    /**
+     * Puts the fill keys into a new, empty durable dictionary, split between the given number of threads.
+     */
+    static class DurablePutBenchmark extends Benchmark {
+        private final Workload w;
+        private final long syncMicros;
+        private final int threads;
+        private File dir;
+        private DurableDictionary<Integer, Integer> dict;
+        
+        DurablePutBenchmark(Workload w, long syncMicros, int threads) {
+            super("put/" + threads + "t", "Durable(" + syncMicros + "us):PHT");
+            this.w = w;
+            this.syncMicros = syncMicros;
+            this.threads = threads;
+        }
+        
+        void setup() {
+            try {
+                if (dict != null) {
+                    dict.close();
+                    for (File f : dir.listFiles())
+                        f.delete();
+                } else {
+                    dir = java.nio.file.Files.createTempDirectory("benchmark").toFile();
+                    dir.deleteOnExit();
+                }
+                dict = new DurableDictionary<Integer, Integer>(dir, Codecs.INTEGER, Codecs.INTEGER,
+                        new ProbingHashtableSupplier(), syncMicros);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        int run() {
+            Thread[] ts = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final int from = t * w.size / threads;
+                final int to = (t + 1) * w.size / threads;
+                ts[t] = new Thread() {
+                    public void run() {
+                        for (int i = from; i < to; i++)
+                            dict.put(w.fill[i], w.fill[i]);
+                    }
+                };
+                ts[t].start();
+            }
+            for (Thread t : ts) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            sink += dict.size();
+            return w.size;
+        }
+    }
+    
+    static class GetAllKeysBenchmark extends DictionaryBenchmarkCase {
+        GetAllKeysBenchmark(DictionarySupplier sup, Workload w) {
+            super("getAllKeys", sup, w);
+        }
+        
+        int run() {
+            for (int i = 0; i < KEY_SET_OPS; i++)
+                sink += dict.getAllKeys().size();
+            return KEY_SET_OPS;
+        }
+    }
+    
+    /**
+     * Access traces for caches.
+     */
+    static class CacheTrace {
+        /**
+         * About what's seen for web and storage caches.
+         */
+        static final double ZIPF_EXPONENT = 0.99;
+        
+        /**
+         * Draws keys so that the k-th most popular is used in proportion to 1/k^exponent. Which keys are the most
+         * popular is shuffled, so they aren't all small.
+         * 
+         * @param length the number of accesses
+         * @param keys the number of distinct keys, {@code [0, keys)}
+         */
+        static Integer[] zipf(Random r, int length, int keys, double exponent) {
+            double[] cdf = new double[keys];
+            double sum = 0;
+            for (int k = 0; k < keys; k++)
+                cdf[k] = sum += 1 / Math.pow(k + 1, exponent);
+            
+            List<Integer> ranked = new ArrayList<Integer>(keys);
+            for (int k = 0; k < keys; k++)
+                ranked.add(k);
+            Collections.shuffle(ranked, r);
+            
+            Integer[] trace = new Integer[length];
+            for (int i = 0; i < length; i++) {
+                int k = Arrays.binarySearch(cdf, r.nextDouble() * sum);
+                trace[i] = ranked.get(k < 0 ? Math.min(-k - 1, keys - 1) : k);
+            }
+            return trace;
+        }
+        
+        /**
+         * Interleaves a trace with scans: after every {@code run} accesses of the trace come {@code run} keys that
+         * appear nowhere else, so half the accesses are scans.
+         * 
+         * @param keys the trace's keys are below this; the scans use keys above it
+         */
+        static Integer[] withScans(Integer[] trace, int keys, int run) {
+            Integer[] mixed = new Integer[trace.length];
+            int next = keys;
+            for (int i = 0, t = 0; i < mixed.length; i++)
+                mixed[i] = i / run % 2 == 0 ? trace[t++] : Integer.valueOf(next++);
+            return mixed;
+        }
+    }
+    
+    /**
+     * Reads through a new cache: looks up every key of a trace and puts the ones that miss.
+     */
+    static class HitRatioBenchmark extends DictionaryBenchmarkCase {
+        private final Integer[] trace;
+        private int hits;
+        
+        HitRatioBenchmark(String name, DictionarySupplier sup, Integer[] trace) {
+            super(name, sup, null);
+            this.trace = trace;
+        }
+        
+        void setup() {
+            dict = supplier.getNew();
+        }
+        
+        int run() {
+            hits = 0;
+            for (Integer k : trace) {
+                if (dict.get(k) != null)
+                    hits++;
+                else
+                    dict.put(k, k);
+            }
+            sink += hits;
+            return trace.length;
+        }
+        
+        double hitRatio() {
+            return (double) hits / trace.length;
+        }
+    }
+    
+    /**
+     * Keeps about n entries in a dictionary by putting a new key and looking up a live one on every step of a clock,
+     * with entries living n steps. Either an expiring dictionary removes the oldest entries as they expire, or they're
+     * deleted by hand from a bare table. Each step is timed on its own.
+     */
+    static class ExpiryBenchmark extends Benchmark {
+        private static final long TTL_MILLIS = 60 * 1000;
+        
+        private final DictionarySupplier supplier;
+        private final int n;
+        private final boolean expiring;
+        private final Integer[] keys; // 2n distinct keys: n to fill with, and n to put
+        private final long step; // ns per step
+        private final long[] latencies;
+        private final long[] time = new long[1];
+        private final Clock clock = new Clock() {
+            public long nanoTime() {
+                return time[0];
+            }
+        };
+        private Dictionary<Integer, Integer> dict;
+        
+        ExpiryBenchmark(DictionarySupplier sup, int n, boolean expiring) {
+            super("churn", expiring ? new ExpiringDictionarySupplier(TTL_MILLIS, sup).toString() : sup.toString());
+            this.supplier = sup;
+            this.n = n;
+            this.expiring = expiring;
+            keys = new Integer[2 * n];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = i;
+            step = TTL_MILLIS * 1000000 / n;
+            latencies = new long[n];
+        }
+        
+        void setup() {
+            time[0] = 0;
+            dict = expiring ? new ExpiringDictionary<Integer, Integer>(supplier, TTL_MILLIS, 0, null, clock) : supplier
+                    .<Integer, Integer> getNew();
+            for (int i = 0; i < n; i++) {
+                time[0] += step;
+                dict.put(keys[i], i);
+            }
+        }
+        
+        int run() {
+            int hits = 0;
+            for (int i = 0; i < n; i++) {
+                time[0] += step;
+                long start = System.nanoTime();
+                dict.put(keys[n + i], i);
+                if (!expiring)
+                    dict.delete(keys[i]);
+                if (dict.get(keys[n / 2 + i]) != null)
+                    hits++;
+                latencies[i] = System.nanoTime() - start;
+            }
+            sink += hits + dict.size();
+            return n;
+        }
+        
+        long[] latencies() {
+            return latencies;
+        }
+    }
+    
+    /**
+     * Sums the values of every entry, by one of the ways of visiting them all.
+     */
+    static class ScanBenchmark extends DictionaryBenchmarkCase {
+        private int sum;
+        private final EntryVisitor<Integer, Integer> adder = new EntryVisitor<Integer, Integer>() {
+            public void visit(Integer key, Integer value) {
+                sum += value;
+            }
+        };
+        
+        /**
+         * @param name one of {@code getAllKeys}, {@code forEach} or {@code iterator}
+         */
+        ScanBenchmark(String name, DictionarySupplier sup, Workload w) {
+            super(name, sup, w);
+        }
+        
+        int run() {
+            sum = 0;
+            if (name.equals("getAllKeys")) {
+                for (Integer k : dict.getAllKeys())
+                    sum += dict.get(k);
+            } else if (name.equals("forEach")) {
+                dict.forEach(adder);
+            } else {
+                for (Map.Entry<Integer, Integer> e : dict)
+                    sum += e.getValue();
+            }
+            sink += sum;
+            return dict.size();
+        }
+    }
+    
+    /**
+     * Puts, gets or deletes through {@link IntIntDictionary}'s unboxed operations.
+     */
+    static class IntIntBenchmark extends Benchmark {
+        private final String op;
+        private final Workload w;
+        private final int[] fill;
+        private final int[] lookups;
+        private final int[] deletes;
+        private IntIntDictionary dict;
+        
+        /**
+         * @param op one of {@code put}, {@code get} or {@code delete}
+         */
+        IntIntBenchmark(String name, String op, Workload w) {
+            super(name, "IntIntDictionary");
+            this.op = op;
+            this.w = w;
+            fill = unboxed(w.fill);
+            lookups = unboxed(w.lookups);
+            deletes = unboxed(w.deletes);
+        }
+        
+        IntIntBenchmark(String op, Workload w) {
+            this(op, op, w);
+        }
+        
+        private static int[] unboxed(Integer[] keys) {
+            int[] result = new int[keys.length];
+            for (int i = 0; i < keys.length; i++)
+                result[i] = keys[i];
+            return result;
+        }
+        
+        void setup() {
+            dict = new IntIntDictionary(IntIntDictionary.DEF_MAX, IntIntDictionary.DEF_MIN, IntIntDictionary.DEF_SET,
+                    -1);
+            if (!op.equals("put"))
+                for (int k : fill)
+                    dict.put(k, k);
+        }
+        
+        int run() {
+            int hits = 0;
+            if (op.equals("put")) {
+                for (int k : fill)
+                    dict.put(k, k);
+                hits = dict.size();
+            } else if (op.equals("get")) {
+                for (int k : lookups)
+                    if (dict.get(k) != -1)
+                        hits++;
+            } else {
+                for (int k : deletes)
+                    if (dict.delete(k) != -1)
+                        hits++;
+            }
+            sink += hits;
+            return w.size;
+        }
+    }
+    
+    /**
+     * The old test 7 workload: 10 gets to 3 puts to 1 delete, over the same key range.
+     */
+    static class MixedBenchmark extends DictionaryBenchmarkCase {
+        MixedBenchmark(DictionarySupplier sup, Workload w) {
+            super("mixed", sup, w);
+        }
+        
+        int run() {
+            byte[] mix = w.mix;
+            Integer[] keys = w.lookups;
+            int hits = 0;
+            for (int i = 0; i < mix.length; i++) {
+                Integer k = keys[i];
+                if (mix[i] == 0) {
+                    if (dict.get(k) != null)
+                        hits++;
+                } else if (mix[i] == 1) {
+                    dict.put(k, k);
+                } else {
+                    dict.delete(k);
+                }
+            }
+            sink += hits;
+            return mix.length;
+        }
+    }
+    
+    /**
+     * A mixed benchmark run by several threads at once on one dictionary, each starting at a different point of the
+     * operation stream. Reports the time per operation across all threads, so it falls as throughput rises. Only the
+     * allocations of the timing thread are counted, so the B/op column is meaningless here.
+     */
+    static class ThreadedMixedBenchmark extends DictionaryBenchmarkCase {
+        private final byte[] ops;
+        private final int threads;
+        private ExecutorService pool;
+        
+        ThreadedMixedBenchmark(String name, DictionarySupplier sup, Workload w, byte[] ops, int threads) {
+            super(name + "/" + threads + "t", sup, w);
+            this.ops = ops;
+            this.threads = threads;
+        }
+        
+        void setup() {
+            super.setup();
+            if (pool == null)
+                pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+        
+        int run() {
+            List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(threads);
+            for (int t = 0; t < threads; t++) {
+                final int offset = t * (w.size / threads);
+                tasks.add(new Callable<Integer>() {
+                    public Integer call() {
+                        return mix(offset);
+                    }
+                });
+            }
+            
+            try {
+                for (Future<Integer> f : pool.invokeAll(tasks))
+                    sink += f.get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            return threads * ops.length;
+        }
+        
+        private int mix(int offset) {
+            byte[] mix = ops;
+            Integer[] keys = w.lookups;
+            int n = mix.length;
+            int hits = 0;
+            for (int j = 0; j < n; j++) {
+                int i = (offset + j) % n;
+                Integer k = keys[i];
+                if (mix[i] == 0) {
+                    if (dict.get(k) != null)
+                        hits++;
+                } else if (mix[i] == 1) {
+                    dict.put(k, k);
+                } else {
+                    dict.delete(k);
+                }
+            }
+            return hits;
+        }
+    }
+    
+    /**
+     * Makes dictionaries that serialise every call on one lock, the way a single-threaded dictionary would be shared
+     * between threads without a concurrent implementation.
+     */
+    static class SynchronizedSupplier implements DictionarySupplier {
+        private final DictionarySupplier supplier;
+        
+        SynchronizedSupplier(DictionarySupplier supplier) {
+            this.supplier = supplier;
+        }
+        
+        public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+            return new SynchronizedDictionary<K, V>(supplier.<K, V> getNew());
+        }
+        
+        public String toString() {
+            return "Sync:" + supplier;
+        }
+    }
+    
+    static class SynchronizedDictionary<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+        private final Dictionary<K, V> dict;
+        
+        SynchronizedDictionary(Dictionary<K, V> dict) {
+            this.dict = dict;
+        }
+        
+        public synchronized int size() {
+            return dict.size();
+        }
+        
+        public synchronized boolean isEmpty() {
+            return dict.isEmpty();
+        }
+        
+        public synchronized V get(K key) {
+            return dict.get(key);
+        }
+        
+        public synchronized boolean containsKey(K key) {
+            return dict.containsKey(key);
+        }
+        
+        public synchronized boolean containsValue(V value) {
+            return dict.containsValue(value);
+        }
+        
+        public synchronized Set<K> getAllKeys() {
+            return dict.getAllKeys();
+        }
+        
+        public synchronized void forEach(EntryVisitor<? super K, ? super V> visitor) {
+            dict.forEach(visitor);
+        }
+        
+        public synchronized V put(K key, V value) {
+            return dict.put(key, value);
+        }
+        
+        public synchronized V delete(K key) {
+            return dict.delete(key);
+        }
+        
+        public synchronized void clear() {
+            dict.clear();
+        }
+        
+        public synchronized void putAll(Map<? extends K, ? extends V> m) {
+            dict.putAll(m);
+        }
+        
+        public synchronized Map<K, V> getAll(Collection<? extends K> keys) {
+            return dict.getAll(keys);
+        }
+        
+        public synchronized int deleteAll(Collection<? extends K> keys) {
+            return dict.deleteAll(keys);
+        }
+    }
+}
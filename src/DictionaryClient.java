@@ -1,32 +1,45 @@
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Test client for the dictionary implementations
+ * <p>
+ * This only checks correctness; timings are done by {@link DictionaryBenchmark}.
  * 
  */
 public class DictionaryClient {
     private static Random r;
-    private static final double SIZE = 100.0;
-    private static PrintStream outStream;
     
     private static DictionarySupplier RBTsup = new RedBlackTreeSupplier();
     private static DictionarySupplier LLsup = new LinkedListSupplier();
     
     private static DictionarySupplier[] mainDictSups = new DictionarySupplier[] { LLsup, RBTsup,
             new ProbingHashtableSupplier(), new ChainingHashtableSupplier(LLsup),
-            new ChainingHashtableSupplier(RBTsup), new ChainingHashtableSupplier(new ProbingHashtableSupplier()) };
+            new ChainingHashtableSupplier(RBTsup), new ChainingHashtableSupplier(new ProbingHashtableSupplier()),
+            new ProbingHashtableSupplier(0.95, 0.15, 0.5, ProbingHashtable.Deletion.BACKWARD_SHIFT),
+            new RobinHoodHashtableSupplier(), new RobinHoodHashtableSupplier(0.95, 0.15),
+            new RobinHoodHashtableSupplier(0.95, 0.15, 0.5, Indexing.MODULO),
+            new ChainingHashtableSupplier(LLsup, ChainingHashtable.Resizing.INCREMENTAL),
+            new ChainingHashtableSupplier(LLsup, 1.2, 0.8, 1.0, ChainingHashtable.Resizing.INCREMENTAL),
+            new ProbingHashtableSupplier(Indexing.POWER_OF_TWO),
+            new ChainingHashtableSupplier(LLsup, Indexing.POWER_OF_TWO), new ConcurrentChainingHashtableSupplier(LLsup),
+            new ConcurrentChainingHashtableSupplier(RBTsup, 1), new LockFreeProbingHashtableSupplier(),
+            new ProbingHashtableSupplier(1000), new ChainingHashtableSupplier(LLsup, 1000),
+            new RobinHoodHashtableSupplier(1000), new ConcurrentChainingHashtableSupplier(LLsup, 4, 1000),
+            new LockFreeProbingHashtableSupplier(1000), new ValueIndexedSupplier(new ProbingHashtableSupplier()),
+            new ValueIndexedSupplier(RBTsup), new BPlusTreeSupplier(), new BPlusTreeSupplier(3),
+            new BPlusTreeSupplier(4), new LRUCacheSupplier(100000),
+            new LRUCacheSupplier(100000, new ChainingHashtableSupplier(LLsup)), new TinyLfuCacheSupplier(100000),
+            new ExpiringDictionarySupplier(3600000), new InstrumentedSupplier(new ProbingHashtableSupplier()),
+            new InstrumentedSupplier(new ConcurrentChainingHashtableSupplier(LLsup), 4) };
     
     public static final boolean VERBOSE = true;
     
     public static void main(String[] args) {
-        String fileName = "out.txt";
-        try {
-            outStream = new PrintStream(new File(fileName));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        
         long start = System.currentTimeMillis();
         
         for (DictionarySupplier stSup : mainDictSups) {
@@ -41,39 +54,132 @@ public class DictionaryClient {
             for (int i = 0; i < 5; i++) {
                 test6h(stSup, 500);
             }
+            test7h(stSup, 50);
+            test9h(stSup, 20);
             
             System.out.println();
         }
         
-        long middle = System.currentTimeMillis();
-        System.out.printf("%.3f seconds for correctness testing%n%n", (middle - start) / 1000.0);
+        // Only work for Integer keys and values, so only tests 4, 6, 7 and 9 apply.
+        DictionarySupplier[] intSups = new DictionarySupplier[] { new IntIntDictionarySupplier(),
+                new MappedProbingHashtableSupplier(Codecs.INTEGER, Codecs.INTEGER),
+                new MappedProbingHashtableSupplier(Codecs.INTEGER, Codecs.INTEGER, 1000) };
+        for (DictionarySupplier intSup : intSups) {
+            r = new Random(1176072517698283250L);
+            System.out.printf("====%s====%n", intSup.<Integer, Integer> getNew().toString());
+            test4h(intSup, 200);
+            for (int i = 0; i < 5; i++) {
+                test6h(intSup, 500);
+            }
+            test7h(intSup, 50);
+            test9h(intSup, 20);
+            System.out.println();
+        }
+        
+        r = new Random(1176072517698283250L);
+        System.out.println("====Mapped Probing Hashtable, reopened====");
+        test10h(5);
+        System.out.println();
+        
+        r = new Random(1176072517698283250L);
+        System.out.println("====Durable Probing Hashtable====");
+        test12h(0, 2000);
+        test12h(200, 2000);
+        System.out.println();
         
-        if (middle - start < 1000) {
-            test7(30, 10, 3, 0);
-            // test7(100, 10, 3, 0);
-            // test7(1000, 10, 3, 1, 0);
-            // test7(10000, 10, 3, 1, 0);
-            // test7(100000, 10, 3, 1, 0);
+        for (DictionarySupplier indexSup : new DictionarySupplier[] { new ProbingHashtableSupplier(), RBTsup }) {
+            for (int capacity : new int[] { 1, 10, 100 }) {
+                r = new Random(1176072517698283250L);
+                System.out.printf("====%s, evicting====%n", new LRUCacheSupplier(capacity, indexSup));
+                test13h(indexSup, capacity, 5000);
+                System.out.println();
+            }
         }
         
-        long end = System.currentTimeMillis();
-        System.out.printf("%.3f seconds total%n", (end - start) / 1000.0);
-    }
-    
-    private static double[] getLimits(double[] amounts) {
-        int length = amounts.length;
-        double asum = 0.0;
-        for (double x : amounts) {
-            asum += x;
+        for (int capacity : new int[] { 1, 2, 10, 100, 1000 }) {
+            r = new Random(1176072517698283250L);
+            System.out.printf("====%s, evicting====%n", new TinyLfuCacheSupplier(capacity));
+            test14h(capacity, 20000);
+            System.out.println();
+        }
+        
+        r = new Random(1176072517698283250L);
+        System.out.println("====Expiring Dictionary====");
+        test15h(20000);
+        System.out.println();
+        
+        for (int sampleEvery : new int[] { 1, 4 }) {
+            r = new Random(1176072517698283250L);
+            System.out.printf("====%s====%n", new InstrumentedSupplier(new ProbingHashtableSupplier(), sampleEvery));
+            test16h(sampleEvery, 2000);
+            System.out.println();
+        }
+        
+        DictionarySupplier[] resizeSups = new DictionarySupplier[] { new ChainingHashtableSupplier(LLsup),
+                new ChainingHashtableSupplier(LLsup, ChainingHashtable.Resizing.INCREMENTAL),
+                new ChainingHashtableSupplier(LLsup, 1.2, 0.8, 1.0, ChainingHashtable.Resizing.INCREMENTAL),
+                new ChainingHashtableSupplier(LLsup, 1.2, 0.8, 1.0, ChainingHashtable.Resizing.INCREMENTAL,
+                        Indexing.POWER_OF_TWO),
+                new ProbingHashtableSupplier(),
+                new ProbingHashtableSupplier(0.75, 0.25, 0.5, ProbingHashtable.Deletion.BACKWARD_SHIFT),
+                new RobinHoodHashtableSupplier() };
+        for (DictionarySupplier stSup : resizeSups) {
+            r = new Random(1176072517698283250L);
+            System.out.printf("====%s, resizing====%n", stSup.<Integer, Integer> getNew().toString());
+            test17h(stSup, 20000);
+            System.out.println();
         }
         
-        double[] limits = new double[length];
-        double cur = 0.0;
-        for (int i = 0; i < length; i++) {
-            cur += amounts[i] / asum;
-            limits[i] = cur;
+        System.out.println("====Hashtable statistics====");
+        test21h();
+        System.out.println();
+        
+        DictionarySupplier[] statsSups = new DictionarySupplier[] { new ChainingHashtableSupplier(LLsup),
+                new ChainingHashtableSupplier(LLsup, ChainingHashtable.Resizing.INCREMENTAL),
+                new ChainingHashtableSupplier(LLsup, Indexing.POWER_OF_TWO), new ProbingHashtableSupplier(),
+                new ProbingHashtableSupplier(0.95, 0.15), new ProbingHashtableSupplier(Indexing.POWER_OF_TWO) };
+        for (DictionarySupplier stSup : statsSups) {
+            r = new Random(1176072517698283250L);
+            System.out.printf("====%s, statistics====%n", stSup.<Integer, Integer> getNew().toString());
+            test18h(stSup, 5000);
+            System.out.println();
         }
-        return limits;
+        
+        // The thread-safe tables start small, so that the threads' resizes overlap.
+        DictionarySupplier[] concurrentSups = new DictionarySupplier[] { new LockFreeProbingHashtableSupplier(),
+                new ConcurrentChainingHashtableSupplier(LLsup), new ConcurrentChainingHashtableSupplier(RBTsup, 1),
+                new InstrumentedSupplier(new ConcurrentChainingHashtableSupplier(LLsup), 1) };
+        for (DictionarySupplier stSup : concurrentSups) {
+            System.out.printf("====%s, 8 threads====%n", stSup.<Integer, Integer> getNew().toString());
+            test19h(stSup, 8, 20000);
+            System.out.println();
+        }
+        
+        DictionarySupplier[] snapshotSups = new DictionarySupplier[] { new ProbingHashtableSupplier(), RBTsup,
+                new ChainingHashtableSupplier(LLsup), new BPlusTreeSupplier() };
+        for (DictionarySupplier stSup : snapshotSups) {
+            r = new Random(1176072517698283250L);
+            System.out.printf("====%s, snapshots====%n", stSup.<String, String> getNew().toString());
+            test11h(stSup, 60000);
+            System.out.println();
+        }
+        
+        // Ordered queries are only on the trees.
+        r = new Random(1176072517698283250L);
+        System.out.printf("====%s====%n", new RedBlackTree<Integer, Integer>().toString());
+        test8h(500);
+        test22h(20000);
+        System.out.println();
+        
+        for (int fanout : new int[] { 3, 4, BPlusTree.DEF_FANOUT }) {
+            r = new Random(1176072517698283250L);
+            System.out.printf("====%s====%n", new BPlusTree<Integer, Integer>(fanout).toString());
+            test20h(fanout, 2000);
+            System.out.println();
+        }
+        
+        long end = System.currentTimeMillis();
+        System.out.printf("%.3f seconds for correctness testing%n", (end - start) / 1000.0);
     }
     
     private static void test1h(DictionarySupplier stSup) {
@@ -181,6 +287,28 @@ public class DictionaryClient {
             assert st.containsValue(x + 1);
         }
         
+        // Dense, sequential keys, as ids are, which a table that doesn't mix its hashes packs into one cluster.
+        st = stSup.getNew();
+        for (int x = 0; x < n; x++)
+            st.put(x, x + 1);
+        for (int x = 0; x < 2 * n; x++)
+            assert x < n ? st.get(x) == x + 1 : st.get(x) == null;
+        for (int x = 0; x < n; x += 2)
+            assert st.delete(x) == x + 1;
+        for (int x = 0; x < n; x++)
+            assert st.containsKey(x) == (x % 2 == 1);
+        assert st.size() == n / 2;
+        
+        // Negative hash codes, and Integer.MIN_VALUE's, which Math.abs leaves negative.
+        st = stSup.getNew();
+        for (int x : new int[] { Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, Integer.MAX_VALUE })
+            st.put(x, x + 1);
+        for (int x : new int[] { Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, Integer.MAX_VALUE }) {
+            assert st.get(x) == x + 1;
+            assert st.delete(x) == x + 1 && !st.containsKey(x);
+        }
+        assert st.isEmpty();
+        
         if (VERBOSE) {
             System.out.printf("Test #4, n=%d: passed%n", n);
         }
@@ -191,8 +319,14 @@ public class DictionaryClient {
         Map<Integer, Integer> map = new HashMap<Integer, Integer>();
         Dictionary<Integer, Integer> st = stSup.getNew();
         
+        // Start from the lower half of the keys put in order, so that the operations land in and around a dense run.
+        for (int k = 0; k < n / 2; k++) {
+            map.put(k, k);
+            st.put(k, k);
+        }
+        
         for (int i = 0; i < n; i++) {
-            int c = (int) (r.nextDouble() * 6);
+            int c = (int) (r.nextDouble() * 7);
             
             if (c == 0) { // Get
                 int k = (int) (r.nextDouble() * MAX);
@@ -231,6 +365,15 @@ public class DictionaryClient {
                 Set<Integer> x = map.keySet();
                 Set<Integer> y = st.getAllKeys();
                 assert x.equals(y);
+            } else if (c == 6) { // delete
+                int k = (int) (r.nextDouble() * MAX);
+                Integer x = map.remove(k);
+                Integer y = st.delete(k);
+                if (x == null) {
+                    assert y == null;
+                } else {
+                    assert x.equals(y);
+                }
             } else {
                 System.out.println("? " + c);
             }
@@ -241,116 +384,1022 @@ public class DictionaryClient {
         }
     }
     
-    private static void test7(int REP, double... amounts) {
-        int PRINTS;
-        if (VERBOSE) {
-            PRINTS = 100;
-        } else {
-            PRINTS = 5;
+    /**
+     * Checks the bulk operations against a {@code HashMap}, with {@code rounds} random batches of up to 200 keys.
+     */
+    private static void test7h(DictionarySupplier stSup, int rounds) {
+        final int MAX = 1000;
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        Dictionary<Integer, Integer> st = stSup.getNew();
+        
+        for (int i = 0; i < rounds; i++) {
+            int n = (int) (r.nextDouble() * 200);
+            Map<Integer, Integer> batch = new HashMap<Integer, Integer>();
+            List<Integer> keys = new ArrayList<Integer>();
+            for (int j = 0; j < n; j++) {
+                int k = (int) (r.nextDouble() * MAX);
+                batch.put(k, (int) (r.nextDouble() * MAX));
+                keys.add((int) (r.nextDouble() * MAX));
+            }
+            
+            int c = (int) (r.nextDouble() * 3);
+            if (c == 0) { // putAll
+                map.putAll(batch);
+                st.putAll(batch);
+                assert map.size() == st.size();
+            } else if (c == 1) { // getAll
+                Map<Integer, Integer> x = new HashMap<Integer, Integer>();
+                for (Integer k : keys)
+                    if (map.containsKey(k))
+                        x.put(k, map.get(k));
+                assert x.equals(st.getAll(keys));
+            } else { // deleteAll
+                int x = 0;
+                for (Integer k : new HashSet<Integer>(keys))
+                    if (map.remove(k) != null)
+                        x++;
+                assert x == st.deleteAll(new HashSet<Integer>(keys));
+                assert map.size() == st.size();
+            }
+            assert map.keySet().equals(st.getAllKeys());
         }
         
-        double[] limits = getLimits(amounts);
-        int n = 10000;
+        // A batch with a null in it is turned away whole.
+        Map<Integer, Integer> bad = new HashMap<Integer, Integer>();
+        bad.put(MAX, MAX);
+        bad.put(MAX + 1, null);
+        try {
+            st.putAll(bad);
+            assert false;
+        } catch (NullPointerException e) {
+            assert !st.containsKey(MAX);
+        }
         
-        System.out.printf("Test 7 started; n=%d, rep=%d%n", n, REP);
-        long startMillis = System.currentTimeMillis();
+        if (VERBOSE) {
+            System.out.printf("Test #7, %d batches: passed%n", rounds);
+        }
+    }
+    
+    private static void test8h(int rounds) {
+        final int MAX = 1000;
+        TreeMap<Integer, Integer> map = new TreeMap<Integer, Integer>();
+        RedBlackTree<Integer, Integer> st = new RedBlackTree<Integer, Integer>();
         
-        DictionarySupplier[] confs = new DictionarySupplier[] { new LinkedListSupplier(), new RedBlackTreeSupplier(),
-                new ProbingHashtableSupplier(0.55, 0.45), new ProbingHashtableSupplier(0.60, 0.40),
-                new ProbingHashtableSupplier(0.65, 0.38), new ProbingHashtableSupplier(0.70, 0.36),
-                new ProbingHashtableSupplier(0.80, 0.30), new ProbingHashtableSupplier(0.90, 0.27),
-                new ProbingHashtableSupplier(0.95, 0.15), new ChainingHashtableSupplier(LLsup),
-                new ChainingHashtableSupplier(RBTsup), new MockSupplier() };
+        for (int i = 0; i < rounds; i++) {
+            int k = (int) (r.nextDouble() * MAX);
+            if (r.nextDouble() < 0.3) {
+                map.remove(k);
+                st.delete(k);
+            } else {
+                map.put(k, i);
+                st.put(k, i);
+            }
+            
+            int lo = (int) (r.nextDouble() * MAX);
+            int hi = lo + (int) (r.nextDouble() * MAX / 4);
+            assert equal(map.isEmpty() ? null : map.firstKey(), st.min());
+            assert equal(map.isEmpty() ? null : map.lastKey(), st.max());
+            assert equal(map.floorKey(lo), st.floor(lo));
+            assert equal(map.ceilingKey(lo), st.ceiling(lo));
+            assert map.headMap(lo).size() == st.rank(lo);
+            assert new ArrayList<Integer>(map.subMap(lo, hi).keySet()).equals(st.range(lo, hi));
+            
+            RedBlackTree<Integer, Integer>.Cursor c = st.cursor();
+            for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+                assert c.next().equals(e.getKey());
+                assert c.value().equals(e.getValue());
+            }
+            assert !c.hasNext();
+        }
         
-        int len = confs.length;
+        // A cursor notices keys being added under it.
+        Iterator<Integer> c = st.cursor();
+        st.put(MAX, MAX);
+        try {
+            c.next();
+            assert false;
+        } catch (ConcurrentModificationException e) {}
         
-        String s1 = "";
-        String s2 = "";
-        for (DictionarySupplier conf : confs) {
-            s1 += String.format("  %-13s", conf.toString());
-            s2 += String.format("%s,", conf.toString());
+        if (VERBOSE) {
+            System.out.printf("Test #8, %d ordered queries: passed%n", rounds);
         }
-        System.out.println(s1);
-        outStream.println(s2);
+    }
+    
+    private static void test9h(DictionarySupplier stSup, int rounds) {
+        final int MAX = 1000;
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        Dictionary<Integer, Integer> st = stSup.getNew();
         
-        StatsList[] lists = new StatsList[len];
-        for (int i = 0; i < len; i++) {
-            lists[i] = new StatsList();
+        for (int i = 0; i < rounds; i++) {
+            for (int j = 0; j < 50; j++) {
+                int k = (int) (r.nextDouble() * MAX);
+                if (r.nextDouble() < 0.3) {
+                    map.remove(k);
+                    st.delete(k);
+                } else {
+                    map.put(k, j);
+                    st.put(k, j);
+                }
+            }
+            
+            final Map<Integer, Integer> visited = new HashMap<Integer, Integer>();
+            st.forEach(new EntryVisitor<Integer, Integer>() {
+                public void visit(Integer key, Integer value) {
+                    assert visited.put(key, value) == null;
+                }
+            });
+            assert map.equals(visited);
+            
+            Map<Integer, Integer> iterated = new HashMap<Integer, Integer>();
+            for (Map.Entry<Integer, Integer> e : st)
+                assert iterated.put(e.getKey(), e.getValue()) == null;
+            assert map.equals(iterated);
         }
         
-        for (int i = 1; i <= REP; i++) {
-            for (int j = 0; j < len; j++) {
-                Dictionary<Integer, Integer> st = confs[j].getNew();
-                double mean = test7h(st, n, limits);
-                outStream.printf("%.5f,", mean);
-                lists[j].add(mean);
+        // A cleared dictionary scans as empty and can be filled again.
+        st.clear();
+        assert !st.iterator().hasNext();
+        for (int k = 0; k < MAX; k++)
+            st.put(k, k);
+        assert st.size() == MAX && st.get(MAX - 1) == MAX - 1;
+        
+        if (VERBOSE) {
+            System.out.printf("Test #9, %d scans: passed%n", rounds);
+        }
+    }
+    
+    private static void test10h(int rounds) {
+        final int MAX = 5000;
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        File file = tempFile();
+        
+        // Each round changes the table, resizing it up or down, and checks that the file holds it all when reopened.
+        for (int i = 0; i < rounds; i++) {
+            MappedProbingHashtable<Integer, Integer> st = open(file);
+            assert map.size() == st.size();
+            for (Map.Entry<Integer, Integer> e : map.entrySet())
+                assert e.getValue().equals(st.get(e.getKey()));
+            
+            double deletes = i % 2 == 0 ? 0.2 : 0.8;
+            for (int j = 0; j < MAX; j++) {
+                int k = (int) (r.nextDouble() * MAX);
+                if (r.nextDouble() < deletes) {
+                    assert equal(map.remove(k), st.delete(k));
+                } else {
+                    assert equal(map.put(k, j), st.put(k, j));
+                }
             }
+            st.close();
+        }
+        
+        MappedProbingHashtable<Integer, Integer> st = open(file);
+        st.clear();
+        st.close();
+        assert open(file).isEmpty();
+        
+        // A file is only opened with the widths it was made with.
+        try {
+            new MappedProbingHashtable<Integer, Long>(file, Codecs.INTEGER, Codecs.LONG);
+            assert false;
+        } catch (IOException e) {}
+        file.delete();
+        
+        // Strings take a fixed width, and too long a string is turned away before anything is written.
+        try {
+            MappedProbingHashtable<String, String> strings = new MappedProbingHashtable<String, String>(file,
+                    Codecs.string(8), Codecs.string(6));
+            assert strings.put("h\u00e9llo", "w\u00f6rld") == null; // 6 bytes of UTF-8 each
+            assert strings.get("h\u00e9llo").equals("w\u00f6rld");
+            try {
+                strings.put("h\u00e9llo", "w\u00f6rlds");
+                assert false;
+            } catch (IllegalArgumentException e) {}
+            assert strings.get("h\u00e9llo").equals("w\u00f6rld") && strings.size() == 1;
             
-            outStream.println();
+            // Too long a key or value can't be there, so looking it up is a miss, not an error.
+            assert strings.get("h\u00e9llo, w\u00f6rld") == null && !strings.containsKey("h\u00e9llo, w\u00f6rld");
+            assert strings.delete("h\u00e9llo, w\u00f6rld") == null && !strings.containsValue("w\u00f6rlds");
+            assert strings.size() == 1;
+            try {
+                strings.put("h\u00e9llo, w\u00f6rld", "w\u00f6rld");
+                assert false;
+            } catch (IllegalArgumentException e) {}
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        file.delete();
+        
+        if (VERBOSE) {
+            System.out.printf("Test #10, %d reopens: passed%n", rounds);
+        }
+    }
+    
+    private static void test11h(DictionarySupplier stSup, int n) {
+        Dictionary<String, Integer> st = stSup.getNew();
+        for (int i = 0; i < n; i++)
+            st.put(Long.toString(r.nextLong(), 36), i); // enough entries to cross the buffer several times
+        
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            long written = Snapshot.save(st, Codecs.STRING, Codecs.INTEGER, Channels.newChannel(bytes));
+            assert written == bytes.size() && written > Snapshot.BUFFER_SIZE;
+            byte[] snapshot = bytes.toByteArray();
+            
+            Dictionary<String, Integer> loaded = Snapshot.load(read(snapshot), Codecs.STRING, Codecs.INTEGER, stSup);
+            assert loaded.size() == st.size();
+            for (Map.Entry<String, Integer> e : st)
+                assert e.getValue().equals(loaded.get(e.getKey()));
+            
+            // Loading into a dictionary keeps what's there and replaces what's in the snapshot.
+            Dictionary<String, Integer> into = stSup.getNew();
+            into.put("", -1);
+            into.put(st.iterator().next().getKey(), -1);
+            Snapshot.load(read(snapshot), Codecs.STRING, Codecs.INTEGER, into);
+            assert into.size() == st.size() + 1 && into.get("") == -1;
             
-            if (i % (REP / PRINTS + 1) == 0) {
-                for (int j = 0; j < len; j++) {
-                    StatsList l = lists[j];
-                    System.out.printf("%6.2f (%5.3g) ", l.mean(), l.stddevMean());
+            try {
+                Snapshot.load(read(Arrays.copyOf(snapshot, snapshot.length - 1)), Codecs.STRING, Codecs.INTEGER,
+                        stSup);
+                assert false;
+            } catch (EOFException e) {}
+            try {
+                Snapshot.load(read(snapshot), Codecs.string(20), Codecs.INTEGER, stSup);
+                assert false;
+            } catch (IOException e) {}
+            
+            // Fixed-width entries take the fast path.
+            Dictionary<Integer, Long> ints = stSup.getNew();
+            for (int i = 0; i < n; i++)
+                ints.put(r.nextInt(), r.nextLong());
+            bytes.reset();
+            Snapshot.save(ints, Codecs.INTEGER, Codecs.LONG, Channels.newChannel(bytes));
+            Dictionary<Integer, Long> loadedInts = Snapshot.load(read(bytes.toByteArray()), Codecs.INTEGER,
+                    Codecs.LONG, stSup);
+            assert loadedInts.size() == ints.size();
+            for (Map.Entry<Integer, Long> e : ints)
+                assert e.getValue().equals(loadedInts.get(e.getKey()));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        
+        if (VERBOSE) {
+            System.out.printf("Test #11, n=%d: passed%n", n);
+        }
+    }
+    
+    private static void test12h(long syncMicros, int n) {
+        final int MAX = 1000;
+        final DictionarySupplier sup = new ProbingHashtableSupplier();
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        File dir = tempDir();
+        
+        try {
+            // Small logs, so that they're compacted in the background every few hundred writes.
+            DurableDictionary<Integer, Integer> st = new DurableDictionary<Integer, Integer>(dir, Codecs.INTEGER,
+                    Codecs.INTEGER, sup, syncMicros, 4096);
+            for (int i = 0; i < n; i++) {
+                int k = (int) (r.nextDouble() * MAX);
+                double op = r.nextDouble();
+                if (op < 0.001) {
+                    map.clear();
+                    st.clear();
+                } else if (op < 0.3) {
+                    assert equal(map.remove(k), st.delete(k));
+                } else {
+                    assert equal(map.put(k, i), st.put(k, i));
                 }
-                System.out.println();
             }
+            Map<Integer, Integer> batch = new HashMap<Integer, Integer>();
+            for (int k = MAX; k < MAX + 100; k++)
+                batch.put(k, k);
+            st.putAll(batch);
+            map.putAll(batch);
+            assert st.deleteAll(Arrays.asList(MAX, MAX + 1, -1)) == 2;
+            map.remove(MAX);
+            map.remove(MAX + 1);
+            
+            // Writers on several threads share syncs.
+            final DurableDictionary<Integer, Integer> shared = st;
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int base = 2 * MAX + t * 100;
+                threads[t] = new Thread() {
+                    public void run() {
+                        for (int k = base; k < base + 100; k++)
+                            shared.put(k, k);
+                    }
+                };
+                threads[t].start();
+                for (int k = base; k < base + 100; k++)
+                    map.put(k, k);
+            }
+            for (Thread t : threads)
+                t.join();
+            st.close();
+            
+            st = reopen(dir, sup);
+            assert st.size() == map.size();
+            for (Map.Entry<Integer, Integer> e : map.entrySet())
+                assert e.getValue().equals(st.get(e.getKey()));
+            st.compact();
+            assert new File(dir, "log").length() == 0 && !new File(dir, "log.old").exists();
+            st.put(-1, -1);
+            map.put(-1, -1);
+            st.close();
+            
+            // A record torn by a crash is cut off, and what came before it kept.
+            RandomAccessFile log = new RandomAccessFile(new File(dir, "log"), "rw");
+            long length = log.length();
+            log.seek(length);
+            log.write(new byte[] { 0, 0, 0, 9, 1, 2, 3 });
+            log.close();
+            st = reopen(dir, sup);
+            assert new File(dir, "log").length() == length;
+            assert st.size() == map.size() && st.get(-1) == -1;
+            st.close();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+        
+        if (VERBOSE) {
+            System.out.printf("Test #12, %d writes, %d us sync interval: passed%n", n, syncMicros);
         }
-        System.out.println(s1 + "\n");
-        outStream.println(s2 + "\n");
+    }
+    
+    private static void test13h(DictionarySupplier indexSup, final int capacity, int rounds) {
+        final int MAX = capacity * 3;
+        // A LinkedHashMap in access order, trimmed as it grows, is an LRU cache to check against.
+        LinkedHashMap<Integer, Integer> map = new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+        final List<Integer> evicted = new ArrayList<Integer>();
+        LRUCache<Integer, Integer> st = new LRUCache<Integer, Integer>(capacity, indexSup,
+                new EvictionListener<Integer, Integer>() {
+                    public void evicted(Integer key, Integer value) {
+                        evicted.add(key);
+                    }
+                });
         
-        for (int j = 0; j < len; j++) {
-            for (int i = 0; i < 3; i++) {
-                lists[j].remove(0);
+        long hits = 0, misses = 0, evictions = 0;
+        for (int i = 0; i < rounds; i++) {
+            int k = (int) (r.nextDouble() * MAX);
+            double op = r.nextDouble();
+            if (op < 0.1) {
+                assert equal(map.remove(k), st.delete(k));
+            } else if (op < 0.5) {
+                Integer expected = map.get(k);
+                if (expected == null)
+                    misses++;
+                else
+                    hits++;
+                assert equal(expected, st.get(k));
+            } else {
+                // The map's eldest entry is the one the cache should evict.
+                Integer eldest = map.size() == capacity && !map.containsKey(k) ? map.keySet().iterator().next() : null;
+                evicted.clear();
+                assert equal(map.put(k, i), st.put(k, i));
+                if (eldest != null) {
+                    evictions++;
+                    assert evicted.equals(Collections.singletonList(eldest));
+                } else {
+                    assert evicted.isEmpty();
+                }
             }
+            assert map.size() == st.size() && st.size() <= capacity;
             
-            System.out.printf("%-12s %s%n", confs[j], lists[j]);
-            outStream.printf("%-12s %s%n", confs[j], lists[j]);
+            // Same entries, and the cache's are most recent first.
+            List<Map.Entry<Integer, Integer>> entries = new ArrayList<Map.Entry<Integer, Integer>>(map.entrySet());
+            Collections.reverse(entries);
+            Iterator<Map.Entry<Integer, Integer>> it = st.iterator();
+            for (Map.Entry<Integer, Integer> e : entries)
+                assert e.equals(it.next());
+            assert !it.hasNext();
         }
+        assert st.hits() == hits && st.misses() == misses && st.evictions() == evictions;
         
-        StatsList mock = lists[len - 1];
-        outStream.printf("%nSubtracting the mock (%.3f [%.5f]):%n", mock.mean(), mock.stddevMean());
+        // Clearing keeps the counts.
+        st.clear();
+        assert st.isEmpty() && st.get(0) == null && st.misses() == misses + 1;
         
-        for (int j = 0; j < len - 1; j++) {
-            outStream.printf("%-12s %.3f (%.5f)%n", confs[j], lists[j].mean() - mock.mean(), lists[j].stddevMean());
-        }
+        try {
+            new LRUCache<Integer, Integer>(0);
+            assert false;
+        } catch (IllegalArgumentException e) {}
         
-        long endMillis = System.currentTimeMillis();
-        System.out.printf("Test 7 completed successfully; took %.3f seconds%n%n", (endMillis - startMillis) / 1000.0);
-        outStream.printf("Test 7 completed successfully; took %.3f seconds%n%n", (endMillis - startMillis) / 1000.0);
+        if (VERBOSE) {
+            System.out.printf("Test #13, %d operations, %d evictions: passed%n", rounds, evictions);
+        }
     }
     
-    private static double test7h(Dictionary<Integer, Integer> st, int n, double[] limits) {
-        final int MAX = (int) (1.5 * SIZE);
+    private static void test14h(final int capacity, int rounds) {
+        final int MAX = capacity * 3;
+        // What's been put and not deleted, less what the cache says it evicted, should be just what's in the cache.
+        final Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        final int[] evictions = new int[1];
+        TinyLfuCache<Integer, Integer> st = new TinyLfuCache<Integer, Integer>(capacity, new ProbingHashtableSupplier(),
+                new EvictionListener<Integer, Integer>() {
+                    public void evicted(Integer key, Integer value) {
+                        assert value.equals(map.remove(key));
+                        evictions[0]++;
+                    }
+                });
         
-        TreeSet<Integer> set = new TreeSet<Integer>(st.getAllKeys());
-        long start = System.nanoTime();
+        long hits = 0, misses = 0;
+        for (int i = 0; i < rounds; i++) {
+            // Skewed, so that some keys are used far more than others.
+            int k = (int) (Math.pow(r.nextDouble(), 3) * MAX);
+            double op = r.nextDouble();
+            if (op < 0.1) {
+                assert equal(map.remove(k), st.delete(k));
+            } else if (op < 0.6) {
+                Integer expected = map.get(k);
+                if (expected == null)
+                    misses++;
+                else
+                    hits++;
+                assert equal(expected, st.get(k));
+            } else {
+                assert equal(map.put(k, i), st.put(k, i));
+            }
+            assert map.size() == st.size() && st.size() <= capacity;
+            
+            if (i % 100 == 0) {
+                Map<Integer, Integer> entries = new HashMap<Integer, Integer>();
+                for (Map.Entry<Integer, Integer> e : st)
+                    entries.put(e.getKey(), e.getValue());
+                assert entries.equals(map) && st.getAllKeys().equals(map.keySet());
+            }
+        }
+        assert st.hits() == hits && st.misses() == misses && st.evictions() == evictions[0];
+        assert (evictions[0] > 0) == (capacity < MAX);
         
-        for (int i = 0; i < n; i++) {
-            double d = r.nextDouble();
-            int c;
-            for (c = 0; c < limits.length; c++) {
-                if (d < limits[c]) {
-                    break;
+        // Hot keys used between the keys of a long scan stay in the cache; in an LRU cache the scan pushes them out.
+        if (capacity >= 100) {
+            TinyLfuCache<Integer, Integer> tlfu = new TinyLfuCache<Integer, Integer>(capacity);
+            LRUCache<Integer, Integer> lru = new LRUCache<Integer, Integer>(capacity);
+            int hot = capacity / 2;
+            int[] hotHits = new int[2];
+            List<Dictionary<Integer, Integer>> caches = Arrays.<Dictionary<Integer, Integer>> asList(tlfu, lru);
+            for (int c = 0; c < caches.size(); c++) {
+                Dictionary<Integer, Integer> cache = caches.get(c);
+                for (int i = 0; i < 20 * hot; i++)
+                    if (cache.get(i % hot) == null)
+                        cache.put(i % hot, i);
+                for (int i = 0; i < 50 * capacity; i++) {
+                    int key = i % 10 == 0 ? i / 10 % hot : MAX + i;
+                    if (cache.get(key) != null)
+                        hotHits[c]++;
+                    else
+                        cache.put(key, i);
                 }
             }
+            for (int key = 0; key < hot; key++)
+                assert tlfu.containsKey(key);
+            assert hotHits[0] == 5 * capacity && hotHits[1] < capacity / 2;
+        }
+        
+        st.clear();
+        assert st.isEmpty() && st.get(0) == null;
+        
+        if (VERBOSE) {
+            System.out.printf("Test #14, %d operations, %d evictions: passed%n", rounds, evictions[0]);
+        }
+    }
+    
+    private static void test15h(int rounds) {
+        final long MS = 1000000;
+        final long[] ttls = new long[] { 5, 1000, 60 * 1000, 24 * 3600 * 1000, 100L * 24 * 3600 * 1000 };
+        final long[] time = new long[] { (long) r.nextInt() << 20 | r.nextInt(1 << 20) };
+        Clock clock = new Clock() {
+            public long nanoTime() {
+                return time[0];
+            }
+        };
+        // What's been put and not deleted, less what the dictionary says has expired.
+        final Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        final Map<Integer, Long> deadlines = new HashMap<Integer, Long>();
+        final int[] expirations = new int[1];
+        ExpiringDictionary<Integer, Integer> st = new ExpiringDictionary<Integer, Integer>(
+                new ProbingHashtableSupplier(), 1000, 0, new EvictionListener<Integer, Integer>() {
+                    public void evicted(Integer key, Integer value) {
+                        assert deadlines.remove(key) - time[0] <= 0; // Never early.
+                        assert value.equals(map.remove(key));
+                        expirations[0]++;
+                    }
+                }, clock);
+        
+        for (int i = 0; i < rounds; i++) {
+            int k = r.nextInt(200);
+            Long deadline = deadlines.get(k);
+            boolean live = deadline != null && deadline - time[0] > 0;
+            Integer expected = live ? map.get(k) : null;
             
-            if (c == 0) { // Get
-                if (set.size() > 0) {
-                    Integer rn = (int) (r.nextDouble() * MAX);
-                    st.get(rn);
+            double op = r.nextDouble();
+            if (op < 0.4) {
+                long ttl = 1 + (long) (r.nextDouble() * ttls[r.nextInt(ttls.length)]);
+                assert equal(expected, st.put(k, i, ttl));
+                map.put(k, i);
+                deadlines.put(k, time[0] + ttl * MS);
+            } else if (op < 0.5) {
+                assert equal(expected, st.delete(k));
+                map.remove(k);
+                deadlines.remove(k);
+            } else {
+                assert equal(expected, st.get(k));
+                assert equal(expected, map.get(k)); // An expired entry is gone once it's looked up.
+            }
+            
+            // Mostly small steps, now and then a jump of minutes or days.
+            double step = r.nextDouble();
+            time[0] += (long) (r.nextDouble() * (step < 0.9 ? 2 * MS : step < 0.99 ? 1000 * MS : ttls[r.nextInt(
+                    ttls.length)] * MS));
+            
+            // Only entries that expired in the current millisecond may not have been removed yet.
+            int size = st.size();
+            assert size == map.size();
+            for (Long d : deadlines.values())
+                assert d - time[0] > 0 || d >> 20 == time[0] >> 20;
+        }
+        
+        time[0] += ttls[ttls.length - 1] * MS + 1;
+        assert st.isEmpty() && map.isEmpty() && st.expirations() == expirations[0];
+        
+        // The sweeper removes entries without being asked.
+        final int[] swept = new int[1];
+        ExpiringDictionary<Integer, Integer> sweeping = new ExpiringDictionary<Integer, Integer>(
+                new ProbingHashtableSupplier(), 5, 1, new EvictionListener<Integer, Integer>() {
+                    public void evicted(Integer key, Integer value) {
+                        swept[0]++;
+                    }
+                });
+        for (int i = 0; i < 100; i++)
+            sweeping.put(i, i);
+        try {
+            for (int wait = 0; wait < 5000; wait++) {
+                synchronized (sweeping) {
+                    if (swept[0] == 100)
+                        break;
                 }
-            } else if (c == 1) { // put
-                int k = (int) (r.nextDouble() * MAX);
-                int v = r.nextInt();
-                st.put(k, v);
-            } else if (c == 2) { // delete
-                Integer k = (int) (r.nextDouble() * MAX);
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        synchronized (sweeping) {
+            assert swept[0] == 100;
+        }
+        sweeping.close();
+        
+        try {
+            st.put(0, 0, 0);
+            assert false;
+        } catch (IllegalArgumentException e) {}
+        
+        if (VERBOSE) {
+            System.out.printf("Test #15, %d operations, %d expirations: passed%n", rounds, expirations[0]);
+        }
+    }
+    
+    private static void test16h(int sampleEvery, int rounds) {
+        final int MAX = 100;
+        ProbingHashtable<Integer, Integer> table = new ProbingHashtable<Integer, Integer>();
+        InstrumentedDictionary<Integer, Integer> st = new InstrumentedDictionary<Integer, Integer>(table, sampleEvery);
+        InstrumentedDictionary.Op[] ops = InstrumentedDictionary.Op.values();
+        long[] counts = new long[ops.length];
+        long[] hits = new long[ops.length];
+        
+        for (int i = 0; i < rounds; i++) {
+            int k = r.nextInt(MAX);
+            List<Integer> batch = Arrays.asList(k, r.nextInt(MAX), r.nextInt(MAX));
+            InstrumentedDictionary.Op op = ops[r.nextInt(ops.length)];
+            boolean hit;
+            switch (op) {
+            case GET:
+                hit = st.get(k) != null;
+                break;
+            case PUT:
+                hit = st.put(k, i) != null;
+                break;
+            case DELETE:
+                hit = st.delete(k) != null;
+                break;
+            case CONTAINS_KEY:
+                hit = st.containsKey(k);
+                break;
+            case CONTAINS_VALUE:
+                hit = st.containsValue(k);
+                break;
+            case PUT_ALL:
+                Map<Integer, Integer> m = new HashMap<Integer, Integer>();
+                for (int key : batch)
+                    m.put(key, i);
+                st.putAll(m);
+                hit = false;
+                break;
+            case GET_ALL:
+                hit = !st.getAll(batch).isEmpty();
+                break;
+            case DELETE_ALL:
+                hit = st.deleteAll(batch) > 0;
+                break;
+            default:
+                st.getAllKeys();
+                hit = false;
+            }
+            counts[op.ordinal()]++;
+            if (hit)
+                hits[op.ordinal()]++;
+        }
+        
+        InstrumentedDictionary.Stats stats = st.stats();
+        for (InstrumentedDictionary.Op op : ops) {
+            assert stats.count(op) == counts[op.ordinal()] && stats.hits(op) == hits[op.ordinal()];
+            assert stats.timed(op) == counts[op.ordinal()] / sampleEvery;
+            long p50 = stats.percentileNanos(op, 0.5), p99 = stats.percentileNanos(op, 0.99);
+            assert 0 <= p50 && p50 <= p99 && p99 <= stats.percentileNanos(op, 1);
+        }
+        // Calls that throw are counted but not timed.
+        try {
+            st.get(null);
+            assert false;
+        } catch (NullPointerException e) {}
+        assert st.stats().count(InstrumentedDictionary.Op.GET) == counts[0] + 1;
+        
+        // A batch reaches the table whole, so the table makes room for it once rather than resizing as it goes.
+        final int[] resizes = new int[1];
+        table.setResizeListener(new ResizeListener() {
+            public void resized(ResizeEvent e) {
+                resizes[0]++;
+            }
+        });
+        Map<Integer, Integer> m = new HashMap<Integer, Integer>();
+        for (int k = MAX; k < 100 * MAX; k++)
+            m.put(k, k);
+        st.putAll(m);
+        assert resizes[0] == 1 && st.getAll(m.keySet()).equals(m) && st.deleteAll(m.keySet()) == m.size();
+        
+        // Every latency is in a bucket no more than a quarter wider than it.
+        for (long nanos : new long[] { 0, 1, 3, 4, 7, 8, 1000, 1023, 1024, 123456789, Long.MAX_VALUE }) {
+            int b = InstrumentedDictionary.bucket(nanos);
+            assert b < InstrumentedDictionary.BUCKETS && InstrumentedDictionary.bucketMax(b) >= nanos;
+            assert b == 0 || InstrumentedDictionary.bucketMax(b - 1) < nanos;
+            assert InstrumentedDictionary.bucketMax(b) - nanos <= nanos / 4;
+        }
+        
+        if (VERBOSE) {
+            System.out.printf("Test #16, %d operations: passed%n", rounds);
+        }
+    }
+    
+    private static void test17h(DictionarySupplier stSup, int rounds) {
+        final int MAX = rounds / 4;
+        final Dictionary<Integer, Integer> st = stSup.getNew();
+        final boolean incremental = st.toString().startsWith("Incremental");
+        final List<ResizeEvent> events = new ArrayList<ResizeEvent>();
+        final int[] maxSize = new int[1];
+        listen(st, new ResizeListener() {
+            public void resized(ResizeEvent e) {
+                assert e.table() == st && e.durationNanos() >= 0;
+                assert events.isEmpty() || e.oldCapacity() == events.get(events.size() - 1).newCapacity();
+                // An incremental resize doesn't move what was put or deleted in its new array while it ran.
+                assert incremental ? e.entriesMoved() <= maxSize[0] : e.entriesMoved() == st.size();
+                events.add(e);
+            }
+        });
+        
+        // Puts can only grow the table, and deletes only shrink it.
+        for (int phase = 0; phase < 2; phase++) {
+            ResizeEvent.Trigger trigger = phase == 0 ? ResizeEvent.Trigger.GROW : ResizeEvent.Trigger.SHRINK;
+            int before = events.size();
+            for (int i = 0; i < rounds / 2; i++) {
+                int k = r.nextInt(MAX);
+                if (phase == 0)
+                    st.put(k, i);
+                else
+                    st.delete(k);
+                maxSize[0] = Math.max(maxSize[0], st.size());
+            }
+            assert events.size() > before;
+            for (ResizeEvent e : events.subList(before, events.size()))
+                assert e.trigger() == trigger && (trigger == ResizeEvent.Trigger.GROW) == (e.newCapacity() > e
+                        .oldCapacity());
+        }
+        
+        // Batches resize up front, once, in the tables that size for them.
+        Map<Integer, Integer> batch = new HashMap<Integer, Integer>();
+        for (int k = 0; k < MAX; k++)
+            batch.put(k, k);
+        int before = events.size();
+        st.putAll(batch);
+        assert incremental || st instanceof RobinHoodHashtable || events.size() == before + 1;
+        
+        int seen = events.size();
+        listen(st, null);
+        st.deleteAll(batch.keySet());
+        st.putAll(batch);
+        assert events.size() == seen;
+        
+        if (VERBOSE) {
+            System.out.printf("Test #17, %d operations, %d resizes: passed%n", rounds, seen);
+        }
+    }
+    
+    /**
+     * Statistics that must add up, checked after every operation of a random series.
+     */
+    private static void test18h(DictionarySupplier stSup, int rounds) {
+        final int MAX = rounds / 4;
+        Dictionary<Integer, Integer> st = stSup.getNew();
+        
+        for (int i = 0; i < rounds; i++) {
+            int k = r.nextInt(MAX);
+            if (r.nextInt(3) == 0)
                 st.delete(k);
+            else
+                st.put(k, i);
+            
+            if (st instanceof ChainingHashtable) {
+                ChainingHashtable.BucketStats bs = ((ChainingHashtable<Integer, Integer>) st).bucketStats();
+                int buckets = 0, entries = 0;
+                for (int n = 0; n <= bs.maxChain(); n++) {
+                    buckets += bs.chains(n);
+                    entries += n * bs.chains(n);
+                }
+                assert buckets == bs.buckets() && entries == bs.size() && bs.size() == st.size();
+                assert bs.maxChain() == 0 || bs.chains(bs.maxChain()) > 0;
+                assert bs.emptyRatio() >= 0 && bs.emptyRatio() <= 1;
+            } else {
+                ProbingHashtable.ProbeStats ps = ((ProbingHashtable<Integer, Integer>) st).probeStats();
+                int entries = 0;
+                for (int n = 1; n <= ps.maxCluster(); n++)
+                    entries += n * ps.clusters(n);
+                assert entries == ps.size() && ps.size() == st.size() && ps.loadFactor() < 1;
+                assert ps.maxCluster() == 0 || ps.clusters(ps.maxCluster()) > 0;
+                // No entry is further from home than its cluster is long.
+                assert ps.maxHitProbes() <= ps.maxCluster() && ps.maxMissProbes() == ps.maxCluster() + 1;
+                assert ps.size() == 0 || ps.meanHitProbes() >= 1 && ps.meanHitProbes() <= ps.maxHitProbes();
+                assert ps.meanMissProbes() >= 1 && ps.meanMissProbes() <= ps.maxMissProbes();
             }
         }
-        long end = System.nanoTime();
-        return ((double) (end - start)) / n;
+        
+        if (VERBOSE) {
+            System.out.printf("Test #18, %d operations: passed%n", rounds);
+            System.out.print(st instanceof ChainingHashtable ? ((ChainingHashtable<Integer, Integer>) st).bucketStats()
+                    : ((ProbingHashtable<Integer, Integer>) st).probeStats());
+        }
+    }
+    
+    /**
+     * Threads working on disjoint ranges of keys at once, each checking every result against its own map.
+     */
+    private static void test19h(DictionarySupplier stSup, int threadCount, final int rounds) {
+        final int MAX = rounds / 2; // keys per thread
+        final Dictionary<Integer, Integer> st = stSup.getNew();
+        final List<Map<Integer, Integer>> maps = new ArrayList<Map<Integer, Integer>>();
+        final long[][] calls = new long[threadCount][InstrumentedDictionary.Op.values().length]; // per thread and op
+        final Throwable[] failure = new Throwable[1];
+        final CountDownLatch start = new CountDownLatch(1);
+        
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+            final Random random = new Random(1176072517698283250L + t);
+            final int base = t * MAX;
+            final long[] called = calls[t];
+            maps.add(map);
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < rounds; i++) {
+                            Integer k = base + random.nextInt(MAX);
+                            int c = random.nextInt(8);
+                            InstrumentedDictionary.Op op;
+                            if (c < 4) { // Mostly puts, so the table keeps growing.
+                                assert equal(map.put(k, i), st.put(k, i));
+                                op = InstrumentedDictionary.Op.PUT;
+                            } else if (c < 6) {
+                                assert equal(map.remove(k), st.delete(k));
+                                op = InstrumentedDictionary.Op.DELETE;
+                            } else if (c < 7) {
+                                assert equal(map.get(k), st.get(k));
+                                op = InstrumentedDictionary.Op.GET;
+                            } else {
+                                assert map.containsKey(k) == st.containsKey(k);
+                                op = InstrumentedDictionary.Op.CONTAINS_KEY;
+                            }
+                            called[op.ordinal()]++;
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            if (failure[0] == null)
+                                failure[0] = e;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        try {
+            for (Thread t : threads)
+                t.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        if (failure[0] != null)
+            throw new AssertionError(failure[0]);
+        
+        // Each thread counts into its own counters; none of its calls may be lost from the sum.
+        if (st instanceof InstrumentedDictionary) {
+            InstrumentedDictionary.Stats stats = ((InstrumentedDictionary<Integer, Integer>) st).stats();
+            for (InstrumentedDictionary.Op op : InstrumentedDictionary.Op.values()) {
+                long sum = 0;
+                for (long[] called : calls)
+                    sum += called[op.ordinal()];
+                assert stats.count(op) == sum && stats.timed(op) == sum;
+            }
+        }
+        
+        Map<Integer, Integer> all = new HashMap<Integer, Integer>();
+        for (Map<Integer, Integer> map : maps)
+            all.putAll(map);
+        assert st.size() == all.size();
+        assert st.getAllKeys().equals(all.keySet());
+        for (Map.Entry<Integer, Integer> e : all.entrySet())
+            assert e.getValue().equals(st.get(e.getKey()));
+        
+        if (VERBOSE) {
+            System.out.printf("Test #19, %d threads, %d operations each: passed%n", threadCount, rounds);
+        }
+    }
+    
+    private static void test20h(int fanout, int rounds) {
+        final int MAX = 1000;
+        TreeMap<Integer, Integer> map = new TreeMap<Integer, Integer>();
+        BPlusTree<Integer, Integer> st = new BPlusTree<Integer, Integer>(fanout);
+        
+        for (int i = 0; i < rounds; i++) {
+            int k = (int) (r.nextDouble() * MAX);
+            // Lean towards deleting in the second half, so that nodes merge as well as split.
+            if (r.nextDouble() < (i < rounds / 2 ? 0.3 : 0.7)) {
+                assert equal(map.remove(k), st.delete(k));
+            } else {
+                assert equal(map.put(k, i), st.put(k, i));
+            }
+            assert map.size() == st.size();
+            
+            int lo = (int) (r.nextDouble() * MAX);
+            int hi = lo + (int) (r.nextDouble() * MAX / 4);
+            assert equal(map.isEmpty() ? null : map.firstKey(), st.min());
+            assert equal(map.isEmpty() ? null : map.lastKey(), st.max());
+            assert equal(map.floorKey(lo), st.floor(lo));
+            assert equal(map.ceilingKey(lo), st.ceiling(lo));
+            assert new ArrayList<Integer>(map.subMap(lo, hi).keySet()).equals(st.range(lo, hi));
+            
+            BPlusTree<Integer, Integer>.Cursor c = st.cursor();
+            for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+                assert c.next().equals(e.getKey());
+                assert c.value().equals(e.getValue());
+            }
+            assert !c.hasNext();
+        }
+        
+        // A cursor notices keys being added under it.
+        Iterator<Integer> c = st.cursor();
+        st.put(MAX, MAX);
+        try {
+            c.next();
+            assert false;
+        } catch (ConcurrentModificationException e) {}
+        
+        if (VERBOSE) {
+            System.out.printf("Test #20, %d ordered queries: passed%n", rounds);
+        }
+    }
+    
+    /**
+     * Statistics of small tables whose layout is worked out by hand: Integer keys hash to themselves modulo 11.
+     */
+    private static void test21h() {
+        ChainingHashtable<Integer, Integer> cht = new ChainingHashtable<Integer, Integer>(new LinkedListSupplier());
+        ProbingHashtable<Integer, Integer> pht = new ProbingHashtable<Integer, Integer>();
+        for (int k : new int[] { 0, 11, 22, 5 }) {
+            cht.put(k, k);
+            pht.put(k, k);
+        }
+        
+        ChainingHashtable.BucketStats bs = cht.bucketStats();
+        assert bs.buckets() == 11 && bs.size() == 4 && bs.maxChain() == 3;
+        assert bs.chains(0) == 9 && bs.chains(1) == 1 && bs.chains(2) == 0 && bs.chains(3) == 1 && bs.chains(4) == 0;
+        assert bs.emptyRatio() == 9.0 / 11;
+        
+        // Slots 0 to 2 and 5 are full.
+        ProbingHashtable.ProbeStats ps = pht.probeStats();
+        assert ps.capacity() == 11 && ps.size() == 4 && ps.loadFactor() == 4.0 / 11;
+        assert ps.clusters(1) == 1 && ps.clusters(2) == 0 && ps.clusters(3) == 1 && ps.maxCluster() == 3;
+        assert ps.meanHitProbes() == 7.0 / 4 && ps.maxHitProbes() == 3;
+        assert ps.meanMissProbes() == (7 + 4 + 3 + 2 + 2) / 11.0 && ps.maxMissProbes() == 4;
+        
+        // A cluster that wraps around the end: slots 10, 0 and 1.
+        pht.clear();
+        for (int k : new int[] { 10, 21, 32 })
+            pht.put(k, k);
+        ps = pht.probeStats();
+        assert ps.clusters(3) == 1 && ps.maxCluster() == 3 && ps.meanHitProbes() == 2 && ps.maxHitProbes() == 3;
+        assert ps.meanMissProbes() == (8 + 4 + 3 + 2) / 11.0;
+        
+        ps = new ProbingHashtable<Integer, Integer>().probeStats();
+        assert ps.maxCluster() == 0 && ps.meanMissProbes() == 1 && ps.maxMissProbes() == 1 && ps.maxHitProbes() == 0;
+        
+        if (VERBOSE) {
+            System.out.println("Test #21, hand-worked tables: passed");
+        }
+    }
+    
+    private static void test22h(int rounds) {
+        final int MAX = 300; // few enough keys that most deletes find one, so nodes come out from every depth
+        TreeMap<Integer, Integer> map = new TreeMap<Integer, Integer>();
+        RedBlackTree<Integer, Integer> st = new RedBlackTree<Integer, Integer>();
+        
+        for (int i = 0; i < rounds; i++) {
+            int k = r.nextInt(MAX);
+            if (r.nextInt(2) == 0)
+                assert equal(map.remove(k), st.delete(k));
+            else
+                assert equal(map.put(k, i), st.put(k, i));
+            assert st.isLLRB() && st.size() == map.size();
+        }
+        
+        // Then empty it, in no particular order.
+        List<Integer> keys = new ArrayList<Integer>(map.keySet());
+        Collections.shuffle(keys, r);
+        for (Integer k : keys) {
+            assert map.remove(k).equals(st.delete(k));
+            assert st.isLLRB() && st.size() == map.size();
+        }
+        assert st.isEmpty();
+        
+        if (VERBOSE) {
+            System.out.printf("Test #22, %d operations: passed%n", rounds);
+        }
+    }
+    
+    private static void listen(Dictionary<?, ?> st, ResizeListener listener) {
+        if (st instanceof ChainingHashtable)
+            ((ChainingHashtable<?, ?>) st).setResizeListener(listener);
+        else if (st instanceof ProbingHashtable)
+            ((ProbingHashtable<?, ?>) st).setResizeListener(listener);
+        else
+            ((RobinHoodHashtable<?, ?>) st).setResizeListener(listener);
+    }
+    
+    private static DurableDictionary<Integer, Integer> reopen(File dir, DictionarySupplier sup) throws IOException {
+        return new DurableDictionary<Integer, Integer>(dir, Codecs.INTEGER, Codecs.INTEGER, sup);
+    }
+    
+    private static File tempDir() {
+        try {
+            return Files.createTempDirectory("dictionary").toFile();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    private static ReadableByteChannel read(byte[] bytes) {
+        return Channels.newChannel(new ByteArrayInputStream(bytes));
+    }
+    
+    private static File tempFile() {
+        try {
+            File file = File.createTempFile("dictionary", ".map");
+            file.deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    private static MappedProbingHashtable<Integer, Integer> open(File file) {
+        try {
+            return new MappedProbingHashtable<Integer, Integer>(file, Codecs.INTEGER, Codecs.INTEGER);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
     }
 }
 
@@ -451,4 +1500,5 @@ class StatsList {
     public String toString() {
         return String.format("%6.3f (%6.3f)", mean(), stddevMean());
     }
+    
 }
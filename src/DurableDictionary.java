@@ -0,0 +1,598 @@
+/*
+ * DurableDictionary.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * A dictionary whose changes survive a crash: every {@code put}, {@code delete} and {@code clear} is appended to a
+ * write-ahead log on disk before it returns.
+ * <p>
+ * It wraps a dictionary from a supplier, which holds the entries in memory and answers every lookup. Writes are
+ * applied to it, encoded as log records by the key and value {@link Codec}s, and then wait until a background thread
+ * has written and synced them. That thread syncs at most once per sync interval, so writers that arrive within one
+ * interval share a single {@code fsync} (group commit); the interval is the most a write waits beyond the sync itself.
+ * An interval of zero syncs as soon as there's anything to sync, and still batches whatever arrives during a sync.
+ * <p>
+ * Each record is framed by its length and a CRC-32, so a record torn by a crash is recognised and cut off the end of
+ * the log when it's next opened. Once the log grows past the compaction size it's set aside and a new one started,
+ * and another thread folds the old one into the {@link Snapshot} that opening starts from; nothing waits for that.
+ * The directory holds {@code snapshot}, {@code log}, and while a compaction runs {@code log.old}.
+ * <p>
+ * It's thread-safe, whether or not the wrapped dictionary is: every call holds this dictionary's lock, except the wait
+ * for the sync. A write is visible to other threads before it's durable.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class DurableDictionary<K extends Comparable<K>, V> extends AbstractDictionary<K, V> implements Closeable {
+    final static long DEF_SYNC_MICROS = 1000;
+    final static long DEF_COMPACT_BYTES = 64L << 20;
+    
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte CLEAR = 3;
+    
+    private static final String SNAPSHOT = "snapshot";
+    private static final String LOG = "log";
+    private static final String OLD_LOG = "log.old";
+    
+    private final File dir;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final DictionarySupplier supplier;
+    private final long syncNanos; // the longest the flusher waits to gather more records before syncing
+    private final long compactBytes; // how large the log grows before it's compacted
+    private final Dictionary<K, V> dict;
+    
+    // Guarded by this.
+    private FileChannel log;
+    private long logBytes; // the size of the log, counting records not yet written
+    private ByteBuffer pending; // records appended but not yet handed to the flusher
+    private ByteBuffer spare; // the flusher's last batch, kept to swap with pending
+    private ByteBuffer record; // the record being encoded
+    private final CRC32 crc = new CRC32();
+    private long appended; // the number of records appended
+    private long synced; // the number of records on disk
+    private IOException failure; // why the log can't be written, if it can't
+    private boolean closed;
+    private boolean compactRequested;
+    private Thread compactor; // the thread folding the old log into the snapshot, if one is
+    private IOException compactionFailure; // why the last compaction failed, if it did
+    
+    private final Thread flusher;
+    
+    /**
+     * Opens the dictionary kept in {@code dir}, making the directory if it's missing. Opening loads the snapshot and
+     * replays the log into a new dictionary from {@code supplier}.
+     * 
+     * @param dir the directory holding the snapshot and the log
+     * @param keyCodec writes and reads the keys
+     * @param valueCodec writes and reads the values
+     * @param supplier makes the dictionary that holds the entries in memory
+     * @param syncMicros the most a write waits for others to share its sync, in microseconds
+     * @param compactBytes how large the log grows before it's folded into the snapshot
+     * @throws IllegalArgumentException if {@code syncMicros} is negative or {@code compactBytes} isn't positive
+     * @throws IOException if the directory can't be read or written
+     */
+    public DurableDictionary(File dir, Codec<K> keyCodec, Codec<V> valueCodec, DictionarySupplier supplier,
+            long syncMicros, long compactBytes) throws IllegalArgumentException, IOException {
+        if (syncMicros < 0)
+            throw new IllegalArgumentException("Illegal sync interval: " + syncMicros);
+        if (compactBytes <= 0)
+            throw new IllegalArgumentException("Illegal compaction size: " + compactBytes);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Could not make " + dir);
+        
+        this.dir = dir;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.supplier = supplier;
+        syncNanos = syncMicros * 1000;
+        this.compactBytes = compactBytes;
+        
+        File snapshot = new File(dir, SNAPSHOT);
+        dict = snapshot.exists() ? Snapshot.load(snapshot, keyCodec, valueCodec, supplier) : supplier
+                .<K, V> getNew();
+        replay(new File(dir, OLD_LOG), dict);
+        logBytes = replay(new File(dir, LOG), dict);
+        log = openLog(logBytes); // cutting off any torn record
+        
+        pending = ByteBuffer.allocate(1 << 16);
+        spare = ByteBuffer.allocate(1 << 16);
+        record = ByteBuffer.allocate(1 << 10);
+        
+        if (new File(dir, OLD_LOG).exists()) // A compaction was cut short; finish it.
+            startCompaction();
+        
+        flusher = new Thread(new Runnable() {
+            public void run() {
+                flushLoop();
+            }
+        }, "DurableDictionary flusher: " + dir);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    public DurableDictionary(File dir, Codec<K> keyCodec, Codec<V> valueCodec, DictionarySupplier supplier,
+            long syncMicros) throws IllegalArgumentException, IOException {
+        this(dir, keyCodec, valueCodec, supplier, syncMicros, DEF_COMPACT_BYTES);
+    }
+    
+    public DurableDictionary(File dir, Codec<K> keyCodec, Codec<V> valueCodec, DictionarySupplier supplier)
+            throws IOException {
+        this(dir, keyCodec, valueCodec, supplier, DEF_SYNC_MICROS);
+    }
+    
+    public synchronized int size() {
+        return dict.size();
+    }
+    
+    public synchronized boolean isEmpty() {
+        return dict.isEmpty();
+    }
+    
+    public synchronized V get(K key) throws NullPointerException {
+        return dict.get(key);
+    }
+    
+    public synchronized boolean containsKey(K key) throws NullPointerException {
+        return dict.containsKey(key);
+    }
+    
+    public synchronized boolean containsValue(V value) throws NullPointerException {
+        return dict.containsValue(value);
+    }
+    
+    public synchronized Set<K> getAllKeys() {
+        return dict.getAllKeys();
+    }
+    
+    public synchronized void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        dict.forEach(visitor);
+    }
+    
+    /**
+     * Iterates over the wrapped dictionary without holding the lock, so it mustn't be changed meanwhile.
+     */
+    public synchronized Iterator<Map.Entry<K, V>> iterator() {
+        return dict.iterator();
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the key or value doesn't fit its codec
+     * @throws IllegalStateException if the log can't be written
+     */
+    public V put(K key, V val) throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        V previousValue;
+        long seq;
+        synchronized (this) {
+            encode(PUT, key, val); // first, in case it doesn't fit
+            previousValue = dict.put(key, val);
+            seq = append();
+        }
+        awaitSync(seq);
+        return previousValue;
+    }
+    
+    /**
+     * Logs nothing if the key isn't there.
+     * 
+     * @throws IllegalStateException if the log can't be written
+     */
+    public V delete(K key) throws NullPointerException, IllegalStateException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        V previousValue;
+        long seq;
+        synchronized (this) {
+            encode(DELETE, key, null);
+            previousValue = dict.delete(key);
+            if (previousValue == null)
+                return null;
+            seq = append();
+        }
+        awaitSync(seq);
+        return previousValue;
+    }
+    
+    /**
+     * Logs every entry and then waits for one sync.
+     */
+    public void putAll(Map<? extends K, ? extends V> m) throws NullPointerException, IllegalArgumentException,
+            IllegalStateException {
+        checkEntries(m);
+        long seq;
+        synchronized (this) {
+            seq = appended;
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                encode(PUT, e.getKey(), e.getValue());
+                dict.put(e.getKey(), e.getValue());
+                seq = append();
+            }
+        }
+        awaitSync(seq);
+    }
+    
+    /**
+     * Logs every deletion and then waits for one sync.
+     */
+    public int deleteAll(Collection<? extends K> keys) throws NullPointerException, IllegalStateException {
+        checkKeys(keys);
+        int deleted = 0;
+        long seq;
+        synchronized (this) {
+            seq = appended;
+            for (K key : keys) {
+                encode(DELETE, key, null);
+                if (dict.delete(key) != null) {
+                    seq = append();
+                    deleted++;
+                }
+            }
+        }
+        awaitSync(seq);
+        return deleted;
+    }
+    
+    /**
+     * @throws IllegalStateException if the log can't be written
+     */
+    public void clear() throws IllegalStateException {
+        long seq;
+        synchronized (this) {
+            encode(CLEAR, null, null);
+            dict.clear();
+            seq = append();
+        }
+        awaitSync(seq);
+    }
+    
+    /**
+     * Folds the log into the snapshot now, and waits until it's done.
+     * 
+     * @throws IOException if the compaction fails, leaving the logs as they were, or the dictionary is closed
+     */
+    public synchronized void compact() throws IOException {
+        boolean interrupted = false;
+        try {
+            boolean rotated = false;
+            while (true) {
+                while (compactor != null)
+                    interrupted |= await();
+                if (compactionFailure != null) {
+                    IOException e = compactionFailure;
+                    compactionFailure = null;
+                    throw new IOException("Could not compact " + dir, e);
+                }
+                if (failure != null)
+                    throw new IOException("Could not write the log of " + dir, failure);
+                if (closed)
+                    throw new IOException("Closed: " + dir);
+                
+                if (new File(dir, OLD_LOG).exists()) { // An earlier compaction failed; try it again.
+                    startCompaction();
+                } else if (rotated) {
+                    return;
+                } else { // Have the flusher set the log aside once it's synced, and wait for it to.
+                    compactRequested = true;
+                    notifyAll();
+                    while (compactRequested && failure == null && !closed)
+                        interrupted |= await();
+                    rotated = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Syncs what's left of the log and closes it, waiting for any compaction to finish. It mustn't be used afterwards.
+     * 
+     * @throws IOException if the log couldn't be written, or the last compaction failed
+     */
+    public void close() throws IOException {
+        Thread c;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        LockSupport.unpark(flusher);
+        joinUninterruptibly(flusher);
+        synchronized (this) {
+            c = compactor;
+        }
+        if (c != null)
+            joinUninterruptibly(c);
+        
+        synchronized (this) {
+            log.close();
+            if (failure != null)
+                throw new IOException("Could not write the log of " + dir, failure);
+            if (compactionFailure != null)
+                throw new IOException("Could not compact " + dir, compactionFailure);
+        }
+    }
+    
+    public String toString() {
+        return String.format("Durable %s", dict);
+    }
+    
+    /**
+     * Encodes a record into {@link #record}: its length and checksum, then the operation, the key and the value.
+     * 
+     * @throws IllegalStateException if the log can't be written or the dictionary is closed
+     */
+    private void encode(byte op, K key, V value) throws IllegalArgumentException, IllegalStateException {
+        if (failure != null)
+            throw new IllegalStateException("Could not write the log of " + dir, failure);
+        if (closed)
+            throw new IllegalStateException("Closed: " + dir);
+        
+        while (true) {
+            record.clear();
+            record.position(8);
+            try {
+                record.put(op);
+                if (key != null)
+                    keyCodec.encode(key, record);
+                if (value != null)
+                    valueCodec.encode(value, record);
+                break;
+            } catch (BufferOverflowException e) {
+                record = ByteBuffer.allocate(record.capacity() * 2);
+            }
+        }
+        
+        int length = record.position() - 8;
+        crc.reset();
+        crc.update(record.array(), 8, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+    }
+    
+    /**
+     * Appends the encoded record to the pending batch and wakes the flusher.
+     * 
+     * @return the record's sequence number, to wait for
+     */
+    private long append() {
+        if (pending.remaining() < record.remaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position()
+                    + record.remaining()));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        logBytes += record.remaining();
+        pending.put(record);
+        if (appended++ == synced)
+            notifyAll();
+        return appended;
+    }
+    
+    private synchronized void awaitSync(long seq) throws IllegalStateException {
+        boolean interrupted = false;
+        try {
+            while (synced < seq) {
+                if (failure != null)
+                    throw new IllegalStateException("Could not write the log of " + dir, failure);
+                interrupted |= await();
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Writes and syncs batches of records until the dictionary is closed, rotating the log when it's due for
+     * compaction.
+     */
+    private void flushLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (appended == synced && !closed && !compactRequested)
+                        wait();
+                    if (appended == synced && closed)
+                        return;
+                }
+                
+                if (syncNanos > 0) { // Let more writers join the batch. Object.wait would round up to a millisecond.
+                    long deadline = System.nanoTime() + syncNanos;
+                    long left;
+                    while (!isClosed() && (left = deadline - System.nanoTime()) > 0)
+                        LockSupport.parkNanos(left);
+                }
+                
+                ByteBuffer batch;
+                long upTo;
+                FileChannel ch;
+                synchronized (this) {
+                    batch = pending;
+                    pending = spare;
+                    spare = batch;
+                    upTo = appended;
+                    ch = log;
+                }
+                
+                batch.flip();
+                while (batch.hasRemaining())
+                    ch.write(batch);
+                ch.force(false);
+                batch.clear();
+                
+                synchronized (this) {
+                    synced = upTo;
+                    notifyAll();
+                    if ((logBytes >= compactBytes || compactRequested) && compactor == null
+                            && !new File(dir, OLD_LOG).exists())
+                        rotate();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                failure = new InterruptedIOException("Flusher interrupted");
+                notifyAll();
+            }
+        }
+    }
+    
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * Sets the synced log aside for compaction and starts a new one. Records still pending go in the new one.
+     */
+    private void rotate() throws IOException {
+        compactRequested = false;
+        log.close();
+        if (!new File(dir, LOG).renameTo(new File(dir, OLD_LOG)))
+            throw new IOException("Could not rename the log of " + dir);
+        log = openLog(0);
+        logBytes = pending.position();
+        startCompaction();
+    }
+    
+    private void startCompaction() {
+        compactor = new Thread(new Runnable() {
+            public void run() {
+                IOException error = null;
+                try {
+                    compactOldLog();
+                } catch (IOException e) {
+                    error = e;
+                }
+                synchronized (DurableDictionary.this) {
+                    compactor = null;
+                    compactionFailure = error;
+                    DurableDictionary.this.notifyAll();
+                }
+            }
+        }, "DurableDictionary compactor: " + dir);
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+    
+    /**
+     * Loads the snapshot into a new dictionary, replays the old log into it, and saves it as the new snapshot. The
+     * live dictionary isn't touched, so writers carry on meanwhile.
+     */
+    private void compactOldLog() throws IOException {
+        File snapshot = new File(dir, SNAPSHOT);
+        File oldLog = new File(dir, OLD_LOG);
+        Dictionary<K, V> d = snapshot.exists() ? Snapshot.load(snapshot, keyCodec, valueCodec, supplier) : supplier
+                .<K, V> getNew();
+        replay(oldLog, d);
+        Snapshot.save(d, keyCodec, valueCodec, snapshot);
+        // If this delete is lost, the old log is replayed over a snapshot that already has it, which does no harm.
+        if (!oldLog.delete())
+            throw new IOException("Could not delete " + oldLog);
+    }
+    
+    private FileChannel openLog(long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(new File(dir, LOG), "rw");
+        FileChannel ch = raf.getChannel();
+        ch.truncate(length);
+        ch.position(length);
+        return ch;
+    }
+    
+    /**
+     * Applies the records of a log to {@code d}, stopping at the first torn or corrupt one.
+     * 
+     * @return the length of the log up to there
+     */
+    private long replay(File file, Dictionary<K, V> d) throws IOException {
+        if (!file.exists())
+            return 0;
+        
+        long length = file.length();
+        long pos = 0;
+        CRC32 check = new CRC32();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                Snapshot.BUFFER_SIZE));
+        try {
+            while (length - pos >= 8) {
+                int size = in.readInt();
+                int checksum = in.readInt();
+                if (size <= 0 || size > length - pos - 8)
+                    break;
+                byte[] payload = new byte[size];
+                in.readFully(payload);
+                check.reset();
+                check.update(payload);
+                if ((int) check.getValue() != checksum)
+                    break;
+                
+                ByteBuffer buf = ByteBuffer.wrap(payload);
+                byte op = buf.get();
+                if (op == PUT)
+                    d.put(keyCodec.decode(buf), valueCodec.decode(buf));
+                else if (op == DELETE)
+                    d.delete(keyCodec.decode(buf));
+                else if (op == CLEAR)
+                    d.clear();
+                else
+                    throw new IOException("Unknown log record " + op + " in " + file);
+                pos += 8 + size;
+            }
+        } finally {
+            in.close();
+        }
+        return pos;
+    }
+    
+    /**
+     * Waits to be notified, holding the lock.
+     * 
+     * @return whether the wait was interrupted, for the caller to pass on once it's done waiting
+     */
+    private boolean await() {
+        try {
+            wait();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+    
+    private static void joinUninterruptibly(Thread t) {
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
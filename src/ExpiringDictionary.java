@@ -0,0 +1,454 @@
+/*
+ * ExpiringDictionary.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.io.Closeable;
+import java.util.*;
+
+/**
+ * A dictionary whose entries expire a while after they're put: each entry lives for its time-to-live (TTL), which is
+ * the dictionary's default or one given to {@link #put(Comparable, Object, long)}, and putting the key again starts it
+ * over.
+ * <p>
+ * The deadlines are kept in a hierarchical timer wheel, so that finding the expired entries never means looking at
+ * the ones that haven't. The wheel has five levels of buckets, the first a millisecond wide (2<sup>20</sup> ns) and
+ * each level's buckets as wide as the whole level below, reaching about 52 days; an entry goes in the bucket of the
+ * lowest level that reaches its deadline. Whenever the time passes into a new bucket of a level, that bucket is
+ * emptied: entries that have expired are removed, and the rest are put in the level below, so each entry moves at most
+ * once per level before it expires. Every call advances the wheel to the current time first, and a lookup also checks
+ * the deadline of the entry it finds, so an expired entry is never returned even if its bucket hasn't come round yet;
+ * only the size may count entries that expired within the last millisecond.
+ * <p>
+ * Since nothing happens without a call, a dictionary that's left alone holds on to its expired entries; an optional
+ * sweeper thread advances the wheel every so often to let them go, and tells the {@link EvictionListener} in good
+ * time. The entries are held in a dictionary from any supplier, as in {@link LRUCache}. It's thread-safe: every call
+ * holds this dictionary's lock, which the sweeper shares.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ExpiringDictionary<K extends Comparable<K>, V> extends AbstractDictionary<K, V> implements Closeable {
+    /**
+     * The longest TTL, so that deadlines can't overflow: about 73 years.
+     */
+    final static long MAX_TTL_MILLIS = (Long.MAX_VALUE >> 2) / 1000000;
+    
+    // Level i buckets are 2^SHIFTS[i] ns wide, and a level reaches as far as a bucket of the next one.
+    private final static int[] SHIFTS = new int[] { 20, 28, 34, 40, 46 };
+    private final static int[] BUCKETS = new int[] { 256, 64, 64, 64, 64 };
+    
+    private final Dictionary<K, ExpiringNode<K, V>> index;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final EvictionListener<? super K, ? super V> listener; // null if no one's listening
+    private final CacheList<K, V>[][] wheel;
+    private final Thread sweeper; // null if there isn't one
+    
+    // Guarded by this.
+    private long nanos; // the time the wheel has been advanced to
+    private long expirations;
+    private boolean closed;
+    
+    /**
+     * Makes an empty dictionary.
+     * 
+     * @param indexSupplier makes the dictionary that holds the entries
+     * @param ttlMillis how long entries live unless they're put with a TTL of their own, in milliseconds
+     * @param sweepMillis how often the sweeper removes expired entries, in milliseconds, or 0 for no sweeper
+     * @param listener is told of every entry that expires, or {@code null}
+     * @throws IllegalArgumentException if {@code ttlMillis} isn't positive or is more than {@link #MAX_TTL_MILLIS}, or
+     *             {@code sweepMillis} is negative
+     */
+    public ExpiringDictionary(DictionarySupplier indexSupplier, long ttlMillis, long sweepMillis,
+            EvictionListener<? super K, ? super V> listener) throws IllegalArgumentException {
+        this(indexSupplier, ttlMillis, sweepMillis, listener, Clock.SYSTEM);
+    }
+    
+    public ExpiringDictionary(DictionarySupplier indexSupplier, long ttlMillis) throws IllegalArgumentException {
+        this(indexSupplier, ttlMillis, 0, null);
+    }
+    
+    public ExpiringDictionary(long ttlMillis) throws IllegalArgumentException {
+        this(LRUCache.DEF_INDEX, ttlMillis);
+    }
+    
+    /**
+     * Makes an empty dictionary that tells the time by {@code clock}.
+     */
+    @SuppressWarnings("unchecked")
+    ExpiringDictionary(DictionarySupplier indexSupplier, final long ttlMillis, final long sweepMillis,
+            EvictionListener<? super K, ? super V> listener, Clock clock) throws IllegalArgumentException {
+        checkTtl(ttlMillis);
+        if (sweepMillis < 0)
+            throw new IllegalArgumentException("Illegal sweep interval: " + sweepMillis);
+        
+        index = indexSupplier.getNew();
+        this.ttlMillis = ttlMillis;
+        this.listener = listener;
+        this.clock = clock;
+        nanos = clock.nanoTime();
+        
+        wheel = (CacheList<K, V>[][]) new CacheList<?, ?>[SHIFTS.length][];
+        for (int i = 0; i < SHIFTS.length; i++) {
+            wheel[i] = (CacheList<K, V>[]) new CacheList<?, ?>[BUCKETS[i]];
+            for (int b = 0; b < BUCKETS[i]; b++)
+                wheel[i][b] = new CacheList<K, V>();
+        }
+        
+        if (sweepMillis == 0) {
+            sweeper = null;
+        } else {
+            sweeper = new Thread(new Runnable() {
+                public void run() {
+                    sweepLoop(sweepMillis);
+                }
+            }, "ExpiringDictionary sweeper");
+            sweeper.setDaemon(true);
+            sweeper.start();
+        }
+    }
+    
+    private static void checkTtl(long ttlMillis) throws IllegalArgumentException {
+        if (ttlMillis <= 0 || ttlMillis > MAX_TTL_MILLIS)
+            throw new IllegalArgumentException("Illegal TTL: " + ttlMillis);
+    }
+    
+    /**
+     * Counts only the entries that haven't expired, give or take the last millisecond.
+     */
+    public synchronized int size() {
+        advance(clock.nanoTime());
+        return index.size();
+    }
+    
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    public synchronized V get(K key) throws NullPointerException {
+        ExpiringNode<K, V> n = live(key, now());
+        return n == null ? null : n.value;
+    }
+    
+    public synchronized boolean containsKey(K key) throws NullPointerException {
+        return live(key, now()) != null;
+    }
+    
+    public synchronized boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        Iterator<Map.Entry<K, V>> it = iterator();
+        while (it.hasNext())
+            if (value.equals(it.next().getValue()))
+                return true;
+        return false;
+    }
+    
+    public synchronized Set<K> getAllKeys() {
+        Set<K> keys = new HashSet<K>();
+        Iterator<Map.Entry<K, V>> it = iterator();
+        while (it.hasNext())
+            keys.add(it.next().getKey());
+        return keys;
+    }
+    
+    public synchronized void forEach(final EntryVisitor<? super K, ? super V> visitor) {
+        final long now = now();
+        index.forEach(new EntryVisitor<K, ExpiringNode<K, V>>() {
+            public void visit(K key, ExpiringNode<K, V> n) {
+                if (n.deadline - now > 0)
+                    visitor.visit(key, n.value);
+            }
+        });
+    }
+    
+    /**
+     * Iterates over the entries that hadn't expired when it was made. It isn't thread-safe: don't use it while other
+     * threads, or the sweeper, might change the dictionary.
+     */
+    public synchronized Iterator<Map.Entry<K, V>> iterator() {
+        final long now = now();
+        final Iterator<Map.Entry<K, ExpiringNode<K, V>>> it = index.iterator();
+        return new Iterator<Map.Entry<K, V>>() {
+            private ExpiringNode<K, V> next = find();
+            
+            private ExpiringNode<K, V> find() {
+                while (it.hasNext()) {
+                    ExpiringNode<K, V> n = it.next().getValue();
+                    if (n.deadline - now > 0)
+                        return n;
+                }
+                return null;
+            }
+            
+            public boolean hasNext() {
+                return next != null;
+            }
+            
+            public Map.Entry<K, V> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                ExpiringNode<K, V> n = next;
+                next = find();
+                return n;
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    /**
+     * Puts the mapping with the default TTL.
+     */
+    public V put(K key, V val) throws NullPointerException {
+        return put(key, val, ttlMillis);
+    }
+    
+    /**
+     * Puts the mapping, to expire after {@code ttlMillis}. If the key is already there, its value is replaced and its
+     * TTL starts over.
+     * 
+     * @param key the key
+     * @param val the value
+     * @param ttlMillis how long it lives, in milliseconds
+     * @return the value it replaced, or {@code null} if there wasn't one
+     * @throws NullPointerException if the key or the value is {@code null}
+     * @throws IllegalArgumentException if {@code ttlMillis} isn't positive or is more than {@link #MAX_TTL_MILLIS}
+     */
+    public synchronized V put(K key, V val, long ttlMillis) throws NullPointerException, IllegalArgumentException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        checkTtl(ttlMillis);
+        
+        long now = now();
+        long deadline = now + ttlMillis * 1000000;
+        ExpiringNode<K, V> n = live(key, now);
+        if (n != null) {
+            V previousValue = n.value;
+            n.value = val;
+            unschedule(n);
+            n.deadline = deadline;
+            schedule(n);
+            return previousValue;
+        }
+        
+        n = new ExpiringNode<K, V>(key, val, deadline);
+        index.put(key, n);
+        schedule(n);
+        return null;
+    }
+    
+    public synchronized V delete(K key) throws NullPointerException {
+        long now = now();
+        ExpiringNode<K, V> n = index.delete(key);
+        if (n == null)
+            return null;
+        unschedule(n);
+        if (n.deadline - now <= 0) {
+            expired(n);
+            return null;
+        }
+        return n.value;
+    }
+    
+    /**
+     * Empties the dictionary without telling the listener.
+     */
+    public synchronized void clear() {
+        index.clear();
+        for (CacheList<K, V>[] level : wheel)
+            for (CacheList<K, V> bucket : level)
+                bucket.clear();
+    }
+    
+    /**
+     * Returns the number of entries that have expired and been removed.
+     * 
+     * @return the expiration count
+     */
+    public synchronized long expirations() {
+        return expirations;
+    }
+    
+    /**
+     * Stops the sweeper, if there is one. The dictionary still works, and still expires entries as it's used.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+    }
+    
+    public String toString() {
+        return String.format("Expiring Dictionary (%d ms)", ttlMillis);
+    }
+    
+    /**
+     * Reads the clock and advances the wheel to it.
+     * 
+     * @return the time
+     */
+    private long now() {
+        long now = clock.nanoTime();
+        advance(now);
+        return now;
+    }
+    
+    /**
+     * Returns the key's entry, or {@code null} if it isn't there or has expired, in which case it's removed.
+     */
+    private ExpiringNode<K, V> live(K key, long now) {
+        ExpiringNode<K, V> n = index.get(key);
+        if (n == null || n.deadline - now > 0)
+            return n;
+        index.delete(key);
+        unschedule(n);
+        expired(n);
+        return null;
+    }
+    
+    private void expired(ExpiringNode<K, V> n) {
+        expirations++;
+        if (listener != null)
+            listener.evicted(n.key, n.value);
+    }
+    
+    /**
+     * Puts a node in the bucket of the lowest level that reaches its deadline.
+     */
+    private void schedule(ExpiringNode<K, V> n) {
+        long delta = n.deadline - nanos;
+        int last = SHIFTS.length - 1;
+        int level = 0;
+        while (level < last && delta >= 1L << SHIFTS[level + 1])
+            level++;
+        // Beyond the top level, wait in its furthest bucket and be put back from there.
+        long when = level == last ? Math.min(n.deadline, nanos + ((long) (BUCKETS[last] - 1) << SHIFTS[last]))
+                : n.deadline;
+        
+        CacheList<K, V> bucket = wheel[level][(int) ((when >> SHIFTS[level]) & (BUCKETS[level] - 1))];
+        bucket.addFirst(n);
+        n.bucket = bucket;
+    }
+    
+    private void unschedule(ExpiringNode<K, V> n) {
+        n.bucket.remove(n);
+        n.bucket = null;
+    }
+    
+    /**
+     * Empties the buckets the time has passed into since the wheel was last advanced, on every level.
+     */
+    private void advance(long now) {
+        long previous = nanos;
+        nanos = now;
+        for (int level = 0; level < SHIFTS.length; level++) {
+            long from = previous >> SHIFTS[level];
+            long to = now >> SHIFTS[level];
+            if (from == to)
+                break; // Nor have any of the wider buckets above.
+            
+            // The bucket the wheel was in may hold deadlines later than the time then; so from, not from + 1.
+            long count = Math.min(to - from + 1, BUCKETS[level]);
+            for (long tick = from; tick < from + count; tick++)
+                expire(wheel[level][(int) (tick & (BUCKETS[level] - 1))], now);
+        }
+    }
+    
+    /**
+     * Removes the expired entries of a bucket, and puts the others back in the wheel.
+     */
+    private void expire(CacheList<K, V> bucket, long now) {
+        // The ones that are put back may land in this same bucket, at the front; they're taken from the back.
+        for (int i = bucket.size(); i > 0; i--) {
+            ExpiringNode<K, V> n = (ExpiringNode<K, V>) bucket.last();
+            bucket.remove(n);
+            if (n.deadline - now <= 0) {
+                index.delete(n.key);
+                n.bucket = null;
+                expired(n);
+            } else {
+                schedule(n);
+            }
+        }
+    }
+    
+    private synchronized void sweepLoop(long sweepMillis) {
+        while (!closed) {
+            advance(clock.nanoTime());
+            try {
+                wait(sweepMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
+
+/**
+ * An entry of an expiring dictionary, linked into a bucket of its timer wheel.
+ */
+class ExpiringNode<K, V> extends CacheNode<K, V> {
+    long deadline; // in System.nanoTime() terms
+    CacheList<K, V> bucket;
+    
+    ExpiringNode(K key, V value, long deadline) {
+        super(key, value);
+        this.deadline = deadline;
+    }
+}
+
+/**
+ * The time, in nanoseconds from some fixed but arbitrary start, as {@link System#nanoTime()} tells it.
+ */
+interface Clock {
+    Clock SYSTEM = new Clock() {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+    
+    long nanoTime();
+}
+
+class ExpiringDictionarySupplier implements DictionarySupplier {
+    private final long ttlMillis;
+    private final DictionarySupplier indexSupplier;
+    
+    /**
+     * Constructs empty {@code ExpiringDictionary}'s, without sweepers.
+     * 
+     * @param ttlMillis how long entries live by default, in milliseconds
+     * @param indexSupplier makes the dictionaries that hold the entries
+     * 
+     * @see ExpiringDictionary
+     */
+    public ExpiringDictionarySupplier(long ttlMillis, DictionarySupplier indexSupplier) {
+        this.ttlMillis = ttlMillis;
+        this.indexSupplier = indexSupplier;
+    }
+    
+    public ExpiringDictionarySupplier(long ttlMillis) {
+        this(ttlMillis, LRUCache.DEF_INDEX);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return new ExpiringDictionary<K, V>(indexSupplier, ttlMillis);
+    }
+    
+    public String toString() {
+        if (indexSupplier == LRUCache.DEF_INDEX)
+            return String.format("TTL(%dms)", ttlMillis);
+        return String.format("TTL(%dms):%s", ttlMillis, indexSupplier);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Indexing.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+/**
+ * How a hash table turns a key's hash code into a slot, and which capacities it uses.
+ * <p>
+ * {@link #MODULO} takes the hash code modulo any capacity, which needs an integer division for every home slot but
+ * spreads well-behaved hash codes as they are. {@link #POWER_OF_TWO} rounds capacities up to powers of two and masks
+ * off the low bits, which is much cheaper, but only uses the low bits; so it runs the hash code through the MurmurHash3
+ * finalizer first, or keys such as multiples of 16 would all share a slot.
+ * <p>
+ * Don't give a {@link ChainingHashtable} and its delegate tables both {@code POWER_OF_TWO}: the keys in one bucket
+ * share the low bits of their spread hash, so the delegate would put them all in one cluster.
+ * 
+ * @author Jackson Scholl
+ */
+public enum Indexing {
+    MODULO {
+        int spread(int h) {
+            return h & 0x7fffffff; // Not Math.abs, which leaves Integer.MIN_VALUE negative.
+        }
+        
+        int capacity(int minimum) {
+            return minimum;
+        }
+        
+        int index(int hash, int capacity) {
+            return hash % capacity;
+        }
+    },
+    
+    POWER_OF_TWO {
+        int spread(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h & 0x7fffffff;
+        }
+        
+        int capacity(int minimum) {
+            return minimum <= 1 ? 1 : Integer.highestOneBit(minimum - 1) << 1;
+        }
+        
+        int index(int hash, int capacity) {
+            return hash & (capacity - 1);
+        }
+    };
+    
+    /**
+     * Turns a hash code into the hash this strategy indexes by.
+     * 
+     * @param h the hash code
+     * @return the hash, which is never negative
+     */
+    abstract int spread(int h);
+    
+    /**
+     * Returns the capacity to use for a table that needs at least {@code minimum} slots.
+     * 
+     * @param minimum the smallest acceptable capacity
+     * @return the capacity
+     */
+    abstract int capacity(int minimum);
+    
+    /**
+     * Returns the slot of a hash returned by {@link #spread(int)} in a table of the given capacity.
+     * 
+     * @param hash the spread hash
+     * @param capacity the capacity of the table, as returned by {@link #capacity(int)}
+     * @return the slot, in {@code [0, capacity)}
+     */
+    abstract int index(int hash, int capacity);
+}
@@ -0,0 +1,387 @@
+/*
+ * InstrumentedDictionary.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A dictionary that counts the calls to another, how many of them hit, and how long they take.
+ * <p>
+ * For each of {@code get}, {@code put}, {@code delete}, {@code containsKey}, {@code containsValue},
+ * {@code getAllKeys}, {@code putAll}, {@code getAll} and {@code deleteAll} it keeps the number of calls, the number
+ * that hit (found the key or value; for {@code put}, replaced a value; for {@code getAll} and {@code deleteAll}, found
+ * any of their keys; {@code getAllKeys} and {@code putAll} never hit), and a histogram of their latencies. The
+ * histogram's buckets are log-spaced, four to each power of two, so a percentile read from it is within 25% whatever
+ * the scale, and it takes the same 2 KB per operation however many calls it counts. {@link #stats()} copies everything
+ * out at any time, without stopping the calls.
+ * <p>
+ * The batch calls are passed on whole, so a wrapped table still makes room for a {@code putAll} once, and are counted
+ * as one call each, apart from the single-key calls.
+ * <p>
+ * Timing a call costs two {@link System#nanoTime()} reads, which can be more than a hash lookup itself, so only one
+ * call in every {@code sampleEvery}, by default one in 16, is timed; every call is counted.
+ * <p>
+ * Each thread counts into a block of counters of its own, padded off from the others' so that no two threads write the
+ * same cache line, and only that thread writes it; so counting needs no atomic read-modify-write, and wrapping a
+ * thread-safe dictionary adds no contention between its threads. {@link #stats()} sums the blocks. A block takes about
+ * 18 KB, for each thread that calls the dictionary, and is kept when the thread ends so that its counts still add up.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class InstrumentedDictionary<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+    /**
+     * The operations that are counted.
+     */
+    public enum Op {
+        GET, PUT, DELETE, CONTAINS_KEY, CONTAINS_VALUE, GET_ALL_KEYS, PUT_ALL, GET_ALL, DELETE_ALL
+    }
+    
+    final static int DEF_SAMPLE_EVERY = 16;
+    final static int BUCKETS = 248; // enough for any long
+    
+    // Each operation's counters: calls, hits, total ns of the timed calls, then the histogram of the timed calls.
+    private final static int COUNT = 0;
+    private final static int HITS = 1;
+    private final static int NANOS = 2;
+    private final static int HISTOGRAM = 3;
+    private final static int STRIDE = HISTOGRAM + BUCKETS;
+    private final static long NOT_TIMED = Long.MIN_VALUE;
+    private final static int PAD = 16; // unused longs at each end of a thread's block, two cache lines' worth
+    
+    private final static Op[] OPS = Op.values();
+    
+    private final Dictionary<K, V> dict;
+    private final long sampleMask;
+    private final List<AtomicLongArray> blocks = new CopyOnWriteArrayList<AtomicLongArray>(); // every thread's counters
+    private final ThreadLocal<AtomicLongArray> counters = new ThreadLocal<AtomicLongArray>() {
+        protected AtomicLongArray initialValue() {
+            AtomicLongArray block = new AtomicLongArray(PAD + OPS.length * STRIDE + PAD);
+            blocks.add(block);
+            return block;
+        }
+    };
+    
+    /**
+     * Instruments the given dictionary, which from then on should only be used through this one.
+     * 
+     * @param dictionary the dictionary to wrap
+     * @param sampleEvery time one call in this many; a power of two
+     * @throws IllegalArgumentException if {@code sampleEvery} isn't a positive power of two
+     */
+    public InstrumentedDictionary(Dictionary<K, V> dictionary, int sampleEvery) throws IllegalArgumentException {
+        if (sampleEvery <= 0 || Integer.bitCount(sampleEvery) != 1)
+            throw new IllegalArgumentException("Illegal sample interval: " + sampleEvery);
+        
+        dict = dictionary;
+        sampleMask = sampleEvery - 1;
+    }
+    
+    public InstrumentedDictionary(Dictionary<K, V> dictionary) {
+        this(dictionary, DEF_SAMPLE_EVERY);
+    }
+    
+    public int size() {
+        return dict.size();
+    }
+    
+    public boolean isEmpty() {
+        return dict.isEmpty();
+    }
+    
+    public V get(K key) throws NullPointerException {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.GET);
+        V value = dict.get(key);
+        end(c, Op.GET, start, value != null);
+        return value;
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.CONTAINS_KEY);
+        boolean found = dict.containsKey(key);
+        end(c, Op.CONTAINS_KEY, start, found);
+        return found;
+    }
+    
+    public boolean containsValue(V value) throws NullPointerException {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.CONTAINS_VALUE);
+        boolean found = dict.containsValue(value);
+        end(c, Op.CONTAINS_VALUE, start, found);
+        return found;
+    }
+    
+    public Set<K> getAllKeys() {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.GET_ALL_KEYS);
+        Set<K> keys = dict.getAllKeys();
+        end(c, Op.GET_ALL_KEYS, start, false);
+        return keys;
+    }
+    
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        dict.forEach(visitor);
+    }
+    
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return dict.iterator();
+    }
+    
+    public V put(K key, V value) throws NullPointerException {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.PUT);
+        V previousValue = dict.put(key, value);
+        end(c, Op.PUT, start, previousValue != null);
+        return previousValue;
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.DELETE);
+        V value = dict.delete(key);
+        end(c, Op.DELETE, start, value != null);
+        return value;
+    }
+    
+    public void putAll(Map<? extends K, ? extends V> m) throws NullPointerException {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.PUT_ALL);
+        dict.putAll(m);
+        end(c, Op.PUT_ALL, start, false);
+    }
+    
+    public Map<K, V> getAll(Collection<? extends K> keys) throws NullPointerException {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.GET_ALL);
+        Map<K, V> found = dict.getAll(keys);
+        end(c, Op.GET_ALL, start, !found.isEmpty());
+        return found;
+    }
+    
+    public int deleteAll(Collection<? extends K> keys) throws NullPointerException {
+        AtomicLongArray c = counters.get();
+        long start = start(c, Op.DELETE_ALL);
+        int n = dict.deleteAll(keys);
+        end(c, Op.DELETE_ALL, start, n > 0);
+        return n;
+    }
+    
+    public void clear() {
+        dict.clear();
+    }
+    
+    public String toString() {
+        return "Instrumented " + dict;
+    }
+    
+    /**
+     * Adds up every thread's counters. Calls that are under way while it adds may be counted in some and not yet
+     * others.
+     * 
+     * @return the counts and latencies so far
+     */
+    public Stats stats() {
+        long[] sum = new long[OPS.length * STRIDE];
+        for (AtomicLongArray block : blocks)
+            for (int i = 0; i < sum.length; i++)
+                sum[i] += block.get(PAD + i);
+        return new Stats(sum);
+    }
+    
+    /**
+     * Counts a call, and returns the time if it's to be timed.
+     */
+    private long start(AtomicLongArray c, Op op) {
+        int i = PAD + op.ordinal() * STRIDE + COUNT;
+        long n = c.get(i) + 1;
+        c.lazySet(i, n);
+        return (n & sampleMask) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+    
+    private void end(AtomicLongArray c, Op op, long start, boolean hit) {
+        int base = PAD + op.ordinal() * STRIDE;
+        if (hit)
+            add(c, base + HITS, 1);
+        if (start != NOT_TIMED) {
+            long nanos = System.nanoTime() - start;
+            add(c, base + NANOS, nanos);
+            add(c, base + HISTOGRAM + bucket(nanos), 1);
+        }
+    }
+    
+    /**
+     * Adds to a counter of the calling thread's block. Only that thread writes it, so no update can be lost between
+     * the read and the write, and an ordered store is enough for {@link #stats()} to see it.
+     */
+    private static void add(AtomicLongArray c, int i, long delta) {
+        c.lazySet(i, c.get(i) + delta);
+    }
+    
+    /**
+     * Returns the histogram bucket of a latency: 0 to 3 ns have a bucket each, and each power of two from there on is
+     * split into four.
+     */
+    static int bucket(long nanos) {
+        if (nanos < 4)
+            return (int) Math.max(nanos, 0);
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        return (exp - 1) << 2 | (int) (nanos >>> (exp - 2)) & 3;
+    }
+    
+    /**
+     * Returns the most nanoseconds a latency in the given bucket can be.
+     */
+    static long bucketMax(int bucket) {
+        if (bucket < 4)
+            return bucket;
+        int shift = (bucket >> 2) - 1;
+        long lowest = (long) (4 | bucket & 3) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+    
+    /**
+     * The counts and latencies of an {@code InstrumentedDictionary} at one point.
+     */
+    public static final class Stats {
+        private final long[] counters;
+        
+        private Stats(long[] counters) {
+            this.counters = counters;
+        }
+        
+        /**
+         * Returns the number of calls.
+         * 
+         * @param op the operation
+         * @return the call count
+         */
+        public long count(Op op) {
+            return counters[op.ordinal() * STRIDE + COUNT];
+        }
+        
+        /**
+         * Returns the number of calls that found their key or value.
+         * 
+         * @param op the operation
+         * @return the hit count
+         */
+        public long hits(Op op) {
+            return counters[op.ordinal() * STRIDE + HITS];
+        }
+        
+        /**
+         * Returns the fraction of calls that hit, or NaN if there were none.
+         * 
+         * @param op the operation
+         * @return the hit ratio
+         */
+        public double hitRatio(Op op) {
+            return (double) hits(op) / count(op);
+        }
+        
+        /**
+         * Returns the number of calls that were timed.
+         * 
+         * @param op the operation
+         * @return the timed count
+         */
+        public long timed(Op op) {
+            long timed = 0;
+            for (int b = 0; b < BUCKETS; b++)
+                timed += counters[op.ordinal() * STRIDE + HISTOGRAM + b];
+            return timed;
+        }
+        
+        /**
+         * Returns the mean latency of the timed calls, or NaN if none were.
+         * 
+         * @param op the operation
+         * @return the mean in ns
+         */
+        public double meanNanos(Op op) {
+            return (double) counters[op.ordinal() * STRIDE + NANOS] / timed(op);
+        }
+        
+        /**
+         * Returns a latency that at least the given fraction of the timed calls took no longer than, to within the
+         * width of a histogram bucket; or 0 if none were timed.
+         * 
+         * @param op the operation
+         * @param fraction between 0 and 1: 0.5 for the median, 0.99 for the 99th percentile, 1 for the maximum
+         * @return the percentile in ns
+         * @throws IllegalArgumentException if {@code fraction} isn't between 0 and 1
+         */
+        public long percentileNanos(Op op, double fraction) throws IllegalArgumentException {
+            if (!(fraction >= 0 && fraction <= 1))
+                throw new IllegalArgumentException("Illegal fraction: " + fraction);
+            
+            long timed = timed(op);
+            long rank = Math.max(1, (long) Math.ceil(fraction * timed));
+            long seen = 0;
+            int base = op.ordinal() * STRIDE + HISTOGRAM;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counters[base + b];
+                if (seen >= rank)
+                    return bucketMax(b);
+            }
+            return 0;
+        }
+        
+        /**
+         * Returns a table of the operations that were called: counts, hit ratios, and latencies.
+         */
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-14s %12s %9s %10s %10s %10s %10s %10s%n", "op", "count", "hits", "mean ns",
+                    "p50 ns", "p99 ns", "p99.9 ns", "max ns"));
+            for (Op op : OPS) {
+                if (count(op) == 0)
+                    continue;
+                sb.append(String.format("%-14s %12d %8.2f%% %10.1f %10d %10d %10d %10d%n", op, count(op),
+                        100 * hitRatio(op), meanNanos(op), percentileNanos(op, 0.5), percentileNanos(op, 0.99),
+                        percentileNanos(op, 0.999), percentileNanos(op, 1)));
+            }
+            return sb.toString();
+        }
+    }
+}
+
+class InstrumentedSupplier implements DictionarySupplier {
+    private final DictionarySupplier supplier;
+    private final int sampleEvery;
+    
+    /**
+     * Constructs empty {@code InstrumentedDictionary}'s around the dictionaries of the given supplier.
+     * 
+     * @param delegateSupplier makes the dictionaries that hold the mappings
+     * @param sampleEvery time one call in this many; a power of two
+     * 
+     * @see InstrumentedDictionary
+     */
+    public InstrumentedSupplier(DictionarySupplier delegateSupplier, int sampleEvery) {
+        supplier = delegateSupplier;
+        this.sampleEvery = sampleEvery;
+    }
+    
+    public InstrumentedSupplier(DictionarySupplier delegateSupplier) {
+        this(delegateSupplier, InstrumentedDictionary.DEF_SAMPLE_EVERY);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return new InstrumentedDictionary<K, V>(supplier.<K, V> getNew(), sampleEvery);
+    }
+    
+    public String toString() {
+        if (sampleEvery == InstrumentedDictionary.DEF_SAMPLE_EVERY)
+            return "INS:" + supplier;
+        return "INS/" + sampleEvery + ":" + supplier;
+    }
+}
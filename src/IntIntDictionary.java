@@ -0,0 +1,515 @@
+/*
+ * IntIntDictionary.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+
+/**
+ * A linear-probing hash table from {@code int} to {@code int}.
+ * <p>
+ * Keys and values live in two parallel {@code int} arrays, so there is no boxing and no entry object: {@code put},
+ * {@code get} and {@code delete} never allocate (except when resizing), and each mapping costs eight bytes per slot.
+ * An empty slot holds the key {@code 0}; the key {@code 0} itself is kept to one side. Deletion shifts the rest of the
+ * cluster back, as in {@link ProbingHashtable.Deletion#BACKWARD_SHIFT}. Capacities are powers of two and keys are
+ * mixed as in {@link Indexing#POWER_OF_TWO}: ints are often dense or sequential, and as their own hashes they would
+ * fill one long run of slots that every miss and every delete has to walk to its end.
+ * <p>
+ * Since there is no {@code null} to return, lookups of missing keys return the table's {@code noEntryValue} instead.
+ * Use {@link IntIntDictionaryAdapter} where a {@code Dictionary<Integer, Integer>} is needed.
+ * 
+ * @author Jackson Scholl
+ */
+public class IntIntDictionary {
+    final static double DEF_MAX = 0.75;
+    final static double DEF_MIN = 0.25;
+    final static double DEF_SET = 0.5;
+    
+    private static final int MIN_CAPACITY = 11; // The minimum size of the array; when smaller than this, no down-sizing
+                                                // will occur.
+    private static final int FREE = 0; // The key of an empty slot
+    
+    private int[] keys; // keys[i] == FREE if slot i is empty
+    private int[] vals;
+    private int size; // The current number of elements, including the zero key.
+    private int capacity; // Current capacity of the arrays; a power of two.
+    private final int floor; // The capacity the arrays start at, and never shrink below
+    
+    private boolean hasZeroKey; // Whether the key 0 is mapped; it can't be stored in the arrays
+    private int zeroValue; // The value of the key 0, if hasZeroKey
+    
+    private final int noEntryValue; // Returned by get, put and delete when there is no mapping
+    
+    private final double maxFullness; // determines how full the array can get before resizing occurs
+    private final double minFullness; // determines how empty the array can get before resizing occurs
+    private final double setFullness; // determines how full the array should be made when resizing
+    
+    /**
+     * Constructs an empty {@code IntIntDictionary} with the specified {@code maximum}, {@code minimum}, and {@code set}
+     * fullness ratios
+     * 
+     * @param maximum the maximum fullness
+     * @param minimum the minimum fullness
+     * @param set the fullness when the array is resized.
+     * @param noEntry the value returned for keys that are not mapped
+     * @param expectedSize how many entries the dictionary should hold without resizing; it never shrinks below this
+     * @throws IllegalArgumentException if {@code minimum} is less than or equal to zero or {@code set} is less or equal
+     *             to than {@code minimum} or {@code maximum} is less than or equal to {@code set} or {@code maximum} is
+     *             greater than one or {@code expectedSize} is negative.
+     */
+    public IntIntDictionary(double maximum, double minimum, double set, int noEntry, int expectedSize)
+            throws IllegalArgumentException {
+        if (0 >= minimum)
+            throw new IllegalArgumentException("Illegal minimum fullness: " + minimum);
+        if (minimum >= set)
+            throw new IllegalArgumentException("Minimum fullness is greater than or equal to set.");
+        if (set >= maximum)
+            throw new IllegalArgumentException("Set fullness is greater than or equal to maximum.");
+        if (maximum >= 1)
+            throw new IllegalArgumentException("Illegal maximum fullness: " + maximum);
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        
+        maxFullness = maximum;
+        minFullness = minimum;
+        setFullness = set;
+        noEntryValue = noEntry;
+        
+        size = 0;
+        floor = Indexing.POWER_OF_TWO.capacity(Math.max(MIN_CAPACITY, (int) Math.ceil(expectedSize / set)));
+        capacity = floor;
+        keys = new int[capacity];
+        vals = new int[capacity];
+    }
+    
+    public IntIntDictionary(double maximum, double minimum, double set, int noEntry) throws IllegalArgumentException {
+        this(maximum, minimum, set, noEntry, 0);
+    }
+    
+    public IntIntDictionary(double maximum, double minimum, double set) throws IllegalArgumentException {
+        this(maximum, minimum, set, 0);
+    }
+    
+    public IntIntDictionary(double maximum, double minimum) throws IllegalArgumentException {
+        this(maximum, minimum, DEF_SET);
+    }
+    
+    /**
+     * Constructs an empty {@code IntIntDictionary} with the default fullness ratios that holds {@code expectedSize}
+     * entries without resizing.
+     * 
+     * @param expectedSize how many entries the dictionary should hold without resizing; it never shrinks below this
+     * @throws IllegalArgumentException if {@code expectedSize} is negative
+     */
+    public IntIntDictionary(int expectedSize) throws IllegalArgumentException {
+        this(DEF_MAX, DEF_MIN, DEF_SET, 0, expectedSize);
+    }
+    
+    public IntIntDictionary() {
+        this(DEF_MAX, DEF_MIN);
+    }
+    
+    /**
+     * Returns the current number of key-value mappings.
+     * 
+     * @return the number of key-value mappings
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns {@code true} if there are no key-value mappings in this map.
+     * 
+     * @return {@code true} if there are no key-value mappings in this map
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Returns the value returned by {@code get}, {@code put} and {@code delete} when there is no mapping.
+     * 
+     * @return the no-entry value
+     */
+    public int noEntryValue() {
+        return noEntryValue;
+    }
+    
+    /**
+     * Returns the home slot of a key.
+     */
+    private int hash(int key) {
+        return Indexing.POWER_OF_TWO.spread(key) & (capacity - 1);
+    }
+    
+    /**
+     * The slot after {@code i}, wrapping around.
+     */
+    private int next(int i) {
+        return (i + 1) & (capacity - 1);
+    }
+    
+    /**
+     * Returns the slot holding {@code key}, or the empty slot where it would go. {@code key} must not be {@code 0}.
+     * 
+     * @param key the key to find
+     * @return the index
+     */
+    private int getIndex(int key) {
+        int i = hash(key);
+        while (keys[i] != FREE && keys[i] != key)
+            i = next(i);
+        return i;
+    }
+    
+    /**
+     * Returns the value that is mapped to the given key.
+     * 
+     * @param key the key to locate
+     * @return the value mapped to {@code key}, or the no-entry value if not found
+     */
+    public int get(int key) {
+        if (key == FREE)
+            return hasZeroKey ? zeroValue : noEntryValue;
+        
+        int i = getIndex(key);
+        return keys[i] == FREE ? noEntryValue : vals[i];
+    }
+    
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified key.
+     * 
+     * @param key key whose presence in this map is to be tested
+     * @return {@code true} if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(int key) {
+        if (key == FREE)
+            return hasZeroKey;
+        return keys[getIndex(key)] != FREE;
+    }
+    
+    /**
+     * Returns {@code true} if this map maps one or more keys to the specified value.
+     * 
+     * @param value value whose presence in this map is to be tested
+     * @return {@code true} if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(int value) {
+        if (hasZeroKey && zeroValue == value)
+            return true;
+        for (int i = 0; i < capacity; i++)
+            if (keys[i] != FREE && vals[i] == value)
+                return true;
+        return false;
+    }
+    
+    /**
+     * Returns all the keys contained in this map, in no particular order.
+     * 
+     * @return a new array of the keys
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        if (hasZeroKey)
+            result[n++] = 0;
+        for (int i = 0; i < capacity; i++)
+            if (keys[i] != FREE)
+                result[n++] = keys[i];
+        return result;
+    }
+    
+    /**
+     * Associates the specified value with the specified key in this map, replacing any previous value.
+     * 
+     * @param key key with which the specified value is to be associated
+     * @param val value to be associated with the specified key
+     * @return the value previously associated with the key, or the no-entry value if there was none.
+     */
+    public int put(int key, int val) {
+        if (key == FREE) {
+            int previousValue = hasZeroKey ? zeroValue : noEntryValue;
+            if (!hasZeroKey)
+                size++;
+            hasZeroKey = true;
+            zeroValue = val;
+            return previousValue;
+        }
+        
+        int i = getIndex(key);
+        if (keys[i] == FREE) {
+            keys[i] = key;
+            vals[i] = val;
+            size++;
+            resizeIfNeeded();
+            return noEntryValue;
+        }
+        
+        int previousValue = vals[i];
+        vals[i] = val;
+        return previousValue;
+    }
+    
+    /**
+     * Removes the mapping for a key from this map if it is present.
+     * 
+     * @param key key whose mapping is to be removed from the map
+     * @return the value previously associated with {@code key}, or the no-entry value if there was none.
+     */
+    public int delete(int key) {
+        if (key == FREE) {
+            if (!hasZeroKey)
+                return noEntryValue;
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        
+        int i = getIndex(key);
+        if (keys[i] == FREE)
+            return noEntryValue;
+        int value = vals[i];
+        
+        // Shift the rest of the cluster back over the gap; see ProbingHashtable.removeShifting.
+        int j = i;
+        while (true) {
+            j = next(j);
+            int k = keys[j];
+            if (k == FREE)
+                break;
+            
+            int home = hash(k);
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue;
+            
+            keys[i] = k;
+            vals[i] = vals[j];
+            i = j;
+        }
+        keys[i] = FREE;
+        
+        size--;
+        resizeIfNeeded();
+        return value;
+    }
+    
+    /**
+     * Remove all mappings. The map will be empty after this call returns.
+     */
+    public void clear() {
+        if (capacity == floor) {
+            Arrays.fill(keys, FREE);
+        } else { // An emptied array would shrink to this anyway.
+            capacity = floor;
+            keys = new int[capacity];
+            vals = new int[capacity];
+        }
+        hasZeroKey = false;
+        size = 0;
+    }
+    
+    /**
+     * Resizes the arrays and copies over the elements if the size is out of bounds.
+     * 
+     */
+    private void resizeIfNeeded() {
+        int stored = hasZeroKey ? size - 1 : size; // The zero key takes no slot
+        if (!((stored < capacity * minFullness && capacity > floor) || stored > capacity * maxFullness)) {
+            return;
+        }
+        
+        int[] oldKeys = keys;
+        int[] oldVals = vals;
+        int newCapacity = Indexing.POWER_OF_TWO.capacity(Math.max(floor, (int) Math.ceil(stored / setFullness)));
+        if (newCapacity == capacity) // Rounding up to a power of two can land back on the current capacity.
+            return;
+        capacity = newCapacity;
+        keys = new int[capacity];
+        vals = new int[capacity];
+        
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == FREE)
+                continue;
+            int i = getIndex(oldKeys[j]);
+            keys[i] = oldKeys[j];
+            vals[i] = oldVals[j];
+        }
+    }
+    
+    public String toString() {
+        if (setFullness == DEF_SET && maxFullness == DEF_MAX && minFullness == DEF_MIN)
+            return "Int-Int Hashtable";
+        else if (setFullness == DEF_SET)
+            return String.format("Int-Int Hashtable (%.2f, %.2f)", maxFullness, minFullness);
+        else
+            return String.format("Int-Int Hashtable (%.2f, %.2f, %.2f)", maxFullness, minFullness, setFullness);
+    }
+}
+
+/**
+ * Lets an {@link IntIntDictionary} be used as a {@code Dictionary<Integer, Integer>}.
+ * <p>
+ * The keys and values are still stored unboxed, but values returned through this interface are boxed again.
+ * 
+ * @author Jackson Scholl
+ */
+class IntIntDictionaryAdapter extends AbstractDictionary<Integer, Integer> {
+    private final IntIntDictionary dict;
+    
+    /**
+     * Wraps the given dictionary.
+     * 
+     * @param dictionary the dictionary to wrap
+     */
+    public IntIntDictionaryAdapter(IntIntDictionary dictionary) {
+        dict = dictionary;
+    }
+    
+    public IntIntDictionaryAdapter() {
+        this(new IntIntDictionary());
+    }
+    
+    /**
+     * Returns the wrapped dictionary, for callers that can use the unboxed operations directly.
+     * 
+     * @return the wrapped dictionary
+     */
+    public IntIntDictionary unwrap() {
+        return dict;
+    }
+    
+    public int size() {
+        return dict.size();
+    }
+    
+    public boolean isEmpty() {
+        return dict.isEmpty();
+    }
+    
+    public Integer get(Integer key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        int value = dict.get(key);
+        if (value != dict.noEntryValue() || dict.containsKey(key))
+            return value;
+        return null;
+    }
+    
+    public boolean containsKey(Integer key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        return dict.containsKey(key);
+    }
+    
+    public boolean containsValue(Integer value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        return dict.containsValue(value);
+    }
+    
+    public Set<Integer> getAllKeys() {
+        Set<Integer> set = new HashSet<Integer>(dict.size());
+        for (int key : dict.keys())
+            set.add(key);
+        return set;
+    }
+    
+    public Integer put(Integer key, Integer val) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        int oldSize = dict.size();
+        int previousValue = dict.put(key, val);
+        return dict.size() > oldSize ? null : previousValue;
+    }
+    
+    public Integer delete(Integer key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        int oldSize = dict.size();
+        int previousValue = dict.delete(key);
+        return dict.size() < oldSize ? previousValue : null;
+    }
+    
+    public void clear() {
+        dict.clear();
+    }
+    
+    public String toString() {
+        return dict.toString();
+    }
+}
+
+/**
+ * Makes {@link IntIntDictionaryAdapter}s.
+ * <p>
+ * These only work as {@code Dictionary<Integer, Integer>}; asking for any other key or value type will fail with a
+ * {@code ClassCastException} when the dictionary is first used.
+ */
+class IntIntDictionarySupplier implements SizedDictionarySupplier {
+    private final double max;
+    private final double min;
+    private final double set;
+    private final int expectedSize;
+    
+    /**
+     * Constructs empty {@code IntIntDictionary}'s with the specified {@code maximum}, {@code minimum}, and {@code set}
+     * fullness ratios
+     * 
+     * @param maximum the maximum fullness
+     * @param minimum the minimum fullness
+     * @param setFullness the fullness when the arrays are resized
+     * @param expectedSize how many entries the dictionaries hold before their first resize
+     * 
+     * @see IntIntDictionary
+     */
+    public IntIntDictionarySupplier(double maximum, double minimum, double setFullness, int expectedSize) {
+        max = maximum;
+        min = minimum;
+        set = setFullness;
+        this.expectedSize = expectedSize;
+    }
+    
+    public IntIntDictionarySupplier(double maximum, double minimum, double setFullness) {
+        this(maximum, minimum, setFullness, 0);
+    }
+    
+    public IntIntDictionarySupplier(double maximum, double minimum) {
+        this(maximum, minimum, IntIntDictionary.DEF_SET);
+    }
+    
+    public IntIntDictionarySupplier(int expectedSize) {
+        this(IntIntDictionary.DEF_MAX, IntIntDictionary.DEF_MIN, IntIntDictionary.DEF_SET, expectedSize);
+    }
+    
+    public IntIntDictionarySupplier() {
+        this(IntIntDictionary.DEF_MAX, IntIntDictionary.DEF_MIN);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return getNew(expectedSize);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew(int expectedSize) {
+        Dictionary<?, ?> dict = new IntIntDictionaryAdapter(new IntIntDictionary(max, min, set, 0, expectedSize));
+        return (Dictionary<K, V>) dict;
+    }
+    
+    public String toString() {
+        String name = expectedSize == 0 ? "IIHT" : "IIHT[" + expectedSize + "]";
+        if (max == IntIntDictionary.DEF_MAX && min == IntIntDictionary.DEF_MIN && set == IntIntDictionary.DEF_SET)
+            return name;
+        else if (set == IntIntDictionary.DEF_SET)
+            return String.format("%s(%d/%d)", name, Math.round(max * 100), Math.round(min * 100));
+        else
+            return String.format("%s(%d/%d/%d)", name, Math.round(max * 100), Math.round(min * 100),
+                    Math.round(set * 100));
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * LRUCache.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+
+/**
+ * A dictionary that holds at most a fixed number of entries, evicting the least recently used one to make room.
+ * <p>
+ * The entries are nodes of a doubly-linked list in order of use, most recent first, and an index from another
+ * dictionary maps each key to its node; so a lookup is one index lookup plus relinking the node at the front, and an
+ * eviction unlinks the last node and deletes it from the index. The index comes from a supplier, sized for the
+ * capacity if it's a {@link SizedDictionarySupplier}.
+ * <p>
+ * {@code get} is what counts as a use: it moves the entry to the front and counts a hit or a miss. {@code put} moves
+ * the entry to the front too; {@code containsKey} and the scans leave the order alone. An {@link EvictionListener}, if
+ * given, is told of each entry evicted, after it's gone. Not thread-safe, even around a thread-safe index: a
+ * {@code get} changes the order.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class LRUCache<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+    // Caches delete as much as they put, so backward shift, rather than the default deletion that takes the rest of the
+    // cluster out and puts it back on every eviction; and keys that arrive in order, such as ids, would make one long
+    // cluster of a modulo table.
+    final static DictionarySupplier DEF_INDEX = new ProbingHashtableSupplier(ProbingHashtable.DEF_MAX,
+            ProbingHashtable.DEF_MIN, ProbingHashtable.DEF_SET, ProbingHashtable.Deletion.BACKWARD_SHIFT,
+            Indexing.POWER_OF_TWO);
+    
+    private final int capacity;
+    private final Dictionary<K, CacheNode<K, V>> index;
+    private final CacheList<K, V> order = new CacheList<K, V>(); // most recently used first
+    private final EvictionListener<? super K, ? super V> listener; // null if no one's listening
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Makes an empty cache.
+     * 
+     * @param capacity the most entries it holds
+     * @param indexSupplier makes the dictionary that finds the entries by key
+     * @param listener is told of every entry evicted, or {@code null}
+     * @throws IllegalArgumentException if {@code capacity} isn't positive
+     */
+    public LRUCache(int capacity, DictionarySupplier indexSupplier, EvictionListener<? super K, ? super V> listener)
+            throws IllegalArgumentException {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        
+        this.capacity = capacity;
+        this.listener = listener;
+        index = newIndex(indexSupplier, capacity);
+    }
+    
+    public LRUCache(int capacity, DictionarySupplier indexSupplier) throws IllegalArgumentException {
+        this(capacity, indexSupplier, null);
+    }
+    
+    public LRUCache(int capacity) throws IllegalArgumentException {
+        this(capacity, DEF_INDEX);
+    }
+    
+    /**
+     * Makes an index for a cache, sized for its capacity if the supplier can be.
+     */
+    static <K extends Comparable<K>, V> Dictionary<K, CacheNode<K, V>> newIndex(DictionarySupplier supplier,
+            int capacity) {
+        if (supplier instanceof SizedDictionarySupplier)
+            return ((SizedDictionarySupplier) supplier).getNew(capacity);
+        return supplier.getNew();
+    }
+    
+    public int size() {
+        return index.size();
+    }
+    
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+    
+    /**
+     * Returns the most entries the cache holds.
+     * 
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+    
+    /**
+     * Looks up the value and, if it's there, makes it the most recently used.
+     */
+    public V get(K key) throws NullPointerException {
+        CacheNode<K, V> n = index.get(key);
+        if (n == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        order.moveToFront(n);
+        return n.value;
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        return index.containsKey(key);
+    }
+    
+    public boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        for (CacheNode<K, V> n = order.first(); n != null; n = order.after(n))
+            if (value.equals(n.value))
+                return true;
+        return false;
+    }
+    
+    public Set<K> getAllKeys() {
+        Set<K> keys = new HashSet<K>(index.size());
+        for (CacheNode<K, V> n = order.first(); n != null; n = order.after(n))
+            keys.add(n.key);
+        return keys;
+    }
+    
+    /**
+     * Visits the entries from the most recently used to the least.
+     */
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (CacheNode<K, V> n = order.first(); n != null; n = order.after(n))
+            visitor.visit(n.key, n.value);
+    }
+    
+    /**
+     * Iterates over the entries from the most recently used to the least.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return order.iterator();
+    }
+    
+    /**
+     * Puts the mapping and makes it the most recently used, evicting the least recently used entry if the cache is
+     * over capacity.
+     */
+    public V put(K key, V val) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        CacheNode<K, V> n = index.get(key);
+        if (n != null) {
+            V previousValue = n.value;
+            n.value = val;
+            order.moveToFront(n);
+            return previousValue;
+        }
+        
+        n = new CacheNode<K, V>(key, val);
+        index.put(key, n);
+        order.addFirst(n);
+        if (index.size() > capacity)
+            evict(order.last());
+        return null;
+    }
+    
+    private void evict(CacheNode<K, V> n) {
+        index.delete(n.key);
+        order.remove(n);
+        evictions++;
+        if (listener != null)
+            listener.evicted(n.key, n.value);
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        CacheNode<K, V> n = index.delete(key);
+        if (n == null)
+            return null;
+        order.remove(n);
+        return n.value;
+    }
+    
+    /**
+     * Empties the cache without telling the listener; the counts are kept.
+     */
+    public void clear() {
+        index.clear();
+        order.clear();
+    }
+    
+    /**
+     * Returns the number of {@code get}s that found their key.
+     * 
+     * @return the hit count
+     */
+    public long hits() {
+        return hits;
+    }
+    
+    /**
+     * Returns the number of {@code get}s that didn't find their key.
+     * 
+     * @return the miss count
+     */
+    public long misses() {
+        return misses;
+    }
+    
+    /**
+     * Returns the number of entries evicted to make room.
+     * 
+     * @return the eviction count
+     */
+    public long evictions() {
+        return evictions;
+    }
+    
+    /**
+     * Returns the fraction of {@code get}s that found their key, or zero if there haven't been any.
+     * 
+     * @return the hit ratio
+     */
+    public double hitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+    
+    public String toString() {
+        return String.format("LRU Cache (%d)", capacity);
+    }
+}
+
+/**
+ * Is told of the entries a cache evicts.
+ * 
+ * @author Jackson Scholl
+ */
+interface EvictionListener<K, V> {
+    /**
+     * Called once an entry has been evicted.
+     * 
+     * @param key the key
+     * @param value the value it mapped to
+     */
+    void evicted(K key, V value);
+}
+
+/**
+ * An entry of a cache, linked into one of its lists.
+ */
+class CacheNode<K, V> implements Map.Entry<K, V> {
+    final K key;
+    V value;
+    CacheNode<K, V> prev;
+    CacheNode<K, V> next;
+    byte queue; // which of the cache's lists it's in, for caches with more than one
+    
+    CacheNode(K key, V value) {
+        this.key = key;
+        this.value = value;
+    }
+    
+    public K getKey() {
+        return key;
+    }
+    
+    public V getValue() {
+        return value;
+    }
+    
+    public V setValue(V value) {
+        throw new UnsupportedOperationException();
+    }
+    
+    public boolean equals(Object o) {
+        if (!(o instanceof Map.Entry))
+            return false;
+        Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+        return key.equals(e.getKey()) && value.equals(e.getValue());
+    }
+    
+    public int hashCode() {
+        return key.hashCode() ^ value.hashCode();
+    }
+}
+
+/**
+ * A doubly-linked list of cache nodes, threaded through the nodes themselves, so that moving or removing a node is
+ * O(1). It's circular around a sentinel, so there are no ends to special-case.
+ */
+class CacheList<K, V> implements Iterable<Map.Entry<K, V>> {
+    private final CacheNode<K, V> head = new CacheNode<K, V>(null, null);
+    private int size;
+    
+    CacheList() {
+        clear();
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    void addFirst(CacheNode<K, V> n) {
+        n.prev = head;
+        n.next = head.next;
+        head.next.prev = n;
+        head.next = n;
+        size++;
+    }
+    
+    void remove(CacheNode<K, V> n) {
+        n.prev.next = n.next;
+        n.next.prev = n.prev;
+        n.prev = null;
+        n.next = null;
+        size--;
+    }
+    
+    void moveToFront(CacheNode<K, V> n) {
+        if (head.next == n)
+            return;
+        remove(n);
+        addFirst(n);
+    }
+    
+    /**
+     * Returns the first node, or {@code null} if the list is empty.
+     */
+    CacheNode<K, V> first() {
+        return head.next == head ? null : head.next;
+    }
+    
+    /**
+     * Returns the last node, or {@code null} if the list is empty.
+     */
+    CacheNode<K, V> last() {
+        return head.prev == head ? null : head.prev;
+    }
+    
+    /**
+     * Returns the node after {@code n}, or {@code null} if it's the last.
+     */
+    CacheNode<K, V> after(CacheNode<K, V> n) {
+        return n.next == head ? null : n.next;
+    }
+    
+    void clear() {
+        head.next = head;
+        head.prev = head;
+        size = 0;
+    }
+    
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+            private CacheNode<K, V> next = first();
+            
+            public boolean hasNext() {
+                return next != null;
+            }
+            
+            public Map.Entry<K, V> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                CacheNode<K, V> n = next;
+                next = after(n);
+                return n;
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
+
+class LRUCacheSupplier implements DictionarySupplier {
+    private final int capacity;
+    private final DictionarySupplier indexSupplier;
+    
+    /**
+     * Constructs empty {@code LRUCache}'s.
+     * 
+     * @param capacity the most entries each holds
+     * @param indexSupplier makes the dictionaries that find the entries by key
+     * 
+     * @see LRUCache
+     */
+    public LRUCacheSupplier(int capacity, DictionarySupplier indexSupplier) {
+        this.capacity = capacity;
+        this.indexSupplier = indexSupplier;
+    }
+    
+    public LRUCacheSupplier(int capacity) {
+        this(capacity, LRUCache.DEF_INDEX);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return new LRUCache<K, V>(capacity, indexSupplier);
+    }
+    
+    public String toString() {
+        if (indexSupplier == LRUCache.DEF_INDEX)
+            return String.format("LRU[%d]", capacity);
+        return String.format("LRU[%d]:%s", capacity, indexSupplier);
+    }
+}
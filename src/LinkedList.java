@@ -1,4 +1,7 @@
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -10,7 +13,7 @@ import java.util.Set;
  * @param <K> The key type
  * @param <V> The value type
  */
-public class LinkedList<K extends Comparable<K>, V> implements Dictionary<K, V> {
+public class LinkedList<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
     private Node head;
     private int size;
     
@@ -72,6 +75,33 @@ public class LinkedList<K extends Comparable<K>, V> implements Dictionary<K, V>
         return keys;
     }
     
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (Node n = head; n != null; n = n.next)
+            visitor.visit(n.key, n.val);
+    }
+    
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+            private Node next = head;
+            
+            public boolean hasNext() {
+                return next != null;
+            }
+            
+            public Map.Entry<K, V> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Node n = next;
+                next = n.next;
+                return n;
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
     public V put(K key, V val) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
@@ -107,6 +137,9 @@ public class LinkedList<K extends Comparable<K>, V> implements Dictionary<K, V>
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
         
+        if (head == null)
+            return null;
+        
         if (key.equals(head.key)) {
             V value = head.val;
             head = head.next;
@@ -131,15 +164,15 @@ public class LinkedList<K extends Comparable<K>, V> implements Dictionary<K, V>
     }
     
     public void clear() {
-        for (K key : getAllKeys())
-            delete(key);
+        head = null;
+        size = 0;
     }
     
     public String toString() {
         return String.format("Linked List", size);
     }
     
-    class Node {
+    class Node implements Map.Entry<K, V> {
         K key;
         V val;
         Node next;
@@ -148,6 +181,29 @@ public class LinkedList<K extends Comparable<K>, V> implements Dictionary<K, V>
             key = k;
             val = v;
         }
+        
+        public K getKey() {
+            return key;
+        }
+        
+        public V getValue() {
+            return val;
+        }
+        
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return key.equals(e.getKey()) && val.equals(e.getValue());
+        }
+        
+        public int hashCode() {
+            return key.hashCode() ^ val.hashCode();
+        }
     }
 }
 
@@ -0,0 +1,456 @@
+/*
+ * LockFreeProbingHashtable.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A thread-safe linear-probing hash table that never locks.
+ * <p>
+ * Each slot holds an immutable key/value node and is only ever changed by compare-and-set, so a lookup is a plain
+ * probe that never waits. A key keeps its slot for the life of the table: {@code delete} replaces the node with one
+ * that has no value, and a later {@code put} of the same key brings it back.
+ * <p>
+ * When the table gets too full, a bigger one is hung off it and the slots are frozen one by one with forwarding
+ * markers. A frozen slot can no longer change; its entry is copied into the new table, and anyone who finds the marker
+ * continues there (copying that one entry first if nobody has yet). Each {@code put} or {@code delete} copies a chunk of
+ * slots while a resize is under way, and the new table takes over once every slot has been copied. Deleted entries
+ * aren't copied, so resizing also clears them out. The table grows and is cleaned up this way, but never shrinks.
+ * <p>
+ * {@code size} is a single atomic counter. {@code containsValue}, {@code getAllKeys} and {@code clear} walk the slots
+ * one at a time, so they may miss the effect of operations that run alongside them.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class LockFreeProbingHashtable<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+    final static double DEF_MAX = 0.75;
+    final static double DEF_SET = 0.5;
+    
+    private static final int MIN_CAPACITY = 16;
+    private static final int COPY_CHUNK = 64; // How many slots each put or delete copies during a resize.
+    
+    private static final Forward EMPTY = new Forward(null); // Marks an empty slot of a table being resized.
+    
+    private final AtomicReference<Table> table; // The newest table that every older one has been copied into.
+    private final AtomicInteger size = new AtomicInteger();
+    
+    private final double maxFullness; // how many of the slots may be taken before resizing
+    private final double setFullness; // how full a new table is made
+    private final int floor; // the capacity of the first table; no later table is smaller
+    
+    /**
+     * Constructs an empty {@code LockFreeProbingHashtable} with the specified {@code maximum} and {@code set} fullness
+     * ratios.
+     * 
+     * @param maximum the maximum fullness, counting deleted entries
+     * @param set the fullness of a new table
+     * @param expectedSize how many entries the table should hold without resizing
+     * @throws IllegalArgumentException if {@code set} is less than or equal to zero or {@code maximum} is less than or
+     *             equal to {@code set} or {@code maximum} is greater than or equal to one or {@code expectedSize} is
+     *             negative.
+     */
+    public LockFreeProbingHashtable(double maximum, double set, int expectedSize) throws IllegalArgumentException {
+        if (0 >= set)
+            throw new IllegalArgumentException("Illegal set fullness: " + set);
+        if (set >= maximum)
+            throw new IllegalArgumentException("Set fullness is greater than or equal to maximum.");
+        if (maximum >= 1)
+            throw new IllegalArgumentException("Illegal maximum fullness: " + maximum);
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        
+        maxFullness = maximum;
+        setFullness = set;
+        floor = Indexing.POWER_OF_TWO.capacity(Math.max(MIN_CAPACITY, (int) Math.ceil(expectedSize / set)));
+        table = new AtomicReference<Table>(new Table(floor, maximum));
+    }
+    
+    public LockFreeProbingHashtable(double maximum, double set) throws IllegalArgumentException {
+        this(maximum, set, 0);
+    }
+    
+    public LockFreeProbingHashtable(int expectedSize) throws IllegalArgumentException {
+        this(DEF_MAX, DEF_SET, expectedSize);
+    }
+    
+    public LockFreeProbingHashtable() {
+        this(DEF_MAX, DEF_SET);
+    }
+    
+    public int size() {
+        return Math.max(0, size.get()); // A delete can be counted just before the put it undoes.
+    }
+    
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    private static int hash(Object key) {
+        return Indexing.POWER_OF_TWO.spread(key.hashCode());
+    }
+    
+    public V get(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        int h = hash(key);
+        Table t = table.get();
+        search: while (true) {
+            int mask = t.capacity - 1;
+            int i = h & mask;
+            for (int probes = 0; probes < t.capacity; probes++, i = (i + 1) & mask) {
+                Object s = t.slots.get(i);
+                if (s == null)
+                    return null;
+                if (s instanceof Forward) {
+                    Node<K, V> n = node(((Forward) s).node);
+                    if (n == null || key.equals(n.k)) { // The key is, or would be, in the next table.
+                        if (n != null)
+                            copy(t, n);
+                        t = t.next.get();
+                        continue search;
+                    }
+                } else {
+                    Node<K, V> n = node(s);
+                    if (key.equals(n.k))
+                        return n.v;
+                }
+            }
+            t = t.next.get();
+            if (t == null)
+                return null;
+        }
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        return get(key) != null;
+    }
+    
+    public boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        for (Table t = table.get(); t != null; t = t.next.get()) {
+            for (int i = 0; i < t.capacity; i++) {
+                Object s = t.slots.get(i);
+                if (s instanceof Forward) {
+                    Node<K, V> n = node(((Forward) s).node);
+                    if (n != null)
+                        copy(t, n); // so that the next table has it
+                } else if (s != null && value.equals(node(s).v)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    public Set<K> getAllKeys() {
+        Set<K> set = new HashSet<K>(size());
+        for (Table t = table.get(); t != null; t = t.next.get()) {
+            for (int i = 0; i < t.capacity; i++) {
+                Object s = t.slots.get(i);
+                if (s instanceof Forward) {
+                    Node<K, V> n = node(((Forward) s).node);
+                    if (n != null)
+                        copy(t, n); // so that the next table has it
+                } else if (s != null && node(s).v != null) {
+                    set.add(node(s).k);
+                }
+            }
+        }
+        return set;
+    }
+    
+    public V put(K key, V val) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        return update(key, val);
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        return update(key, null);
+    }
+    
+    public void clear() {
+        for (K key : getAllKeys())
+            delete(key);
+    }
+    
+    /**
+     * Maps {@code key} to {@code val}, or deletes it if {@code val} is null.
+     * 
+     * @return the previous value, or {@code null} if there was none
+     */
+    private V update(K key, V val) {
+        Table t = table.get();
+        if (t.next.get() != null)
+            helpCopy(t);
+        
+        int h = hash(key);
+        search: while (true) {
+            int mask = t.capacity - 1;
+            int i = h & mask;
+            for (int probes = 0; probes < t.capacity;) {
+                Object s = t.slots.get(i);
+                if (s == null) {
+                    if (val == null)
+                        return null; // Not here, so not anywhere.
+                    if (t.next.get() == null && t.taken.get() < t.threshold) {
+                        if (!t.slots.compareAndSet(i, null, new Node<K, V>(key, val)))
+                            continue; // Someone took the slot; look at it again.
+                        size.incrementAndGet();
+                        if (t.taken.incrementAndGet() >= t.threshold)
+                            startResize(t);
+                        return null;
+                    }
+                    // Full or being resized: close the slot, so that the key can't be put in it behind our back.
+                    startResize(t);
+                    if (!t.slots.compareAndSet(i, null, EMPTY))
+                        continue;
+                    t = t.next.get();
+                    continue search;
+                }
+                if (s instanceof Forward) {
+                    Node<K, V> n = node(((Forward) s).node);
+                    if (n == null || key.equals(n.k)) {
+                        if (n != null)
+                            copy(t, n);
+                        t = t.next.get();
+                        continue search;
+                    }
+                } else {
+                    Node<K, V> n = node(s);
+                    if (key.equals(n.k)) {
+                        if (val == null && n.v == null)
+                            return null;
+                        if (!t.slots.compareAndSet(i, s, new Node<K, V>(key, val)))
+                            continue;
+                        if (n.v == null)
+                            size.incrementAndGet();
+                        else if (val == null)
+                            size.decrementAndGet();
+                        return n.v;
+                    }
+                }
+                probes++;
+                i = (i + 1) & mask;
+            }
+            
+            // Every slot is taken by another key.
+            if (val == null && t.next.get() == null)
+                return null;
+            startResize(t);
+            t = t.next.get();
+        }
+    }
+    
+    /**
+     * Hangs a new table off {@code t}, unless someone already has.
+     */
+    private void startResize(Table t) {
+        if (t.next.get() != null)
+            return;
+        int capacity = Indexing.POWER_OF_TWO.capacity(Math.max(floor, (int) Math.ceil(size() / setFullness)));
+        t.next.compareAndSet(null, new Table(capacity, maxFullness));
+    }
+    
+    /**
+     * Freezes and copies the next chunk of {@code t}'s slots, and makes the next table current once every slot has been
+     * copied.
+     */
+    private void helpCopy(Table t) {
+        int start = t.copyIndex.getAndAdd(COPY_CHUNK);
+        if (start >= t.capacity)
+            return;
+        int end = Math.min(t.capacity, start + COPY_CHUNK);
+        
+        for (int i = start; i < end; i++) {
+            Forward f = freeze(t, i);
+            Node<K, V> n = node(f.node);
+            if (n != null)
+                copy(t, n);
+        }
+        
+        if (t.copied.addAndGet(end - start) == t.capacity)
+            table.compareAndSet(t, t.next.get());
+    }
+    
+    /**
+     * Replaces slot {@code i} of {@code t} with a forwarding marker, if it isn't one already.
+     * 
+     * @return the marker
+     */
+    private static Forward freeze(Table t, int i) {
+        while (true) {
+            Object s = t.slots.get(i);
+            if (s instanceof Forward)
+                return (Forward) s;
+            Forward f = s == null ? EMPTY : new Forward((Node<?, ?>) s);
+            if (t.slots.compareAndSet(i, s, f))
+                return f;
+        }
+    }
+    
+    /**
+     * Makes sure a node frozen in {@code t} has been copied into the tables after it. Any number of threads may copy
+     * the same node; only the first one puts it in, and nothing is put in once the key is in the next table, even if
+     * it has been changed or deleted there since.
+     * 
+     * @param t the table the node was frozen in
+     * @param n the frozen node
+     */
+    private void copy(Table t, Node<K, V> n) {
+        if (n.v == null)
+            return; // Deleted entries aren't copied.
+        
+        int h = hash(n.k);
+        t = t.next.get();
+        search: while (true) {
+            int mask = t.capacity - 1;
+            int i = h & mask;
+            for (int probes = 0; probes < t.capacity;) {
+                Object s = t.slots.get(i);
+                if (s == null) {
+                    if (t.next.get() == null && t.taken.get() < t.threshold) {
+                        if (!t.slots.compareAndSet(i, null, n))
+                            continue;
+                        if (t.taken.incrementAndGet() >= t.threshold)
+                            startResize(t);
+                        return;
+                    }
+                    startResize(t);
+                    if (!t.slots.compareAndSet(i, null, EMPTY))
+                        continue;
+                    t = t.next.get();
+                    continue search;
+                }
+                Node<K, V> m = node(s instanceof Forward ? ((Forward) s).node : s);
+                if (m == null) { // An empty slot of a table being resized
+                    t = t.next.get();
+                    continue search;
+                }
+                if (n.k.equals(m.k))
+                    return; // Already copied.
+                probes++;
+                i = (i + 1) & mask;
+            }
+            startResize(t);
+            t = t.next.get();
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Node<K, V> node(Object o) {
+        return (Node<K, V>) o;
+    }
+    
+    public String toString() {
+        if (maxFullness == DEF_MAX && setFullness == DEF_SET)
+            return "Lock-free Probing Hashtable";
+        return String.format("Lock-free Probing Hashtable (%.2f, %.2f)", maxFullness, setFullness);
+    }
+    
+    /**
+     * One generation of the slot array.
+     */
+    private static final class Table {
+        final AtomicReferenceArray<Object> slots; // null, a Node or a Forward
+        final int capacity; // always a power of two
+        final int threshold; // resize once this many slots are taken
+        final AtomicInteger taken = new AtomicInteger();
+        
+        final AtomicReference<Table> next = new AtomicReference<Table>(); // the table being resized into
+        final AtomicInteger copyIndex = new AtomicInteger(); // the next slot to hand out for copying
+        final AtomicInteger copied = new AtomicInteger(); // the number of slots copied so far
+        
+        Table(int capacity, double maxFullness) {
+            this.slots = new AtomicReferenceArray<Object>(capacity);
+            this.capacity = capacity;
+            this.threshold = (int) (capacity * maxFullness);
+        }
+    }
+    
+    /**
+     * An immutable key-value pair; a {@code null} value means the key has been deleted.
+     */
+    private static final class Node<K, V> {
+        final K k;
+        final V v;
+        
+        Node(K key, V val) {
+            k = key;
+            v = val;
+        }
+    }
+    
+    /**
+     * A frozen slot, whose node (or lack of one) now lives in the next table.
+     */
+    private static final class Forward {
+        final Node<?, ?> node;
+        
+        Forward(Node<?, ?> node) {
+            this.node = node;
+        }
+    }
+}
+
+class LockFreeProbingHashtableSupplier implements SizedDictionarySupplier {
+    private final double max;
+    private final double set;
+    private final int expectedSize;
+    
+    /**
+     * Constructs empty {@code LockFreeProbingHashtable}'s with the specified {@code maximum} and {@code set} fullness
+     * ratios
+     * 
+     * @param maximum the maximum fullness
+     * @param setFullness the fullness of a new table
+     * @param expectedSize how many entries the tables hold before their first resize
+     * 
+     * @see LockFreeProbingHashtable
+     */
+    public LockFreeProbingHashtableSupplier(double maximum, double setFullness, int expectedSize) {
+        max = maximum;
+        set = setFullness;
+        this.expectedSize = expectedSize;
+    }
+    
+    public LockFreeProbingHashtableSupplier(double maximum, double setFullness) {
+        this(maximum, setFullness, 0);
+    }
+    
+    public LockFreeProbingHashtableSupplier(int expectedSize) {
+        this(LockFreeProbingHashtable.DEF_MAX, LockFreeProbingHashtable.DEF_SET, expectedSize);
+    }
+    
+    public LockFreeProbingHashtableSupplier() {
+        this(LockFreeProbingHashtable.DEF_MAX, LockFreeProbingHashtable.DEF_SET);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return getNew(expectedSize);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew(int expectedSize) {
+        return new LockFreeProbingHashtable<K, V>(max, set, expectedSize);
+    }
+    
+    public String toString() {
+        String name = expectedSize == 0 ? "LFPHT" : "LFPHT[" + expectedSize + "]";
+        if (max == LockFreeProbingHashtable.DEF_MAX && set == LockFreeProbingHashtable.DEF_SET)
+            return name;
+        return String.format("%s(%d/%d)", name, Math.round(max * 100), Math.round(set * 100));
+    }
+}
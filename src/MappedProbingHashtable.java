@@ -0,0 +1,534 @@
+/*
+ * MappedProbingHashtable.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A linear-probing hash table whose slot array lives in a memory-mapped file, so it outlives the JVM.
+ * <p>
+ * Keys and values are stored in fixed-width slots, written and read by a {@link Codec} for each; a slot is a byte
+ * saying whether it's in use, then the key, then the value. Opening an existing file maps it and goes straight to
+ * work: nothing is read until it's looked up, and the OS page cache keeps the hot pages in memory. Deletes shift the
+ * rest of the cluster back, as {@link ProbingHashtable.Deletion#BACKWARD_SHIFT} does, so there are no tombstones.
+ * <p>
+ * Keys are compared and hashed as encoded bytes, not by {@code equals} and {@code hashCode}, so the layout doesn't
+ * depend on the JVM that wrote it. Capacities are powers of two. A resize writes the new table to a file next to
+ * this one and renames it over, so the old file stays whole until the new one is ready.
+ * <p>
+ * Writes go to the page cache; the OS writes them back when it likes, and {@link #flush()} makes it do so now. A file
+ * left by a crash between flushes may be torn. One mapping can cover at most 2 GB, which bounds the capacity. Not
+ * thread-safe: lookups move the position of the shared buffer.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class MappedProbingHashtable<K extends Comparable<K>, V> extends AbstractDictionary<K, V> implements
+        Closeable {
+    final static double DEF_MAX = 0.75;
+    final static double DEF_MIN = 0.25;
+    final static double DEF_SET = 0.5;
+    
+    private static final int MIN_CAPACITY = 16;
+    private static final Indexing INDEXING = Indexing.POWER_OF_TWO;
+    
+    // The header: magic, version, key width, value width, capacity and size, as ints, then room to grow.
+    private static final int MAGIC = 0x4d505448; // "MPTH"
+    private static final int VERSION = 1;
+    private static final int CAPACITY_AT = 16;
+    private static final int SIZE_AT = 20;
+    private static final int HEADER = 32;
+    
+    private final File file;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final int keyWidth;
+    private final int slotWidth; // the in-use byte, the key and the value
+    
+    private final int floor; // The capacity the table starts at, and never shrinks below
+    private MappedByteBuffer buffer; // the whole file
+    private int size;
+    private int capacity;
+    
+    private final double maxFullness;
+    private final double minFullness;
+    private final double setFullness;
+    
+    private final ByteBuffer keyBuffer; // the key being looked up, encoded
+    private final ByteBuffer valueBuffer; // the value being put or looked for, encoded
+    private final byte[] slot; // a slot being moved
+    
+    /**
+     * Opens the table in {@code file}, or makes a new one there if the file is missing or empty.
+     * 
+     * @param file the file holding the table
+     * @param keyCodec writes and reads the keys
+     * @param valueCodec writes and reads the values
+     * @param maximum the maximum fullness
+     * @param minimum the minimum fullness
+     * @param set the fullness when the table is resized
+     * @param expectedSize how many entries a new table should hold without resizing; it never shrinks below this
+     * @throws IllegalArgumentException if {@code minimum} is less than or equal to zero or {@code set} is less or equal
+     *             to than {@code minimum} or {@code maximum} is less than or equal to {@code set} or {@code maximum} is
+     *             greater than one or {@code expectedSize} is negative or either codec has a variable width.
+     * @throws IOException if the file can't be mapped, or holds something other than a table with these widths
+     */
+    public MappedProbingHashtable(File file, Codec<K> keyCodec, Codec<V> valueCodec, double maximum, double minimum,
+            double set, int expectedSize) throws IllegalArgumentException, IOException {
+        if (0 >= minimum)
+            throw new IllegalArgumentException("Illegal minimum fullness: " + minimum);
+        if (minimum >= set)
+            throw new IllegalArgumentException("Minimum fullness is greater than or equal to set.");
+        if (set >= maximum)
+            throw new IllegalArgumentException("Set fullness is greater than or equal to maximum.");
+        if (maximum >= 1)
+            throw new IllegalArgumentException("Illegal maximum fullness: " + maximum);
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        if (keyCodec.width() == Codec.VARIABLE)
+            throw new IllegalArgumentException("Illegal key codec, with no fixed width: " + keyCodec);
+        if (valueCodec.width() == Codec.VARIABLE)
+            throw new IllegalArgumentException("Illegal value codec, with no fixed width: " + valueCodec);
+        
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        keyWidth = keyCodec.width();
+        slotWidth = 1 + keyWidth + valueCodec.width();
+        maxFullness = maximum;
+        minFullness = minimum;
+        setFullness = set;
+        floor = INDEXING.capacity(Math.max(MIN_CAPACITY, (int) Math.ceil(expectedSize / set)));
+        
+        keyBuffer = ByteBuffer.allocate(keyWidth);
+        valueBuffer = ByteBuffer.allocate(valueCodec.width());
+        slot = new byte[slotWidth];
+        
+        if (file.length() == 0) {
+            buffer = create(file, floor);
+            capacity = floor;
+            size = 0;
+        } else {
+            buffer = map(file, -1);
+            if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC)
+                throw new IOException("Not a mapped hashtable: " + file);
+            if (buffer.getInt(4) != VERSION)
+                throw new IOException("Unknown mapped hashtable version " + buffer.getInt(4) + ": " + file);
+            if (buffer.getInt(8) != keyWidth || buffer.getInt(12) != valueCodec.width())
+                throw new IOException("Mapped hashtable has other key or value widths: " + file);
+            capacity = buffer.getInt(CAPACITY_AT);
+            size = buffer.getInt(SIZE_AT);
+            if (buffer.capacity() != length(capacity))
+                throw new IOException("Mapped hashtable is truncated: " + file);
+        }
+    }
+    
+    public MappedProbingHashtable(File file, Codec<K> keyCodec, Codec<V> valueCodec, int expectedSize)
+            throws IllegalArgumentException, IOException {
+        this(file, keyCodec, valueCodec, DEF_MAX, DEF_MIN, DEF_SET, expectedSize);
+    }
+    
+    public MappedProbingHashtable(File file, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(file, keyCodec, valueCodec, 0);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * The file offset of slot {@code i}.
+     */
+    private int offset(int i) {
+        return HEADER + i * slotWidth;
+    }
+    
+    private boolean used(int i) {
+        return buffer.get(offset(i)) != 0;
+    }
+    
+    private int next(int i) {
+        return (i + 1) & (capacity - 1);
+    }
+    
+    private static int hash(byte[] bytes, int from, int length) {
+        int h = 1;
+        for (int i = from; i < from + length; i++)
+            h = 31 * h + bytes[i];
+        return INDEXING.spread(h);
+    }
+    
+    /**
+     * Encodes the key into {@link #keyBuffer} and probes for it.
+     * 
+     * @return the index of {@code key}, or of the empty slot where it would go
+     * @throws IllegalArgumentException if the key doesn't fit its codec's width
+     */
+    private int getIndex(K key) throws NullPointerException, IllegalArgumentException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        keyBuffer.clear();
+        keyCodec.encode(key, keyBuffer);
+        byte[] k = keyBuffer.array();
+        int i = INDEXING.index(hash(k, 0, keyWidth), capacity);
+        while (used(i) && !matches(i, 1, k))
+            i = next(i);
+        return i;
+    }
+    
+    /**
+     * Probes for a key that is being looked up rather than put. A key too wide for its codec can't have been put, so
+     * it's a miss, not an error.
+     * 
+     * @return the index of {@code key}, or -1 if it is not in the table
+     */
+    private int find(K key) throws NullPointerException {
+        int i;
+        try {
+            i = getIndex(key);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        return used(i) ? i : -1;
+    }
+    
+    /**
+     * Tells whether slot {@code i} holds {@code bytes} at offset {@code at}.
+     */
+    private boolean matches(int i, int at, byte[] bytes) {
+        int pos = offset(i) + at;
+        for (int j = 0; j < bytes.length; j++)
+            if (buffer.get(pos + j) != bytes[j])
+                return false;
+        return true;
+    }
+    
+    private K keyAt(int i) {
+        buffer.position(offset(i) + 1);
+        return keyCodec.decode(buffer);
+    }
+    
+    private V valueAt(int i) {
+        buffer.position(offset(i) + 1 + keyWidth);
+        return valueCodec.decode(buffer);
+    }
+    
+    public V get(K key) throws NullPointerException {
+        int i = find(key);
+        return i < 0 ? null : valueAt(i);
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        return find(key) >= 0;
+    }
+    
+    /**
+     * Compares the encoded value against every slot, so only the match is decoded.
+     */
+    public boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        valueBuffer.clear();
+        try {
+            valueCodec.encode(value, valueBuffer);
+        } catch (IllegalArgumentException e) {
+            return false; // Too wide to have been put.
+        }
+        for (int i = 0; i < capacity; i++)
+            if (used(i) && matches(i, 1 + keyWidth, valueBuffer.array()))
+                return true;
+        return false;
+    }
+    
+    public Set<K> getAllKeys() {
+        Set<K> keys = new HashSet<K>(size);
+        for (int i = 0; i < capacity; i++)
+            if (used(i))
+                keys.add(keyAt(i));
+        return keys;
+    }
+    
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (int i = 0; i < capacity; i++)
+            if (used(i))
+                visitor.visit(keyAt(i), valueAt(i));
+    }
+    
+    /**
+     * Iterates over the slots, decoding each entry into a new {@code Map.Entry}.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+            private int i; // the next slot to look at
+            
+            public boolean hasNext() {
+                while (i < capacity && !used(i))
+                    i++;
+                return i < capacity;
+            }
+            
+            public Map.Entry<K, V> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Map.Entry<K, V> e = new AbstractMap.SimpleImmutableEntry<K, V>(keyAt(i), valueAt(i));
+                i++;
+                return e;
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the key or value doesn't fit its codec's width
+     */
+    public V put(K key, V val) throws NullPointerException, IllegalArgumentException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        valueBuffer.clear();
+        valueCodec.encode(val, valueBuffer); // before touching the file, in case it doesn't fit
+        int i = getIndex(key);
+        
+        if (used(i)) {
+            V previousValue = valueAt(i);
+            buffer.position(offset(i) + 1 + keyWidth);
+            buffer.put(valueBuffer.array());
+            return previousValue;
+        }
+        
+        buffer.position(offset(i));
+        buffer.put((byte) 1);
+        buffer.put(keyBuffer.array());
+        buffer.put(valueBuffer.array());
+        setSize(size + 1);
+        resizeIfNeeded();
+        return null;
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        int i = find(key);
+        if (i < 0)
+            return null;
+        
+        V value = valueAt(i);
+        remove(i);
+        setSize(size - 1);
+        resizeIfNeeded();
+        return value;
+    }
+    
+    /**
+     * Empties slot {@code i} by shifting the rest of its cluster back over the gap, as
+     * {@link ProbingHashtable}'s backward-shift deletion does.
+     */
+    private void remove(int i) {
+        buffer.put(offset(i), (byte) 0);
+        
+        int j = i;
+        while (true) {
+            j = next(j);
+            if (!used(j))
+                break;
+            
+            buffer.position(offset(j));
+            buffer.get(slot);
+            int home = INDEXING.index(hash(slot, 1, keyWidth), capacity);
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue; // The entry is at or after its home; leave it be.
+            
+            buffer.position(offset(i));
+            buffer.put(slot);
+            buffer.put(offset(j), (byte) 0);
+            i = j;
+        }
+    }
+    
+    private void setSize(int size) {
+        this.size = size;
+        buffer.putInt(SIZE_AT, size);
+    }
+    
+    /**
+     * Empties the slots if the table is at the initial capacity, and otherwise replaces the file with an empty one at
+     * that capacity.
+     */
+    public void clear() {
+        if (capacity == floor) {
+            for (int i = 0; i < capacity; i++)
+                buffer.put(offset(i), (byte) 0);
+            setSize(0);
+        } else {
+            setSize(0);
+            resize(floor);
+        }
+    }
+    
+    private void resizeIfNeeded() {
+        if (!((size < capacity * minFullness && capacity > floor) || size > capacity * maxFullness))
+            return;
+        resize((int) Math.ceil(size / setFullness));
+    }
+    
+    /**
+     * Moves the entries into a new file of (at least) the given capacity, then renames it over the old one.
+     * 
+     * @param minCapacity the smallest acceptable capacity
+     * @throws IllegalStateException if the new file can't be written
+     */
+    private void resize(int minCapacity) throws IllegalStateException {
+        int newCapacity = INDEXING.capacity(Math.max(floor, minCapacity));
+        if (newCapacity == capacity && size > 0) // Clearing rewrites the file even at the same capacity.
+            return;
+        
+        File tmp = new File(file.getPath() + ".resize");
+        try {
+            MappedByteBuffer newBuffer = create(tmp, newCapacity);
+            for (int j = 0; j < capacity && size > 0; j++) {
+                if (!used(j))
+                    continue;
+                buffer.position(offset(j));
+                buffer.get(slot);
+                
+                // Every key is distinct, so the entry goes in the first free slot.
+                int i = INDEXING.index(hash(slot, 1, keyWidth), newCapacity);
+                while (newBuffer.get(HEADER + i * slotWidth) != 0)
+                    i = (i + 1) & (newCapacity - 1);
+                newBuffer.position(HEADER + i * slotWidth);
+                newBuffer.put(slot);
+            }
+            newBuffer.putInt(SIZE_AT, size);
+            newBuffer.force();
+            
+            if (!tmp.renameTo(file))
+                throw new IOException("Could not rename " + tmp + " to " + file);
+            buffer = newBuffer;
+            capacity = newCapacity;
+        } catch (IOException e) {
+            tmp.delete();
+            throw new IllegalStateException("Could not resize " + file, e);
+        }
+    }
+    
+    /**
+     * Writes any changes still in the page cache out to the file.
+     */
+    public void flush() {
+        buffer.force();
+    }
+    
+    /**
+     * Flushes the table; it mustn't be used afterwards. The mapping itself goes when the table is garbage collected.
+     */
+    public void close() {
+        flush();
+        buffer = null;
+    }
+    
+    public String toString() {
+        String name = "Mapped Probing Hashtable";
+        if (setFullness == DEF_SET && maxFullness == DEF_MAX && minFullness == DEF_MIN)
+            return name;
+        else
+            return String.format("%s (%.2f, %.2f, %.2f)", name, maxFullness, minFullness, setFullness);
+    }
+    
+    private long length(int capacity) {
+        return HEADER + (long) capacity * slotWidth;
+    }
+    
+    /**
+     * Makes an empty table of the given capacity in {@code f}, replacing anything there.
+     */
+    private MappedByteBuffer create(File f, int capacity) throws IOException, IllegalStateException {
+        if (length(capacity) > Integer.MAX_VALUE)
+            throw new IllegalStateException("Too large to map: " + capacity + " slots of " + slotWidth + " bytes");
+        
+        map(f, 0); // Truncating first zeroes every slot.
+        MappedByteBuffer b = map(f, length(capacity));
+        b.putInt(0, MAGIC);
+        b.putInt(4, VERSION);
+        b.putInt(8, keyWidth);
+        b.putInt(12, valueCodec.width());
+        b.putInt(CAPACITY_AT, capacity);
+        b.putInt(SIZE_AT, 0);
+        return b;
+    }
+    
+    /**
+     * Maps the whole of {@code f}, first setting its length unless {@code length} is negative.
+     */
+    private static MappedByteBuffer map(File f, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            if (length >= 0)
+                raf.setLength(length);
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        } finally {
+            raf.close(); // The mapping stays valid.
+        }
+    }
+}
+
+class MappedProbingHashtableSupplier implements DictionarySupplier {
+    private final Codec<?> keyCodec;
+    private final Codec<?> valueCodec;
+    private final int expectedSize; // how many entries the tables are sized for up front
+    private File last; // the file of the last table made
+    
+    /**
+     * Constructs empty {@code MappedProbingHashtable}'s in temporary files, for tests and benchmarks. Each file is
+     * deleted when the next table is made, or when the JVM exits; on most systems the table can still be used after
+     * its file is deleted.
+     * 
+     * @param keyCodec writes and reads the keys
+     * @param valueCodec writes and reads the values
+     * @param expectedSize how many entries the tables hold before their first resize
+     * 
+     * @see MappedProbingHashtable
+     */
+    public MappedProbingHashtableSupplier(Codec<?> keyCodec, Codec<?> valueCodec, int expectedSize) {
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.expectedSize = expectedSize;
+    }
+    
+    public MappedProbingHashtableSupplier(Codec<?> keyCodec, Codec<?> valueCodec) {
+        this(keyCodec, valueCodec, 0);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        try {
+            if (last != null)
+                last.delete();
+            last = File.createTempFile("dictionary", ".map");
+            last.deleteOnExit();
+            return new MappedProbingHashtable<K, V>(last, (Codec<K>) keyCodec, (Codec<V>) valueCodec, expectedSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not make a table file", e);
+        }
+    }
+    
+    public String toString() {
+        return expectedSize == 0 ? "MPHT" : String.format("MPHT[%d]", expectedSize);
+    }
+}
@@ -1,7 +1,7 @@
 import java.util.HashSet;
 import java.util.Set;
 
-class Mock<K extends Comparable<K>, V> implements Dictionary<K, V> {
+class Mock<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
     public Mock() {}
     
     public int size() {
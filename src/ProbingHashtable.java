@@ -19,14 +19,17 @@ import java.util.*;
  * @param <K> The key type
  * @param <V> The value type
  */
-public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<K, V> {
+public class ProbingHashtable<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
     final static double DEF_MAX = 0.75;
     final static double DEF_MIN = 0.25;
     final static double DEF_SET = 0.5;
+    final static Deletion DEF_DELETION = Deletion.REHASH;
+    final static Indexing DEF_INDEXING = Indexing.MODULO;
     
     private static final int MIN_CAPACITY = 11; // The minimum size of the array; when smaller than this, no down-sizing
                                                 // will occur.
     
+    private final int floor; // The capacity the table starts at, and never shrinks below
     private Entry<K, V>[] array; // The array holding all the key/value pairs
     private int size; // The current number of elements.
     private int capacity; // Current capacity of the array.
@@ -35,6 +38,27 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
     private double minFullness; // determines how empty the array can get before resizing occurs; default 3/4
     private double setFullness; // determines how full the array should be made when resizing; default 1/4
     
+    private final Deletion deletion; // how delete closes the gap it leaves
+    private final Indexing indexing; // how hashes become slots, and which capacities are used
+    
+    private ResizeListener listener; // null if no one's listening
+    
+    /**
+     * How {@code delete} closes the gap it leaves in a probe cluster.
+     */
+    public enum Deletion {
+        /**
+         * Take the rest of the cluster out and put it back in. Allocates a list per delete, and each re-put may resize.
+         */
+        REHASH,
+        
+        /**
+         * Shift the later entries of the cluster back into the gap (Knuth's Algorithm R). Allocation-free, and only
+         * touches the cluster once.
+         */
+        BACKWARD_SHIFT
+    }
+    
     /**
      * Constructs an empty {@code HashtableB} with the specified {@code maximum}, {@code minimum}, and {@code set}
      * fullness ratios
@@ -42,12 +66,16 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
      * @param maximum the maximum fullness
      * @param minimum the minimum fullness
      * @param set the fullness when the array is resized.
+     * @param deletion how deletions close the gap they leave
+     * @param indexing how hashes are turned into slots
+     * @param expectedSize how many entries the table should hold without resizing; it never shrinks below this
      * @throws IllegalArgumentException if {@code minimum} is less than or equal to zero or {@code set} is less or equal
      *             to than {@code minimum} or {@code maximum} is less than or equal to {@code set} or {@code maximum} is
-     *             greater than one.
+     *             greater than one or {@code expectedSize} is negative.
      */
     @SuppressWarnings("unchecked")
-    public ProbingHashtable(double maximum, double minimum, double set) throws IllegalArgumentException {
+    public ProbingHashtable(double maximum, double minimum, double set, Deletion deletion, Indexing indexing,
+            int expectedSize) throws IllegalArgumentException {
         if (0 >= minimum)
             throw new IllegalArgumentException("Illegal minimum fullness: " + minimum);
         if (minimum >= set)
@@ -56,20 +84,51 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
             throw new IllegalArgumentException("Set fullness is greater than or equal to maximum.");
         if (maximum >= 1)
             throw new IllegalArgumentException("Illegal maximum fullness: " + maximum);
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
         
         size = 0;
-        capacity = MIN_CAPACITY;
+        // Sized as a resize to expectedSize entries would size it, so filling it up to there never resizes.
+        floor = indexing.capacity(Math.max(MIN_CAPACITY, (int) Math.ceil(expectedSize / set)));
+        capacity = floor;
         maxFullness = maximum;
         minFullness = minimum;
         this.setFullness = set;
+        this.deletion = deletion;
+        this.indexing = indexing;
         
         array = (Entry<K, V>[]) new Entry[capacity];
     }
     
+    public ProbingHashtable(double maximum, double minimum, double set, Deletion deletion, Indexing indexing)
+            throws IllegalArgumentException {
+        this(maximum, minimum, set, deletion, indexing, 0);
+    }
+    
+    public ProbingHashtable(double maximum, double minimum, double set, Deletion deletion)
+            throws IllegalArgumentException {
+        this(maximum, minimum, set, deletion, DEF_INDEXING);
+    }
+    
+    public ProbingHashtable(double maximum, double minimum, double set) throws IllegalArgumentException {
+        this(maximum, minimum, set, DEF_DELETION);
+    }
+    
     public ProbingHashtable(double maximum, double minimum) throws IllegalArgumentException {
         this(maximum, minimum, DEF_SET);
     }
     
+    /**
+     * Constructs an empty {@code ProbingHashtable} with the default fullness ratios that holds {@code expectedSize}
+     * entries without resizing.
+     * 
+     * @param expectedSize how many entries the table should hold without resizing; it never shrinks below this
+     * @throws IllegalArgumentException if {@code expectedSize} is negative
+     */
+    public ProbingHashtable(int expectedSize) throws IllegalArgumentException {
+        this(DEF_MAX, DEF_MIN, DEF_SET, DEF_DELETION, DEF_INDEXING, expectedSize);
+    }
+    
     public ProbingHashtable() {
         this(DEF_MAX, DEF_MIN);
     }
@@ -83,7 +142,7 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
     }
     
     /**
-     * A hash of the key. I used the absolute value of the key's hashcode so that I didn't get weird negative indices.
+     * A hash of the key, spread by the indexing strategy; never negative.
      * 
      * @param key
      * @return the hash
@@ -92,13 +151,28 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
     private int hash(K key) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
-        return Math.abs(key.hashCode());
+        return indexing.spread(key.hashCode());
+    }
+    
+    /**
+     * The slot after {@code i}, wrapping around; cheaper than a modulo on every probe.
+     */
+    private int next(int i) {
+        return ++i == capacity ? 0 : i;
     }
     
     private int getIndex(K key) {
-        int i = hash(key) % capacity;
+        return probe(key, indexing.index(hash(key), capacity));
+    }
+    
+    /**
+     * Probes from slot {@code i} for {@code key}.
+     * 
+     * @return the index of {@code key}, or of the empty slot where it would go
+     */
+    private int probe(K key, int i) {
         while (array[i] != null && !key.equals(array[i].k)) {
-            i = (i + 1) % capacity;
+            i = next(i);
         }
         return i;
     }
@@ -139,6 +213,16 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
         return set;
     }
     
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (Entry<K, V> p : array)
+            if (p != null)
+                visitor.visit(p.k, p.v);
+    }
+    
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<K, V>(array);
+    }
+    
     public V put(K key, V val) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
@@ -160,15 +244,41 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
         }
     }
     
+    /**
+     * Resizes once for the whole batch, up front, instead of as the table fills.
+     */
     public void putAll(Map<? extends K, ? extends V> m) throws NullPointerException {
-        for (K k : m.keySet())
-            put(k, m.get(k));
+        checkEntries(m);
+        if (size + m.size() > capacity * maxFullness)
+            resize((int) Math.ceil((size + m.size()) / setFullness));
+        
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K key = e.getKey();
+            int i = probe(key, indexing.index(indexing.spread(key.hashCode()), capacity));
+            if (array[i] == null) {
+                array[i] = new Entry<K, V>(key, e.getValue());
+                size++;
+            } else {
+                array[i].v = e.getValue();
+            }
+        }
+        
+        resizeIfNeeded(); // Repeated keys may have left the table emptier than planned.
+    }
+    
+    public Map<K, V> getAll(Collection<? extends K> keys) throws NullPointerException {
+        Map<K, V> found = new HashMap<K, V>();
+        for (K key : keys) {
+            int i = getIndex(key);
+            if (array[i] != null)
+                found.put(key, array[i].v);
+        }
+        return found;
     }
     
     public V delete(K key) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
-        List<Entry<K, V>> pairs = new ArrayList<Entry<K, V>>();
         
         // Find our key.
         int i = getIndex(key);
@@ -176,28 +286,111 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
         if (array[i] == null)
             return null;
         
+        V value = remove(i);
+        resizeIfNeeded();
+        return value;
+    }
+    
+    /**
+     * Deletes every key first and resizes once at the end.
+     */
+    public int deleteAll(Collection<? extends K> keys) throws NullPointerException {
+        checkKeys(keys);
+        int deleted = 0;
+        for (K key : keys) {
+            int i = getIndex(key);
+            if (array[i] != null) {
+                remove(i);
+                deleted++;
+            }
+        }
+        resizeIfNeeded();
+        return deleted;
+    }
+    
+    /**
+     * Removes the entry at index {@code i} and closes the gap as the deletion mode says, without resizing.
+     * 
+     * @param i the index of the entry to delete
+     * @return the deleted value
+     */
+    private V remove(int i) {
+        if (deletion == Deletion.BACKWARD_SHIFT)
+            return removeShifting(i);
+        
+        List<Entry<K, V>> pairs = new ArrayList<Entry<K, V>>();
+        
         // Remove all the keys that could have been "forced over" by this key.
         while (array[i] != null) {
             pairs.add(array[i]);
             array[i] = null;
-            size--;
-            i = (i + 1) % capacity;
+            i = next(i);
         }
         
         V value = pairs.remove(0).v; // Remove the key we're deleting.
+        size--;
         
         for (Entry<K, V> p : pairs)
-            this.put(p.k, p.v); // Put the rest back in the hashtable.
+            array[getIndex(p.k)] = p; // Put the rest back in the hashtable.
+        
+        return value;
+    }
+    
+    /**
+     * Removes the entry at index {@code i} by shifting the rest of its cluster back over the gap.
+     * <p>
+     * An entry at {@code j} can fill the gap at {@code i} unless its home index lies cyclically in {@code (i, j]},
+     * in which case moving it would put it before its home and {@code getIndex} would no longer find it.
+     * 
+     * @param i the index of the entry to delete
+     * @return the deleted value
+     */
+    private V removeShifting(int i) {
+        V value = array[i].v;
+        array[i] = null;
+        size--;
+        
+        int j = i;
+        while (true) {
+            j = next(j);
+            Entry<K, V> q = array[j];
+            if (q == null)
+                break;
+            
+            int home = indexing.index(hash(q.k), capacity);
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue; // q is at or after its home; leave it be.
+            
+            array[i] = q;
+            array[j] = null;
+            i = j;
+        }
         
         return value;
     }
     
+    /**
+     * Empties the array if it's at the initial capacity, and otherwise replaces it with a new one at that capacity,
+     * which is what an emptied array would shrink to anyway.
+     */
+    @SuppressWarnings("unchecked")
     public void clear() {
-        for (int i = 0; i < capacity; i++) {
-            array[i] = null;
+        if (capacity == floor) {
+            Arrays.fill(array, null);
+        } else {
+            array = (Entry<K, V>[]) new Entry[floor];
+            capacity = floor;
         }
         size = 0;
-        resizeIfNeeded();
+    }
+    
+    /**
+     * Sets the listener told of every resize from now on, replacing any before it.
+     * 
+     * @param listener is told of each resize, or {@code null} to stop telling anyone
+     */
+    public void setResizeListener(ResizeListener listener) {
+        this.listener = listener;
     }
     
     /**
@@ -205,10 +398,24 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
      * 
      */
     private void resizeIfNeeded() {
-        if (!((size < capacity * minFullness && capacity > MIN_CAPACITY) || size > capacity * maxFullness)) {
+        if (!((size < capacity * minFullness && capacity > floor) || size > capacity * maxFullness)) {
             return;
         }
-        int newCapacity = (int) (size / setFullness); // The size of the new array
+        resize((int) Math.ceil(size / setFullness));
+    }
+    
+    /**
+     * Moves the elements into an array of (at least) the given capacity.
+     * 
+     * @param minCapacity the smallest acceptable capacity
+     */
+    private void resize(int minCapacity) {
+        // The size of the new array
+        int newCapacity = indexing.capacity(Math.max(floor, minCapacity));
+        if (newCapacity == capacity) // Rounding up to a power of two can land back on the current capacity.
+            return;
+        long start = listener == null ? 0 : System.nanoTime();
+        int oldCapacity = capacity;
         
         @SuppressWarnings("unchecked")
         Entry<K, V>[] newArray = (Entry<K, V>[]) new Entry[newCapacity];
@@ -218,23 +425,79 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
             if (q == null)
                 continue;
             
-            int i = hash(q.k) % newCapacity;
-            while (newArray[i] != null && !q.k.equals(newArray[i].k)) {
-                i = (i + 1) % newCapacity; // get next index
+            // Every key is distinct, so the entry goes in the first free slot.
+            int i = indexing.index(hash(q.k), newCapacity);
+            while (newArray[i] != null) {
+                i = ++i == newCapacity ? 0 : i; // get next index
             }
             newArray[i] = q;
         }
         this.array = newArray;
         this.capacity = newCapacity;
+        
+        if (listener != null)
+            listener.resized(new ResizeEvent(this, oldCapacity, newCapacity, size, System.nanoTime() - start));
+    }
+    
+    /**
+     * Measures how the entries lie in the array, in one pass over it that allocates only the histogram.
+     * 
+     * @return the cluster sizes and probe lengths as of now
+     */
+    public ProbeStats probeStats() {
+        int[] clusters = new int[16]; // clusters[n] is the number of clusters of n entries
+        int maxCluster = 0;
+        long hitProbes = 0;
+        int maxHitProbes = 0;
+        long missProbes = 0;
+        
+        // Start just after an empty slot, so no cluster wraps around the end of the pass. There is always one, as the
+        // maximum fullness is less than one.
+        int start = 0;
+        while (array[start] != null)
+            start = next(start);
+        
+        int run = 0; // the entries in the cluster so far
+        int i = start;
+        for (int n = 0; n < capacity; n++) {
+            i = next(i);
+            Entry<K, V> q = array[i];
+            if (q != null) {
+                // A hit probes from the home slot up to the entry.
+                int home = indexing.index(hash(q.k), capacity);
+                int probes = (i >= home ? i - home : i + capacity - home) + 1;
+                hitProbes += probes;
+                maxHitProbes = Math.max(maxHitProbes, probes);
+                run++;
+                continue;
+            }
+            
+            // A miss probes from its home slot to the end of the cluster and the empty slot after it: one probe if
+            // home is this slot, run + 1 from the first slot of the cluster, so run * (run + 3) / 2 over the cluster.
+            missProbes += 1 + (long) run * (run + 3) / 2;
+            if (run > 0) {
+                if (run >= clusters.length)
+                    clusters = Arrays.copyOf(clusters, Math.max(run + 1, 2 * clusters.length));
+                clusters[run]++;
+                maxCluster = Math.max(maxCluster, run);
+                run = 0;
+            }
+        }
+        
+        return new ProbeStats(capacity, size, Arrays.copyOf(clusters, maxCluster + 1), hitProbes, maxHitProbes,
+                missProbes);
     }
     
     public String toString() {
+        String name = deletion == DEF_DELETION ? "Probing Hashtable" : "Probing Hashtable, backward-shift deletion";
+        if (indexing != DEF_INDEXING)
+            name += ", power-of-two indexing";
         if (setFullness == DEF_SET && maxFullness == DEF_MAX && minFullness == DEF_MIN)
-            return String.format("Probing Hashtable");
+            return String.format("%s", name);
         else if (setFullness == DEF_SET)
-            return String.format("Probing Hashtable (%.2f, %.2f)", maxFullness, minFullness);
+            return String.format("%s (%.2f, %.2f)", name, maxFullness, minFullness);
         else
-            return String.format("Probing Hashtable (%.2f, %.2f, %.2f)", maxFullness, minFullness, setFullness);
+            return String.format("%s (%.2f, %.2f, %.2f)", name, maxFullness, minFullness, setFullness);
     }
     
     public int hashCode() {
@@ -276,6 +539,126 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
         return true;
     }
     
+    /**
+     * How the entries of a {@code ProbingHashtable} lie in its array at one point. Probe lengths count the slots a
+     * lookup reads, including the one it stops at; the miss probe length is averaged over every home slot a missing key
+     * could hash to.
+     */
+    public static final class ProbeStats {
+        private final int capacity;
+        private final int size;
+        private final int[] clusters;
+        private final long hitProbes;
+        private final int maxHitProbes;
+        private final long missProbes;
+        
+        private ProbeStats(int capacity, int size, int[] clusters, long hitProbes, int maxHitProbes, long missProbes) {
+            this.capacity = capacity;
+            this.size = size;
+            this.clusters = clusters;
+            this.hitProbes = hitProbes;
+            this.maxHitProbes = maxHitProbes;
+            this.missProbes = missProbes;
+        }
+        
+        /**
+         * Returns the number of slots.
+         * 
+         * @return the capacity
+         */
+        public int capacity() {
+            return capacity;
+        }
+        
+        /**
+         * Returns the number of entries.
+         * 
+         * @return the size
+         */
+        public int size() {
+            return size;
+        }
+        
+        /**
+         * Returns the fraction of the slots that hold entries.
+         * 
+         * @return the load factor
+         */
+        public double loadFactor() {
+            return (double) size / capacity;
+        }
+        
+        /**
+         * Returns the number of clusters, maximal runs of full slots, of the given size.
+         * 
+         * @param entries the size of the clusters to count
+         * @return the cluster count
+         */
+        public int clusters(int entries) {
+            return entries > 0 && entries < clusters.length ? clusters[entries] : 0;
+        }
+        
+        /**
+         * Returns the size of the largest cluster, or zero if the table is empty.
+         * 
+         * @return the largest cluster size
+         */
+        public int maxCluster() {
+            return clusters.length - 1;
+        }
+        
+        /**
+         * Returns the mean number of slots a lookup of a key in the table reads, or NaN if the table is empty.
+         * 
+         * @return the mean hit probe length
+         */
+        public double meanHitProbes() {
+            return (double) hitProbes / size;
+        }
+        
+        /**
+         * Returns the most slots a lookup of a key in the table reads, or zero if the table is empty.
+         * 
+         * @return the longest hit probe length
+         */
+        public int maxHitProbes() {
+            return maxHitProbes;
+        }
+        
+        /**
+         * Returns the mean number of slots a lookup of a key not in the table reads.
+         * 
+         * @return the mean miss probe length
+         */
+        public double meanMissProbes() {
+            return (double) missProbes / capacity;
+        }
+        
+        /**
+         * Returns the most slots a lookup of a key not in the table reads.
+         * 
+         * @return the longest miss probe length
+         */
+        public int maxMissProbes() {
+            return maxCluster() + 1;
+        }
+        
+        /**
+         * Returns a summary, then the number of clusters of each size there are any of.
+         */
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d entries in %d slots (load %.3f); probes per hit %.2f mean, %d max; "
+                    + "per miss %.2f mean, %d max%n", size, capacity, loadFactor(), meanHitProbes(), maxHitProbes,
+                    meanMissProbes(), maxMissProbes()));
+            sb.append(String.format("%8s %10s%n", "cluster", "count"));
+            for (int n = 1; n < clusters.length; n++)
+                if (clusters[n] > 0)
+                    sb.append(String.format("%8d %10d%n", n, clusters[n]));
+            return sb.toString();
+        }
+    }
+    
     /**
      * A key-value pair
      * 
@@ -337,12 +720,46 @@ public class ProbingHashtable<K extends Comparable<K>, V> implements Dictionary<
             return true;
         }
     }
+    
+    /**
+     * Iterates over the entries of an array, skipping empty slots. It hands out the table's own entries.
+     * 
+     * @param <K> Key
+     * @param <V> Value
+     */
+    static class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Entry<K, V>[] array;
+        private int i; // the next slot to look at
+        
+        EntryIterator(Entry<K, V>[] array) {
+            this.array = array;
+        }
+        
+        public boolean hasNext() {
+            while (i < array.length && array[i] == null)
+                i++;
+            return i < array.length;
+        }
+        
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return array[i++];
+        }
+        
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
 
-class ProbingHashtableSupplier implements DictionarySupplier {
+class ProbingHashtableSupplier implements SizedDictionarySupplier {
     private double max; // determines how full the array can get before resizing occurs; default 1/2
     private double min; // determines how empty the array can get before resizing occurs; default 3/4
     private double set; // determines how full the array should be made when resizing; default 1/4
+    private ProbingHashtable.Deletion deletion;
+    private Indexing indexing;
+    private int expectedSize; // how many entries the tables are sized for up front
     
     /**
      * Constructs empty {@code HashtableB}'s with the specified {@code maximum}, {@code minimum}, and {@code set}
@@ -351,13 +768,44 @@ class ProbingHashtableSupplier implements DictionarySupplier {
      * @param maximum the maximum fullness
      * @param minimum the minimum fullness
      * @param setFullness the fullness when the arrays are resized
+     * @param deletionMode how deletions close the gap they leave
+     * @param indexingMode how hashes are turned into slots
+     * @param expectedSize how many entries the tables hold before their first resize
      * 
      * @see ProbingHashtable
      */
-    public ProbingHashtableSupplier(double maximum, double minimum, double setFullness) {
+    public ProbingHashtableSupplier(double maximum, double minimum, double setFullness,
+            ProbingHashtable.Deletion deletionMode, Indexing indexingMode, int expectedSize) {
         max = maximum;
         min = minimum;
         set = setFullness;
+        deletion = deletionMode;
+        indexing = indexingMode;
+        this.expectedSize = expectedSize;
+    }
+    
+    public ProbingHashtableSupplier(double maximum, double minimum, double setFullness,
+            ProbingHashtable.Deletion deletionMode, Indexing indexingMode) {
+        this(maximum, minimum, setFullness, deletionMode, indexingMode, 0);
+    }
+    
+    public ProbingHashtableSupplier(double maximum, double minimum, double setFullness,
+            ProbingHashtable.Deletion deletionMode) {
+        this(maximum, minimum, setFullness, deletionMode, ProbingHashtable.DEF_INDEXING);
+    }
+    
+    public ProbingHashtableSupplier(Indexing indexingMode) {
+        this(ProbingHashtable.DEF_MAX, ProbingHashtable.DEF_MIN, ProbingHashtable.DEF_SET,
+                ProbingHashtable.DEF_DELETION, indexingMode);
+    }
+    
+    public ProbingHashtableSupplier(int expectedSize) {
+        this(ProbingHashtable.DEF_MAX, ProbingHashtable.DEF_MIN, ProbingHashtable.DEF_SET,
+                ProbingHashtable.DEF_DELETION, ProbingHashtable.DEF_INDEXING, expectedSize);
+    }
+    
+    public ProbingHashtableSupplier(double maximum, double minimum, double setFullness) {
+        this(maximum, minimum, setFullness, ProbingHashtable.DEF_DELETION);
     }
     
     public ProbingHashtableSupplier(double maximum, double minimum) {
@@ -369,15 +817,25 @@ class ProbingHashtableSupplier implements DictionarySupplier {
     }
     
     public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
-        return new ProbingHashtable<K, V>(max, min, set);
+        return getNew(expectedSize);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew(int expectedSize) {
+        return new ProbingHashtable<K, V>(max, min, set, deletion, indexing, expectedSize);
     }
     
     public String toString() {
+        String name = deletion == ProbingHashtable.DEF_DELETION ? "PHT" : "PHT-BS";
+        if (indexing != ProbingHashtable.DEF_INDEXING)
+            name += "-P2";
+        if (expectedSize != 0)
+            name += "[" + expectedSize + "]";
         if (max == ProbingHashtable.DEF_MAX && min == ProbingHashtable.DEF_MIN && set == ProbingHashtable.DEF_SET)
-            return "PHT";
+            return name;
         else if (set == 0.5)
-            return String.format("PHT(%d/%d)", (int) (max * 100), (int) (min * 100));
+            return String.format("%s(%d/%d)", name, Math.round(max * 100), Math.round(min * 100));
         else
-            return String.format("PHT(%d/%d/%d)", (int) (max * 100), (int) (min * 100), (int) (set * 100));
+            return String.format("%s(%d/%d/%d)", name, Math.round(max * 100), Math.round(min * 100),
+                    Math.round(set * 100));
     }
 }
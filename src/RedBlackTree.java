@@ -1,22 +1,42 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * A left-leaning red-black binary search tree implementation.
  * <p>
  * In adding deletion functionality, I used Robert Sedgewick's [TITLE] - {@link http://www.cs.princeton.edu/~rs/talks/LLRB/LLRB.pdf}.
+ * <p>
+ * {@code get}, {@code put} and {@code delete} are iterative versions of the paper's recursive ones: they make one pass
+ * down the tree, comparing the key once per node and remembering the nodes they pass in {@code path}, then walk back up
+ * the path doing what the recursive versions do as they return.
+ * <p>
+ * Besides the {@link Dictionary} operations, the tree answers ordered queries: {@link #min()}, {@link #max()},
+ * {@link #floor(Comparable)}, {@link #ceiling(Comparable)} and {@link #rank(Comparable)} in O(log n), using the subtree
+ * sizes kept in the nodes, and {@link #range(Comparable, Comparable)} and {@link #cursor(Comparable, Comparable)} in
+ * O(log n + k) for k keys.
  * 
  * @author Jackson Scholl
  * 
  * @param <K> The key type
  * @param <V> The value type
  */
-public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V> {
+public class RedBlackTree<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
     private static final boolean BLACK = false;
     private static final boolean RED = true;
     
     private Node root;
     private int size;
+    private Node[] path; // the nodes above the current one during put and delete; grown as needed
+    private int modCount; // the number of keys added or removed, so cursors can tell the tree has changed
     
     /**
      * Makes a new red-black tree.
@@ -24,6 +44,7 @@ public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V
     public RedBlackTree() {
         root = null;
         size = 0;
+        path = newPath(8);
     }
     
     public int size() {
@@ -38,15 +59,14 @@ public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
         
-        return get(root, key);
-    }
-    
-    private V get(Node n, K key) {
-        if (n == null)
-            return null;
-        if (key.equals(n.key))
-            return n.val;
-        return get(key.compareTo(n.key) < 0 ? n.l : n.r, key);
+        Node n = root;
+        while (n != null) {
+            int cmp = key.compareTo(n.key);
+            if (cmp == 0)
+                return n.val;
+            n = cmp < 0 ? n.l : n.r;
+        }
+        return null;
     }
     
     public boolean containsKey(K key) throws NullPointerException {
@@ -70,120 +90,343 @@ public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V
     }
     
     public Set<K> getAllKeys() {
-        return getAllKeys(root);
+        final Set<K> set = new HashSet<K>(size);
+        forEach(root, new EntryVisitor<K, V>() {
+            public void visit(K key, V value) {
+                set.add(key);
+            }
+        });
+        return set;
+    }
+    
+    /**
+     * Visits the entries in order.
+     */
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        forEach(root, visitor);
+    }
+    
+    private void forEach(Node n, EntryVisitor<? super K, ? super V> visitor) {
+        for (; n != null; n = n.r) { // Recurses to the left only, then carries on down the right.
+            forEach(n.l, visitor);
+            visitor.visit(n.key, n.val);
+        }
+    }
+    
+    /**
+     * Iterates over the entries in order.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+        final Cursor c = cursor();
+        return new Iterator<Map.Entry<K, V>>() {
+            public boolean hasNext() {
+                return c.hasNext();
+            }
+            
+            public Map.Entry<K, V> next() {
+                c.next();
+                return c.last;
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
     
-    private Set<K> getAllKeys(Node n) {
+    /**
+     * Returns the smallest key, or {@code null} if the tree is empty.
+     * 
+     * @return the smallest key
+     */
+    public K min() {
+        Node n = root;
         if (n == null)
-            return new HashSet<K>();
-        Set<K> set = getAllKeys(n.l);
-        set.add(n.key);
-        set.addAll(getAllKeys(n.r));
-        return set;
+            return null;
+        while (n.l != null)
+            n = n.l;
+        return n.key;
     }
     
-    public V put(K key, V val) throws NullPointerException {
+    /**
+     * Returns the largest key, or {@code null} if the tree is empty.
+     * 
+     * @return the largest key
+     */
+    public K max() {
+        Node n = root;
+        if (n == null)
+            return null;
+        while (n.r != null)
+            n = n.r;
+        return n.key;
+    }
+    
+    /**
+     * Returns the largest key less than or equal to {@code key}, or {@code null} if there is none.
+     * 
+     * @param key
+     * @return the floor of {@code key}
+     * @throws NullPointerException if {@code key} is null
+     */
+    public K floor(K key) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
-        if (val == null)
-            throw new NullPointerException("Value is not allowed to be null");
-        
-        V previousValue = get(key);
         
-        root = put(root, key, val);
-        root.color = BLACK;
-        
-        return previousValue;
+        Node best = null;
+        Node n = root;
+        while (n != null) {
+            int cmp = key.compareTo(n.key);
+            if (cmp == 0)
+                return n.key;
+            if (cmp < 0) {
+                n = n.l;
+            } else {
+                best = n;
+                n = n.r;
+            }
+        }
+        return best == null ? null : best.key;
     }
     
-    private Node put(Node n, K key, V value) {
-        if (n == null)
-            return new Node(key, value);
+    /**
+     * Returns the smallest key greater than or equal to {@code key}, or {@code null} if there is none.
+     * 
+     * @param key
+     * @return the ceiling of {@code key}
+     * @throws NullPointerException if {@code key} is null
+     */
+    public K ceiling(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
         
-        int cmp = key.compareTo(n.key);
+        Node best = null;
+        Node n = root;
+        while (n != null) {
+            int cmp = key.compareTo(n.key);
+            if (cmp == 0)
+                return n.key;
+            if (cmp > 0) {
+                n = n.r;
+            } else {
+                best = n;
+                n = n.l;
+            }
+        }
+        return best == null ? null : best.key;
+    }
+    
+    /**
+     * Returns the number of keys less than {@code key}.
+     * 
+     * @param key
+     * @return the rank of {@code key}
+     * @throws NullPointerException if {@code key} is null
+     */
+    public int rank(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
         
-        if (cmp == 0) {
-            n.val = value;
-        } else if (cmp < 0) {
-            n.l = put(n.l, key, value);
-        } else if (cmp > 0) {
-            n.r = put(n.r, key, value);
+        int rank = 0;
+        Node n = root;
+        while (n != null) {
+            int cmp = key.compareTo(n.key);
+            if (cmp == 0)
+                return rank + count(n.l);
+            if (cmp < 0) {
+                n = n.l;
+            } else {
+                rank += 1 + count(n.l);
+                n = n.r;
+            }
         }
+        return rank;
+    }
+    
+    /**
+     * Returns the keys from {@code lo}, inclusive, to {@code hi}, exclusive, in order.
+     * 
+     * @param lo the lowest key to return
+     * @param hi the key above the highest key to return
+     * @return the keys in the range
+     * @throws NullPointerException if {@code lo} or {@code hi} is null
+     */
+    public List<K> range(K lo, K hi) throws NullPointerException {
+        List<K> keys = new ArrayList<K>();
+        for (Cursor c = cursor(lo, hi); c.hasNext();)
+            keys.add(c.next());
+        return keys;
+    }
+    
+    /**
+     * Returns a cursor over every key, in order.
+     * 
+     * @return the cursor
+     */
+    public Cursor cursor() {
+        return new Cursor(null, null);
+    }
+    
+    /**
+     * Returns a cursor over the keys from {@code lo}, inclusive, to {@code hi}, exclusive, in order. The cursor finds
+     * each key as it is asked for, so it never holds more than a path's worth of nodes.
+     * 
+     * @param lo the lowest key to return
+     * @param hi the key above the highest key to return
+     * @return the cursor
+     * @throws NullPointerException if {@code lo} or {@code hi} is null
+     */
+    public Cursor cursor(K lo, K hi) throws NullPointerException {
+        if (lo == null || hi == null)
+            throw new NullPointerException("Key is not allowed to be null");
         
-        return fixUp(n);
+        return new Cursor(lo, hi);
     }
     
-    public V delete(K key) {
+    public V put(K key, V val) throws NullPointerException {
         if (key == null)
             throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
         
-        V previousValue = get(key);
+        int cmp = 0;
+        int depth = 0;
+        Node n = root;
+        while (n != null) {
+            cmp = key.compareTo(n.key);
+            if (cmp == 0) {
+                V previousValue = n.val;
+                n.val = val;
+                Arrays.fill(path, 0, depth, null);
+                return previousValue;
+            }
+            push(depth++, n);
+            n = cmp < 0 ? n.l : n.r;
+        }
         
-        root = delete(root, key);
-        if (root != null)
-            root.color = BLACK;
+        n = new Node(key, val);
+        modCount++;
+        if (depth == 0)
+            root = n;
+        else if (cmp < 0)
+            path[depth - 1].l = n;
+        else
+            path[depth - 1].r = n;
         
-        return previousValue;
+        fixUpPath(depth);
+        return null;
     }
     
     /**
-     * Delete the {@code key}, assuming it's a descendant of n.
-     * <p>
-     * Maintains the invariant that n or n's left child is red.
-     * 
-     * @param n
-     * @param key
-     * @return the replacement for {@code n}
+     * Deletes the key in one pass down the tree. On the way down it keeps the invariant that n or n's left child is
+     * red, as in the paper, so the node it finally removes is never a lone black one; on the way back up it fixes the
+     * nodes it passed.
      */
-    private Node delete(Node n, K key) {
-        if (n == null)
-            return null;
-        if (key.compareTo(n.key) < 0) {
-            if (!isRed(n.l) && n.l != null && !isRed(n.l.l)) {
-                n = moveRedLeft(n);
-            }
-            n.l = delete(n.l, key);
-        } else {
-            if (isRed(n.l))
-                n = rotateRight(n);
-            if (key.compareTo(n.key) == 0 && n.r == null) {
-                size--;
-                return null;
-            }
-            if (!isRed(n.r) && !isRed(n.r.l))
-                n = moveRedRight(n);
-            if (key.compareTo(n.key) == 0) {
-                n.val = get(n.r, min(n.r).key);
-                n.key = min(n.r).key;
-                n.r = deleteMin(n.r);
+    public V delete(K key) {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        V previousValue = null;
+        Node match = null; // the node holding key, once found
+        Node target = null; // match, if it has a right child; it takes its successor's entry
+        int depth = 0;
+        Node n = root;
+        while (n != null) {
+            Node top = n; // the node the parent links to
+            int cmp = target != null ? -1 : n == match ? 0 : key.compareTo(n.key);
+            if (cmp < 0) {
+                if (n.l == null) {
+                    if (target != null) { // n is the successor
+                        target.key = n.key;
+                        target.val = n.val;
+                        replace(depth, top, null);
+                        size--;
+                        modCount++;
+                    } else { // key is absent
+                        push(depth++, n);
+                    }
+                    break;
+                }
+                if (!isRed(n.l) && !isRed(n.l.l))
+                    n = moveRedLeft(n);
+                replace(depth, top, n);
+                push(depth++, n);
+                n = n.l;
             } else {
-                n.r = delete(n.r, key);
+                if (cmp == 0)
+                    match = n; // The rotations below may move it down to the right.
+                if (isRed(n.l))
+                    n = rotateRight(n);
+                if (n == match && n.r == null) {
+                    previousValue = n.val;
+                    replace(depth, top, null);
+                    size--;
+                    modCount++;
+                    break;
+                }
+                if (n.r == null) { // key is absent
+                    replace(depth, top, n);
+                    push(depth++, n);
+                    break;
+                }
+                if (!isRed(n.r) && !isRed(n.r.l))
+                    n = moveRedRight(n);
+                replace(depth, top, n);
+                push(depth++, n);
+                if (n == match) {
+                    previousValue = n.val;
+                    target = n;
+                }
+                n = n.r;
             }
         }
-        n = fixUp(n);
-        return n;
+        
+        fixUpPath(depth);
+        return previousValue;
     }
     
     /**
-     * Deletes the minimum in n's tree.
-     * <p>
-     * Maintains the invariant that n or n's left child is red.
+     * Puts {@code n} on the path at the given depth, growing the path if it's full.
+     */
+    private void push(int depth, Node n) {
+        if (depth == path.length)
+            path = Arrays.copyOf(path, 2 * depth);
+        path[depth] = n;
+    }
+    
+    private Node[] newPath(int length) {
+        @SuppressWarnings("unchecked")
+        Node[] a = (Node[]) new RedBlackTree<?, ?>.Node[length];
+        return a;
+    }
+    
+    /**
+     * Makes whatever linked to {@code old}, the node at the given depth, link to {@code n} instead.
+     */
+    private void replace(int depth, Node old, Node n) {
+        if (old == n)
+            return;
+        if (depth == 0)
+            root = n;
+        else if (path[depth - 1].l == old)
+            path[depth - 1].l = n;
+        else
+            path[depth - 1].r = n;
+    }
+    
+    /**
+     * Fixes every node on the path, from the bottom up, and clears the path.
      * 
-     * @param n node to delete minimum of
-     * @return replacement for n
+     * @param depth the number of nodes on the path
      */
-    private Node deleteMin(Node n) {
-        if (n.l == null) {
-            size--;
-            return null;
+    private void fixUpPath(int depth) {
+        while (depth > 0) {
+            Node n = path[--depth];
+            replace(depth, n, fixUp(n));
+            path[depth] = null;
         }
-        
-        if (!isRed(n.l) && !isRed(n.l.l)) {
-            n = moveRedLeft(n);
-        }
-        
-        n.l = deleteMin(n.l);
-        return fixUp(n);
+        if (root != null)
+            root.color = BLACK;
     }
     
     /**
@@ -217,19 +460,6 @@ public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V
         return n;
     }
     
-    /**
-     * Returns the minimum in n's tree.
-     * 
-     * @param n node to find minimum of
-     * @return the minimum node
-     */
-    private Node min(Node n) {
-        if (n == null)
-            return null;
-        Node x = min(n.l);
-        return x == null ? n : x;
-    }
-    
     /**
      * Fixes the node as it goes back up the tree on the tail end of {@code put} or {@code delete}.
      * 
@@ -244,6 +474,7 @@ public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V
         if (isRed(n.l) && isRed(n.r))
             n = flipColors(n);
         
+        n.count = 1 + count(n.l) + count(n.r);
         return n;
     }
     
@@ -259,6 +490,8 @@ public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V
         x.l = n;
         x.color = n.color;
         n.color = RED;
+        n.count = 1 + count(n.l) + count(n.r);
+        x.count = 1 + count(x.l) + count(x.r);
         return x;
     }
     
@@ -274,6 +507,8 @@ public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V
         x.r = n;
         x.color = n.color;
         n.color = RED;
+        n.count = 1 + count(n.l) + count(n.r);
+        x.count = 1 + count(x.l) + count(x.r);
         return x;
     }
     
@@ -294,33 +529,173 @@ public class RedBlackTree<K extends Comparable<K>, V> implements Dictionary<K, V
         return n != null && n.color == RED;
     }
     
+    private int count(Node n) {
+        return n == null ? 0 : n.count;
+    }
+    
+    /**
+     * Checks the tree against what it should be, for the tests: keys in order, no red right links, no two reds in a
+     * row, the same number of black links on every path from the root down, every count the size of its subtree, and
+     * nothing left on the path.
+     * 
+     * @return whether it's a valid left-leaning red-black tree
+     */
+    boolean isLLRB() {
+        int black = 0; // on the leftmost path; every other path must have as many
+        for (Node n = root; n != null; n = n.l)
+            if (!isRed(n))
+                black++;
+        for (Node n : path)
+            if (n != null)
+                return false;
+        return !isRed(root) && isLLRB(root, null, null, black) && count(root) == size;
+    }
+    
+    /**
+     * Checks the subtree at n, whose keys must be strictly between lo and hi (where given), and whose paths down must
+     * each have the given number of black links.
+     */
+    private boolean isLLRB(Node n, K lo, K hi, int black) {
+        if (n == null)
+            return black == 0;
+        if (lo != null && lo.compareTo(n.key) >= 0 || hi != null && hi.compareTo(n.key) <= 0)
+            return false;
+        if (isRed(n.r) || isRed(n) && isRed(n.l))
+            return false;
+        if (n.count != 1 + count(n.l) + count(n.r))
+            return false;
+        if (!isRed(n))
+            black--;
+        return isLLRB(n.l, lo, n.key, black) && isLLRB(n.r, n.key, hi, black);
+    }
+    
     public void clear() {
-        for (K key : getAllKeys())
-            delete(key);
+        root = null;
+        size = 0;
+        modCount++;
     }
     
     public String toString() {
         return "Red-Black Tree";
     }
     
-    class Node {
+    class Node implements Map.Entry<K, V> {
         private K key;
         private V val;
         private Node l;
         private Node r;
         private boolean color;
+        private int count; // the number of nodes in this subtree
         
         public Node(K word, V def) {
             key = word;
             val = def;
             color = RED;
+            count = 1;
             size++;
         }
         
+        public K getKey() {
+            return key;
+        }
+        
+        public V getValue() {
+            return val;
+        }
+        
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return key.equals(e.getKey()) && val.equals(e.getValue());
+        }
+        
+        public int hashCode() {
+            return key.hashCode() ^ val.hashCode();
+        }
+        
         public String toString() {
             return String.format("%s (%c)", key.toString(), color == BLACK ? 'B' : 'R');
         }
     }
+    
+    /**
+     * An in-order walk over a range of keys. It keeps a stack of the nodes whose keys are still to come and whose
+     * right subtrees are still to be walked, so each step takes O(1) amortized time.
+     * <p>
+     * Adding or removing keys while a cursor is open makes its next step throw a
+     * {@link ConcurrentModificationException}; changing the value of a key doesn't.
+     */
+    public class Cursor implements Iterator<K> {
+        private final K hi; // null for no upper bound
+        private final Deque<Node> stack = new ArrayDeque<Node>();
+        private final int expectedModCount = modCount;
+        private Node next; // the node next() returns next, or null at the end
+        private Node last; // the node next() returned last
+        
+        private Cursor(K lo, K hi) {
+            this.hi = hi;
+            
+            // Stack the nodes on the way down to lo that are at or above it.
+            Node n = root;
+            while (n != null) {
+                if (lo == null || lo.compareTo(n.key) <= 0) {
+                    stack.push(n);
+                    n = n.l;
+                } else {
+                    n = n.r;
+                }
+            }
+            advance();
+        }
+        
+        private void advance() {
+            next = stack.poll();
+            if (next == null)
+                return;
+            if (hi != null && hi.compareTo(next.key) <= 0) {
+                next = null;
+                stack.clear();
+                return;
+            }
+            for (Node n = next.r; n != null; n = n.l)
+                stack.push(n);
+        }
+        
+        public boolean hasNext() {
+            return next != null;
+        }
+        
+        public K next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (next == null)
+                throw new NoSuchElementException();
+            last = next;
+            advance();
+            return last.key;
+        }
+        
+        /**
+         * Returns the value of the key {@link #next()} returned last.
+         * 
+         * @return the value
+         * @throws IllegalStateException if {@code next} hasn't been called
+         */
+        public V value() throws IllegalStateException {
+            if (last == null)
+                throw new IllegalStateException();
+            return last.val;
+        }
+        
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
 
 class RedBlackTreeSupplier implements DictionarySupplier {
@@ -0,0 +1,125 @@
+/*
+ * ResizeListener.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+/**
+ * Is told of every resize of a hash table, so that pauses in its callers can be matched up with the rehashes that
+ * caused them.
+ * <p>
+ * It's called on the thread that finished the resize, after the table is consistent again, and should be quick: the
+ * operation that triggered the resize hasn't returned yet.
+ * 
+ * @author Jackson Scholl
+ */
+interface ResizeListener {
+    /**
+     * Called once a table has moved its entries into a new array.
+     * 
+     * @param event what the resize did
+     */
+    void resized(ResizeEvent event);
+}
+
+/**
+ * What one resize of a hash table did.
+ * <p>
+ * A resize moves every entry, so {@link #entriesMoved()} is the table's size at the time, except that a table which
+ * resizes incrementally counts only the entries it moved; those put straight into the new array aren't. For such a
+ * table the event comes when the last old bucket has been moved, and {@link #durationNanos()} is the time spent moving,
+ * summed over the operations that did it, not the time from start to end.
+ * 
+ * @author Jackson Scholl
+ */
+final class ResizeEvent {
+    /**
+     * Why the table resized.
+     */
+    enum Trigger {
+        /**
+         * It got fuller than its maximum fullness, or was about to take a batch that would make it so.
+         */
+        GROW,
+        
+        /**
+         * It got emptier than its minimum fullness.
+         */
+        SHRINK
+    }
+    
+    private final Dictionary<?, ?> table;
+    private final Trigger trigger;
+    private final int oldCapacity;
+    private final int newCapacity;
+    private final int entriesMoved;
+    private final long durationNanos;
+    
+    ResizeEvent(Dictionary<?, ?> table, int oldCapacity, int newCapacity, int entriesMoved, long durationNanos) {
+        this.table = table;
+        this.trigger = newCapacity > oldCapacity ? Trigger.GROW : Trigger.SHRINK;
+        this.oldCapacity = oldCapacity;
+        this.newCapacity = newCapacity;
+        this.entriesMoved = entriesMoved;
+        this.durationNanos = durationNanos;
+    }
+    
+    /**
+     * Returns the table that resized.
+     * 
+     * @return the table
+     */
+    Dictionary<?, ?> table() {
+        return table;
+    }
+    
+    /**
+     * Returns whether the table grew or shrank.
+     * 
+     * @return the trigger
+     */
+    Trigger trigger() {
+        return trigger;
+    }
+    
+    /**
+     * Returns the number of buckets or slots before the resize.
+     * 
+     * @return the old capacity
+     */
+    int oldCapacity() {
+        return oldCapacity;
+    }
+    
+    /**
+     * Returns the number of buckets or slots after the resize.
+     * 
+     * @return the new capacity
+     */
+    int newCapacity() {
+        return newCapacity;
+    }
+    
+    /**
+     * Returns the number of entries rehashed into the new array.
+     * 
+     * @return the entries moved
+     */
+    int entriesMoved() {
+        return entriesMoved;
+    }
+    
+    /**
+     * Returns how long moving the entries took.
+     * 
+     * @return the duration in ns
+     */
+    long durationNanos() {
+        return durationNanos;
+    }
+    
+    public String toString() {
+        return String.format("%s %d -> %d, %d entries in %.3f ms", trigger, oldCapacity, newCapacity, entriesMoved,
+                durationNanos / 1e6);
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * RobinHoodHashtable.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+
+/**
+ * A linear-probing hash table that uses Robin Hood hashing.
+ * <p>
+ * Each slot remembers how far its entry is from its home slot (its distance). On insertion, an entry that has
+ * travelled further than the one in its way takes that slot, and the poorer entry moves on instead. This keeps the
+ * distances even, so the longest probe stays short even at high fullness. It also lets a lookup stop as soon as it
+ * reaches an entry that is closer to home than the lookup is, because the key would have been placed before it.
+ * Deletion shifts the rest of the cluster back by one, so no tombstones are needed.
+ * <p>
+ * The even distances only help if the home slots are spread evenly, so it indexes by {@link Indexing#POWER_OF_TWO} by
+ * default, which mixes the hash codes; with {@link Indexing#MODULO}, {@code Integer} keys, for instance, fill runs of
+ * consecutive slots. {@code MODULO} keeps the fullness exactly between the ratios, though, where rounding capacities
+ * up to powers of two leaves the table emptier.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class RobinHoodHashtable<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+    final static double DEF_MAX = 0.9;
+    final static double DEF_MIN = 0.25;
+    final static double DEF_SET = 0.5;
+    final static Indexing DEF_INDEXING = Indexing.POWER_OF_TWO;
+    
+    private static final int MIN_CAPACITY = 11; // The minimum size of the array; when smaller than this, no down-sizing
+                                                // will occur.
+    
+    private final int floor; // The capacity the table starts at, and never shrinks below
+    private ProbingHashtable.Entry<K, V>[] array; // The array holding all the key/value pairs
+    private int[] dists; // dists[i] is how far array[i] is from its home slot; only meaningful if array[i] != null
+    private int size; // The current number of elements.
+    private int capacity; // Current capacity of the array.
+    
+    private long totalDistance; // The sum of the distances of every entry
+    private int distanceBound; // No entry is further than this from home; may be larger than the real maximum
+    
+    private final double maxFullness; // determines how full the array can get before resizing occurs
+    private final double minFullness; // determines how empty the array can get before resizing occurs
+    private final double setFullness; // determines how full the array should be made when resizing
+    private final Indexing indexing; // how hashes become slots, and which capacities are used
+    
+    private ResizeListener listener; // null if no one's listening
+    
+    /**
+     * Constructs an empty {@code RobinHoodHashtable} with the specified {@code maximum}, {@code minimum}, and
+     * {@code set} fullness ratios
+     * 
+     * @param maximum the maximum fullness
+     * @param minimum the minimum fullness
+     * @param set the fullness when the array is resized.
+     * @param indexing how hashes are turned into slots
+     * @param expectedSize how many entries the table should hold without resizing; it never shrinks below this
+     * @throws IllegalArgumentException if {@code minimum} is less than or equal to zero or {@code set} is less or equal
+     *             to than {@code minimum} or {@code maximum} is less than or equal to {@code set} or {@code maximum} is
+     *             greater than one or {@code expectedSize} is negative.
+     */
+    public RobinHoodHashtable(double maximum, double minimum, double set, Indexing indexing, int expectedSize)
+            throws IllegalArgumentException {
+        if (0 >= minimum)
+            throw new IllegalArgumentException("Illegal minimum fullness: " + minimum);
+        if (minimum >= set)
+            throw new IllegalArgumentException("Minimum fullness is greater than or equal to set.");
+        if (set >= maximum)
+            throw new IllegalArgumentException("Set fullness is greater than or equal to maximum.");
+        if (maximum >= 1)
+            throw new IllegalArgumentException("Illegal maximum fullness: " + maximum);
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        
+        maxFullness = maximum;
+        minFullness = minimum;
+        setFullness = set;
+        this.indexing = indexing;
+        floor = indexing.capacity(Math.max(MIN_CAPACITY, (int) Math.ceil(expectedSize / set)));
+        
+        allocate(floor);
+    }
+    
+    public RobinHoodHashtable(double maximum, double minimum, double set, Indexing indexing)
+            throws IllegalArgumentException {
+        this(maximum, minimum, set, indexing, 0);
+    }
+    
+    public RobinHoodHashtable(double maximum, double minimum, double set) throws IllegalArgumentException {
+        this(maximum, minimum, set, DEF_INDEXING);
+    }
+    
+    public RobinHoodHashtable(double maximum, double minimum) throws IllegalArgumentException {
+        this(maximum, minimum, DEF_SET);
+    }
+    
+    /**
+     * Constructs an empty {@code RobinHoodHashtable} with the default fullness ratios that holds
+     * {@code expectedSize} entries without resizing.
+     * 
+     * @param expectedSize how many entries the table should hold without resizing; it never shrinks below this
+     * @throws IllegalArgumentException if {@code expectedSize} is negative
+     */
+    public RobinHoodHashtable(int expectedSize) throws IllegalArgumentException {
+        this(DEF_MAX, DEF_MIN, DEF_SET, DEF_INDEXING, expectedSize);
+    }
+    
+    public RobinHoodHashtable() {
+        this(DEF_MAX, DEF_MIN);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Returns the largest distance of any entry from its home slot; a hit never probes more than this many slots past
+     * its home. Scans the table.
+     * 
+     * @return the maximum probe length
+     */
+    public int maxProbeLength() {
+        int max = 0;
+        for (int i = 0; i < capacity; i++)
+            if (array[i] != null && dists[i] > max)
+                max = dists[i];
+        return max;
+    }
+    
+    /**
+     * Returns the mean distance of the entries from their home slots, or zero if the table is empty.
+     * 
+     * @return the mean probe length
+     */
+    public double meanProbeLength() {
+        return size == 0 ? 0.0 : (double) totalDistance / size;
+    }
+    
+    /**
+     * The home slot of the key, by the indexing strategy.
+     */
+    private int home(K key) {
+        return indexing.index(indexing.spread(key.hashCode()), capacity);
+    }
+    
+    /**
+     * Finds the slot holding {@code key}.
+     * 
+     * @param key the key to find
+     * @return the index of {@code key}, or -1 if it is not in the table
+     */
+    private int getIndex(K key) {
+        int i = home(key);
+        for (int d = 0; d <= distanceBound; d++) {
+            if (array[i] == null || dists[i] < d) // key would have displaced this entry
+                return -1;
+            if (key.equals(array[i].k))
+                return i;
+            i = ++i == capacity ? 0 : i;
+        }
+        return -1;
+    }
+    
+    public V get(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        int i = getIndex(key);
+        return i < 0 ? null : array[i].v;
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        return getIndex(key) >= 0;
+    }
+    
+    public boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        for (ProbingHashtable.Entry<K, V> p : array) {
+            if (p != null && value.equals(p.v))
+                return true;
+        }
+        
+        return false;
+    }
+    
+    public Set<K> getAllKeys() {
+        Set<K> set = new HashSet<K>(size);
+        for (ProbingHashtable.Entry<K, V> p : array)
+            if (p != null)
+                set.add(p.k);
+        return set;
+    }
+    
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (ProbingHashtable.Entry<K, V> p : array)
+            if (p != null)
+                visitor.visit(p.k, p.v);
+    }
+    
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new ProbingHashtable.EntryIterator<K, V>(array);
+    }
+    
+    public V put(K key, V val) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        // Look for the key, stopping where it would have been inserted.
+        int i = home(key);
+        int d = 0;
+        while (array[i] != null && dists[i] >= d) {
+            if (key.equals(array[i].k)) {
+                V previousValue = array[i].v;
+                array[i].v = val;
+                return previousValue;
+            }
+            i = ++i == capacity ? 0 : i;
+            d++;
+        }
+        
+        insert(new ProbingHashtable.Entry<K, V>(key, val), i, d);
+        size++;
+        resizeIfNeeded();
+        return null;
+    }
+    
+    /**
+     * Places an entry that is not in the table, starting at slot {@code i}, which is {@code d} from its home, and
+     * displacing richer entries along the way.
+     * 
+     * @param p the entry to place
+     * @param i the slot to start at
+     * @param d the distance of {@code i} from {@code p}'s home
+     */
+    private void insert(ProbingHashtable.Entry<K, V> p, int i, int d) {
+        while (true) {
+            if (array[i] == null) {
+                place(p, i, d);
+                return;
+            }
+            if (dists[i] < d) { // Take from the rich; carry on with the displaced entry.
+                ProbingHashtable.Entry<K, V> q = array[i];
+                int qd = dists[i];
+                totalDistance -= qd;
+                place(p, i, d);
+                p = q;
+                d = qd;
+            }
+            i = ++i == capacity ? 0 : i;
+            d++;
+        }
+    }
+    
+    private void place(ProbingHashtable.Entry<K, V> p, int i, int d) {
+        array[i] = p;
+        dists[i] = d;
+        totalDistance += d;
+        if (d > distanceBound)
+            distanceBound = d;
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        
+        int i = getIndex(key);
+        if (i < 0)
+            return null;
+        
+        V value = array[i].v;
+        totalDistance -= dists[i];
+        
+        // Shift the rest of the cluster back by one, until an empty slot or an entry that is already home.
+        int j = i + 1 == capacity ? 0 : i + 1;
+        while (array[j] != null && dists[j] > 0) {
+            array[i] = array[j];
+            dists[i] = dists[j] - 1;
+            totalDistance--;
+            i = j;
+            j = ++j == capacity ? 0 : j;
+        }
+        array[i] = null;
+        
+        size--;
+        resizeIfNeeded();
+        return value;
+    }
+    
+    public void clear() {
+        if (capacity == floor)
+            Arrays.fill(array, null);
+        else
+            allocate(floor); // An emptied array would shrink to this anyway.
+        size = 0;
+        totalDistance = 0;
+        distanceBound = 0;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void allocate(int newCapacity) {
+        array = (ProbingHashtable.Entry<K, V>[]) new ProbingHashtable.Entry[newCapacity];
+        dists = new int[newCapacity];
+        capacity = newCapacity;
+        size = 0;
+        totalDistance = 0;
+        distanceBound = 0;
+    }
+    
+    /**
+     * Sets the listener told of every resize from now on, replacing any before it.
+     * 
+     * @param listener is told of each resize, or {@code null} to stop telling anyone
+     */
+    public void setResizeListener(ResizeListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Resizes the array and copies over the elements if the size is out of bounds.
+     * 
+     */
+    private void resizeIfNeeded() {
+        if (!((size < capacity * minFullness && capacity > floor) || size > capacity * maxFullness)) {
+            return;
+        }
+        
+        int newCapacity = indexing.capacity(Math.max(floor, (int) Math.ceil(size / setFullness)));
+        if (newCapacity == capacity) // Rounding up to a power of two can land back on the current capacity.
+            return;
+        
+        long start = listener == null ? 0 : System.nanoTime();
+        ProbingHashtable.Entry<K, V>[] oldArray = array;
+        int oldSize = size;
+        allocate(newCapacity);
+        
+        for (ProbingHashtable.Entry<K, V> p : oldArray)
+            if (p != null)
+                insert(p, home(p.k), 0);
+        size = oldSize;
+        
+        if (listener != null)
+            listener.resized(new ResizeEvent(this, oldArray.length, capacity, size, System.nanoTime() - start));
+    }
+    
+    public String toString() {
+        String name = indexing == DEF_INDEXING ? "Robin Hood Hashtable" : "Robin Hood Hashtable, modulo indexing";
+        if (setFullness == DEF_SET && maxFullness == DEF_MAX && minFullness == DEF_MIN)
+            return name;
+        else if (setFullness == DEF_SET)
+            return String.format("%s (%.2f, %.2f)", name, maxFullness, minFullness);
+        else
+            return String.format("%s (%.2f, %.2f, %.2f)", name, maxFullness, minFullness, setFullness);
+    }
+}
+
+class RobinHoodHashtableSupplier implements SizedDictionarySupplier {
+    private final double max;
+    private final double min;
+    private final double set;
+    private final Indexing indexing;
+    private final int expectedSize;
+    
+    /**
+     * Constructs empty {@code RobinHoodHashtable}'s with the specified {@code maximum}, {@code minimum}, and
+     * {@code set} fullness ratios
+     * 
+     * @param maximum the maximum fullness
+     * @param minimum the minimum fullness
+     * @param setFullness the fullness when the arrays are resized
+     * @param indexingMode how hashes are turned into slots
+     * @param expectedSize how many entries the tables hold before their first resize
+     * 
+     * @see RobinHoodHashtable
+     */
+    public RobinHoodHashtableSupplier(double maximum, double minimum, double setFullness, Indexing indexingMode,
+            int expectedSize) {
+        max = maximum;
+        min = minimum;
+        set = setFullness;
+        indexing = indexingMode;
+        this.expectedSize = expectedSize;
+    }
+    
+    public RobinHoodHashtableSupplier(double maximum, double minimum, double setFullness, Indexing indexingMode) {
+        this(maximum, minimum, setFullness, indexingMode, 0);
+    }
+    
+    public RobinHoodHashtableSupplier(double maximum, double minimum, double setFullness) {
+        this(maximum, minimum, setFullness, RobinHoodHashtable.DEF_INDEXING);
+    }
+    
+    public RobinHoodHashtableSupplier(double maximum, double minimum) {
+        this(maximum, minimum, RobinHoodHashtable.DEF_SET);
+    }
+    
+    public RobinHoodHashtableSupplier(int expectedSize) {
+        this(RobinHoodHashtable.DEF_MAX, RobinHoodHashtable.DEF_MIN, RobinHoodHashtable.DEF_SET,
+                RobinHoodHashtable.DEF_INDEXING, expectedSize);
+    }
+    
+    public RobinHoodHashtableSupplier() {
+        this(RobinHoodHashtable.DEF_MAX, RobinHoodHashtable.DEF_MIN);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return getNew(expectedSize);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew(int expectedSize) {
+        return new RobinHoodHashtable<K, V>(max, min, set, indexing, expectedSize);
+    }
+    
+    public String toString() {
+        String name = indexing == RobinHoodHashtable.DEF_INDEXING ? "RHT" : "RHT-MOD";
+        if (expectedSize != 0)
+            name += "[" + expectedSize + "]";
+        if (max == RobinHoodHashtable.DEF_MAX && min == RobinHoodHashtable.DEF_MIN && set == RobinHoodHashtable.DEF_SET)
+            return name;
+        else if (set == RobinHoodHashtable.DEF_SET)
+            return String.format("%s(%d/%d)", name, Math.round(max * 100), Math.round(min * 100));
+        else
+            return String.format("%s(%d/%d/%d)", name, Math.round(max * 100), Math.round(min * 100),
+                    Math.round(set * 100));
+    }
+}
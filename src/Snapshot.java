@@ -0,0 +1,329 @@
+/*
+ * Snapshot.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ConcurrentModificationException;
+
+/**
+ * Saves the entries of any dictionary to a channel, and loads them back.
+ * <p>
+ * A snapshot is a header, the entries, and a trailer. The header holds a magic number, the format version, the number
+ * of entries, and the names of the key and value codecs; each entry is its key and then its value, as their codecs
+ * write them; the trailer repeats the magic number, so a truncated snapshot fails to load instead of loading short.
+ * Everything goes through a 1 MB direct buffer, so the channel sees large writes and reads and nothing is copied
+ * through the heap on the way.
+ * <p>
+ * Loading into a {@link SizedDictionarySupplier} sizes the new dictionary for the entry count in the header, so it
+ * doesn't resize while it fills. A snapshot of a dictionary that changes while it's being saved is refused.
+ * 
+ * @author Jackson Scholl
+ */
+public final class Snapshot {
+    static final int BUFFER_SIZE = 1 << 20;
+    
+    private static final int MAGIC = 0x44534e50; // "DSNP"
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private Snapshot() {}
+    
+    /**
+     * Writes a snapshot of {@code dict} to {@code out}.
+     * 
+     * @param dict the dictionary to save
+     * @param keyCodec writes the keys
+     * @param valueCodec writes the values
+     * @param out where to write it
+     * @return the number of bytes written
+     * @throws IOException if the channel fails
+     * @throws IllegalArgumentException if a codec can't write one of the entries, or an entry doesn't fit in the buffer
+     * @throws ConcurrentModificationException if the dictionary changes size while it's saved
+     */
+    public static <K extends Comparable<K>, V> long save(Dictionary<K, V> dict, Codec<K> keyCodec, Codec<V> valueCodec,
+            WritableByteChannel out) throws IOException, IllegalArgumentException, ConcurrentModificationException {
+        Writer<K, V> writer = new Writer<K, V>(keyCodec, valueCodec, out);
+        long count = dict.size();
+        ByteBuffer buf = writer.buf;
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(count);
+        putName(buf, keyCodec);
+        putName(buf, valueCodec);
+        
+        try {
+            dict.forEach(writer);
+        } catch (WriteFailed e) {
+            throw e.cause;
+        }
+        if (writer.count != count)
+            throw new ConcurrentModificationException("Dictionary changed size while it was saved");
+        
+        if (buf.remaining() < 4)
+            writer.drain();
+        buf.putInt(MAGIC);
+        writer.drain();
+        return writer.written;
+    }
+    
+    /**
+     * Writes a snapshot of {@code dict} to {@code file}. It's written next to the file and renamed over it once it's on
+     * disk, so the file holds either the old snapshot or the new one.
+     * 
+     * @return the number of bytes written
+     * @see #save(Dictionary, Codec, Codec, WritableByteChannel)
+     */
+    public static <K extends Comparable<K>, V> long save(Dictionary<K, V> dict, Codec<K> keyCodec, Codec<V> valueCodec,
+            File file) throws IOException, IllegalArgumentException, ConcurrentModificationException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        long written;
+        try {
+            FileChannel ch = out.getChannel();
+            written = save(dict, keyCodec, valueCodec, ch);
+            ch.force(true);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete(); // Some systems won't rename over an existing file.
+            if (!tmp.renameTo(file))
+                throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+        return written;
+    }
+    
+    /**
+     * Reads a snapshot into a new dictionary from {@code supplier}, sized for the snapshot if the supplier can be.
+     * 
+     * @param in where to read it
+     * @param keyCodec reads the keys
+     * @param valueCodec reads the values
+     * @param supplier makes the dictionary
+     * @return the dictionary
+     * @throws IOException if the channel fails, or it holds something other than a whole snapshot written with these
+     *             codecs
+     */
+    public static <K extends Comparable<K>, V> Dictionary<K, V> load(ReadableByteChannel in, Codec<K> keyCodec,
+            Codec<V> valueCodec, DictionarySupplier supplier) throws IOException {
+        Reader reader = new Reader(in);
+        long count = readHeader(reader, keyCodec, valueCodec);
+        Dictionary<K, V> dict;
+        if (supplier instanceof SizedDictionarySupplier && count <= Integer.MAX_VALUE)
+            dict = ((SizedDictionarySupplier) supplier).getNew((int) count);
+        else
+            dict = supplier.getNew();
+        readEntries(reader, count, keyCodec, valueCodec, dict);
+        return dict;
+    }
+    
+    /**
+     * Reads a snapshot into {@code dict}, on top of what's already there.
+     * 
+     * @param dict the dictionary to put the entries in
+     * @see #load(ReadableByteChannel, Codec, Codec, DictionarySupplier)
+     */
+    public static <K extends Comparable<K>, V> void load(ReadableByteChannel in, Codec<K> keyCodec,
+            Codec<V> valueCodec, Dictionary<K, V> dict) throws IOException {
+        Reader reader = new Reader(in);
+        long count = readHeader(reader, keyCodec, valueCodec);
+        readEntries(reader, count, keyCodec, valueCodec, dict);
+    }
+    
+    /**
+     * Reads a snapshot from {@code file}.
+     * 
+     * @see #load(ReadableByteChannel, Codec, Codec, DictionarySupplier)
+     */
+    public static <K extends Comparable<K>, V> Dictionary<K, V> load(File file, Codec<K> keyCodec,
+            Codec<V> valueCodec, DictionarySupplier supplier) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return load(in.getChannel(), keyCodec, valueCodec, supplier);
+        } finally {
+            in.close();
+        }
+    }
+    
+    private static void putName(ByteBuffer buf, Codec<?> codec) {
+        byte[] name = codec.toString().getBytes(UTF_8);
+        buf.putShort((short) name.length);
+        buf.put(name);
+    }
+    
+    private static String getName(Reader reader) throws IOException {
+        reader.need(2);
+        byte[] name = new byte[reader.buf.getShort() & 0xffff];
+        reader.need(name.length);
+        reader.buf.get(name);
+        return new String(name, UTF_8);
+    }
+    
+    /**
+     * Reads and checks the header.
+     * 
+     * @return the number of entries
+     */
+    private static long readHeader(Reader reader, Codec<?> keyCodec, Codec<?> valueCodec) throws IOException {
+        reader.need(16);
+        ByteBuffer buf = reader.buf;
+        if (buf.getInt() != MAGIC)
+            throw new IOException("Not a snapshot");
+        int version = buf.getInt();
+        if (version != VERSION)
+            throw new IOException("Unknown snapshot version " + version);
+        long count = buf.getLong();
+        if (count < 0)
+            throw new IOException("Illegal entry count " + count);
+        
+        String keyName = getName(reader);
+        String valueName = getName(reader);
+        if (!keyName.equals(keyCodec.toString()) || !valueName.equals(valueCodec.toString()))
+            throw new IOException(String.format("Snapshot was written with codecs %s and %s, not %s and %s", keyName,
+                    valueName, keyCodec, valueCodec));
+        return count;
+    }
+    
+    private static <K extends Comparable<K>, V> void readEntries(Reader reader, long count, Codec<K> keyCodec,
+            Codec<V> valueCodec, Dictionary<K, V> dict) throws IOException {
+        ByteBuffer buf = reader.buf;
+        int width = keyCodec.width() == Codec.VARIABLE || valueCodec.width() == Codec.VARIABLE ? Codec.VARIABLE
+                : keyCodec.width() + valueCodec.width();
+        
+        for (long i = 0; i < count; i++) {
+            if (width != Codec.VARIABLE) {
+                if (buf.remaining() < width)
+                    reader.need(width);
+                dict.put(keyCodec.decode(buf), valueCodec.decode(buf));
+                continue;
+            }
+            
+            // Try to read the entry; if it runs off the end of the buffer, read more and try again.
+            while (true) {
+                int start = buf.position();
+                try {
+                    K key = keyCodec.decode(buf);
+                    V value = valueCodec.decode(buf);
+                    dict.put(key, value);
+                    break;
+                } catch (BufferUnderflowException e) {
+                    buf.position(start);
+                    reader.more();
+                }
+            }
+        }
+        
+        reader.need(4);
+        if (buf.getInt() != MAGIC)
+            throw new IOException("Snapshot has more entries than its header says");
+    }
+    
+    /**
+     * Encodes entries into the buffer, writing it to the channel whenever it fills.
+     */
+    private static class Writer<K, V> implements EntryVisitor<K, V> {
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+        private final WritableByteChannel out;
+        long count; // entries written
+        long written; // bytes written
+        
+        Writer(Codec<K> keyCodec, Codec<V> valueCodec, WritableByteChannel out) {
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+            this.out = out;
+        }
+        
+        public void visit(K key, V value) {
+            int start = buf.position();
+            try {
+                keyCodec.encode(key, buf);
+                valueCodec.encode(value, buf);
+            } catch (BufferOverflowException e) {
+                buf.position(start);
+                try {
+                    drain();
+                } catch (IOException io) {
+                    throw new WriteFailed(io);
+                }
+                try {
+                    keyCodec.encode(key, buf);
+                    valueCodec.encode(value, buf);
+                } catch (BufferOverflowException again) {
+                    throw new IllegalArgumentException("Entry too large for a snapshot: " + key);
+                }
+            }
+            count++;
+        }
+        
+        void drain() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining())
+                written += out.write(buf);
+            buf.clear();
+        }
+    }
+    
+    /**
+     * Carries an {@code IOException} out of {@code forEach}, which can't throw one.
+     */
+    private static class WriteFailed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final IOException cause;
+        
+        WriteFailed(IOException cause) {
+            super(cause);
+            this.cause = cause;
+        }
+    }
+    
+    /**
+     * A buffer that's refilled from the channel as it's read.
+     */
+    private static class Reader {
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ReadableByteChannel in;
+        
+        Reader(ReadableByteChannel in) {
+            this.in = in;
+            buf.flip(); // Start empty.
+        }
+        
+        /**
+         * Reads until at least {@code n} bytes are buffered.
+         */
+        void need(int n) throws IOException {
+            while (buf.remaining() < n)
+                more();
+        }
+        
+        /**
+         * Reads more bytes after those still buffered.
+         * 
+         * @throws EOFException if the channel has ended
+         * @throws IOException if the buffer is already full, so one entry is larger than it
+         */
+        void more() throws IOException {
+            if (buf.position() == 0 && buf.limit() == buf.capacity())
+                throw new IOException("Snapshot entry larger than the buffer");
+            buf.compact();
+            int n;
+            do {
+                n = in.read(buf);
+            } while (n == 0);
+            buf.flip();
+            if (n < 0)
+                throw new EOFException("Snapshot is truncated");
+        }
+    }
+}
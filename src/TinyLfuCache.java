@@ -0,0 +1,459 @@
+/*
+ * TinyLfuCache.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+
+/**
+ * A dictionary that holds at most a fixed number of entries, choosing what to evict by how often keys are used as well
+ * as how recently: the W-TinyLFU policy.
+ * <p>
+ * New entries go into a small window, an LRU list of 1% of the capacity, so a burst of uses of a new key can hit.
+ * Entries pushed out of the window are candidates for the main region, which is a segmented LRU: entries start out on
+ * probation, and one that's used again is protected, up to 80% of the main region, beyond which the least recently
+ * used protected entry goes back on probation. When the cache is full, a candidate is let in only if its key has been
+ * used more often than the key of the entry it would push out, the least recently used on probation; otherwise the
+ * candidate is evicted instead. So a scan of keys used once can only churn the window and never pushes out the keys
+ * that are used all the time, which is what a plain {@link LRUCache} does.
+ * <p>
+ * How often keys have been used is estimated by a {@link FrequencySketch}, in a few bits per entry of capacity, which
+ * remembers keys that aren't in the cache too. Every {@code put} counts as a use, and so does every {@code get} that
+ * hits; a miss doesn't, since it's usually followed by the {@code put} that fills it. The counts are halved now and
+ * then, so that keys that were popular once don't stay in the cache forever.
+ * <p>
+ * Like {@link LRUCache}, the index from keys to entries comes from any supplier, and it isn't thread-safe.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class TinyLfuCache<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+    final static double WINDOW_SHARE = 0.01;
+    final static double PROTECTED_SHARE = 0.8;
+    
+    private final static byte WINDOW = 0;
+    private final static byte PROBATION = 1;
+    private final static byte PROTECTED = 2;
+    
+    private final int capacity;
+    private final int windowMax;
+    private final int protectedMax;
+    private final Dictionary<K, CacheNode<K, V>> index;
+    private final FrequencySketch sketch;
+    private final EvictionListener<? super K, ? super V> listener; // null if no one's listening
+    
+    // Each most recently used first.
+    private final CacheList<K, V> window = new CacheList<K, V>();
+    private final CacheList<K, V> probation = new CacheList<K, V>();
+    private final CacheList<K, V> protectedList = new CacheList<K, V>();
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Makes an empty cache.
+     * 
+     * @param capacity the most entries it holds
+     * @param indexSupplier makes the dictionary that finds the entries by key
+     * @param listener is told of every entry evicted, or {@code null}
+     * @throws IllegalArgumentException if {@code capacity} isn't positive
+     */
+    public TinyLfuCache(int capacity, DictionarySupplier indexSupplier, EvictionListener<? super K, ? super V> listener)
+            throws IllegalArgumentException {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        
+        this.capacity = capacity;
+        this.listener = listener;
+        windowMax = Math.max(1, (int) (capacity * WINDOW_SHARE));
+        protectedMax = (int) ((capacity - windowMax) * PROTECTED_SHARE);
+        index = LRUCache.newIndex(indexSupplier, capacity);
+        sketch = new FrequencySketch(capacity);
+    }
+    
+    public TinyLfuCache(int capacity, DictionarySupplier indexSupplier) throws IllegalArgumentException {
+        this(capacity, indexSupplier, null);
+    }
+    
+    public TinyLfuCache(int capacity) throws IllegalArgumentException {
+        this(capacity, LRUCache.DEF_INDEX);
+    }
+    
+    public int size() {
+        return index.size();
+    }
+    
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+    
+    /**
+     * Returns the most entries the cache holds.
+     * 
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+    
+    /**
+     * Looks up the value and, if it's there, counts a use of the key.
+     */
+    public V get(K key) throws NullPointerException {
+        CacheNode<K, V> n = index.get(key);
+        if (n == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        sketch.increment(key);
+        touch(n);
+        return n.value;
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        return index.containsKey(key);
+    }
+    
+    public boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        for (CacheNode<K, V> n = first(WINDOW); n != null; n = after(n))
+            if (value.equals(n.value))
+                return true;
+        return false;
+    }
+    
+    public Set<K> getAllKeys() {
+        Set<K> keys = new HashSet<K>(index.size());
+        for (CacheNode<K, V> n = first(WINDOW); n != null; n = after(n))
+            keys.add(n.key);
+        return keys;
+    }
+    
+    /**
+     * Visits the entries of the window, then those on probation, then the protected ones, each from the most recently
+     * used to the least.
+     */
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        for (CacheNode<K, V> n = first(WINDOW); n != null; n = after(n))
+            visitor.visit(n.key, n.value);
+    }
+    
+    /**
+     * Iterates over the entries in the same order as {@link #forEach(EntryVisitor)}.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+            private CacheNode<K, V> next = first(WINDOW);
+            
+            public boolean hasNext() {
+                return next != null;
+            }
+            
+            public Map.Entry<K, V> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                CacheNode<K, V> n = next;
+                next = after(n);
+                return n;
+            }
+            
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    /**
+     * Puts the mapping, counting a use of the key. A new entry goes into the window, which may push a candidate into
+     * the main region and so evict either the candidate or the entry it competes with.
+     */
+    public V put(K key, V val) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("Key is not allowed to be null");
+        if (val == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        
+        sketch.increment(key);
+        CacheNode<K, V> n = index.get(key);
+        if (n != null) {
+            V previousValue = n.value;
+            n.value = val;
+            touch(n);
+            return previousValue;
+        }
+        
+        n = new CacheNode<K, V>(key, val);
+        n.queue = WINDOW;
+        index.put(key, n);
+        window.addFirst(n);
+        if (window.size() > windowMax) {
+            CacheNode<K, V> candidate = window.last();
+            move(candidate, PROBATION);
+            // The main region only grows by taking candidates, so this is the only way to go over capacity.
+            if (index.size() > capacity)
+                admit(candidate);
+        }
+        return null;
+    }
+    
+    /**
+     * Evicts either the candidate, just off the window, or the entry it would push out of the main region, whichever
+     * key has been used less.
+     */
+    private void admit(CacheNode<K, V> candidate) {
+        CacheNode<K, V> victim = probation.last();
+        if (victim == candidate) // Nothing else on probation.
+            victim = protectedList.last();
+        
+        if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key))
+            evict(candidate);
+        else
+            evict(victim);
+    }
+    
+    /**
+     * Records a use of an entry in the cache.
+     */
+    private void touch(CacheNode<K, V> n) {
+        if (n.queue == PROBATION) {
+            move(n, PROTECTED);
+            if (protectedList.size() > protectedMax)
+                move(protectedList.last(), PROBATION);
+        } else {
+            list(n.queue).moveToFront(n);
+        }
+    }
+    
+    /**
+     * Moves a node to the front of another list.
+     */
+    private void move(CacheNode<K, V> n, byte queue) {
+        list(n.queue).remove(n);
+        n.queue = queue;
+        list(queue).addFirst(n);
+    }
+    
+    private void evict(CacheNode<K, V> n) {
+        index.delete(n.key);
+        list(n.queue).remove(n);
+        evictions++;
+        if (listener != null)
+            listener.evicted(n.key, n.value);
+    }
+    
+    private CacheList<K, V> list(int queue) {
+        switch (queue) {
+        case WINDOW:
+            return window;
+        case PROBATION:
+            return probation;
+        default:
+            return protectedList;
+        }
+    }
+    
+    /**
+     * Returns the first node of the given list or the ones after it, or {@code null} if they're all empty.
+     */
+    private CacheNode<K, V> first(int queue) {
+        for (int q = queue; q <= PROTECTED; q++) {
+            CacheNode<K, V> n = list(q).first();
+            if (n != null)
+                return n;
+        }
+        return null;
+    }
+    
+    private CacheNode<K, V> after(CacheNode<K, V> n) {
+        CacheNode<K, V> next = list(n.queue).after(n);
+        return next != null ? next : first(n.queue + 1);
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        CacheNode<K, V> n = index.delete(key);
+        if (n == null)
+            return null;
+        list(n.queue).remove(n);
+        return n.value;
+    }
+    
+    /**
+     * Empties the cache without telling the listener; the counts, and how often keys have been used, are kept.
+     */
+    public void clear() {
+        index.clear();
+        window.clear();
+        probation.clear();
+        protectedList.clear();
+    }
+    
+    /**
+     * Returns the number of {@code get}s that found their key.
+     * 
+     * @return the hit count
+     */
+    public long hits() {
+        return hits;
+    }
+    
+    /**
+     * Returns the number of {@code get}s that didn't find their key.
+     * 
+     * @return the miss count
+     */
+    public long misses() {
+        return misses;
+    }
+    
+    /**
+     * Returns the number of entries evicted to make room, including candidates that weren't let in.
+     * 
+     * @return the eviction count
+     */
+    public long evictions() {
+        return evictions;
+    }
+    
+    /**
+     * Returns the fraction of {@code get}s that found their key, or zero if there haven't been any.
+     * 
+     * @return the hit ratio
+     */
+    public double hitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+    
+    public String toString() {
+        return String.format("W-TinyLFU Cache (%d)", capacity);
+    }
+}
+
+/**
+ * Estimates how often keys have been used: a count-min sketch of four-bit counters, eight bytes of them per key it's
+ * sized for.
+ * <p>
+ * Each key has a counter in each of four rows, picked by a different hash, and its estimate is the smallest of them;
+ * collisions can only make an estimate too high, and taking the smallest undoes most of that. Incrementing only the
+ * counters that hold the smallest count keeps the others from growing on collisions too. Counters stop at 15, which is
+ * plenty for comparing keys, and once there have been ten increments per key every counter is halved, so the estimates
+ * follow what's popular now.
+ */
+class FrequencySketch {
+    static final int MAX_COUNT = 15;
+    
+    private static final int DEPTH = 4;
+    private static final int MAX_WIDTH = 1 << 24;
+    private static final long[] SEEDS = new long[] { 0x97cb3127c3a5c85cL, 0xbe98f273b492b66fL, 0x2f90404f9ae16a3bL,
+            0x84222325cbf29ce4L };
+    
+    private final long[] table; // sixteen counters to a long, row after row
+    private final int width; // counters per row, a power of two, four per key
+    private final int sampleSize; // increments between halvings
+    private int additions;
+    
+    /**
+     * @param capacity roughly how many keys are to be told apart
+     */
+    FrequencySketch(int capacity) {
+        int w = 16;
+        while (w < capacity && w < MAX_WIDTH)
+            w <<= 1;
+        width = 4 * w;
+        table = new long[DEPTH * width / 16];
+        sampleSize = 10 * w;
+    }
+    
+    /**
+     * Returns the estimated number of uses of {@code key}, up to {@link #MAX_COUNT}.
+     */
+    int frequency(Object key) {
+        int h = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++)
+            min = Math.min(min, count(index(h, row)));
+        return min;
+    }
+    
+    /**
+     * Counts a use of {@code key}.
+     */
+    void increment(Object key) {
+        int h = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++)
+            min = Math.min(min, count(index(h, row)));
+        if (min == MAX_COUNT)
+            return;
+        
+        for (int row = 0; row < DEPTH; row++) {
+            int i = index(h, row);
+            if (count(i) == min)
+                table[i >>> 4] += 1L << ((i & 15) << 2);
+        }
+        if (++additions >= sampleSize)
+            age();
+    }
+    
+    /**
+     * Halves every counter.
+     */
+    private void age() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+        additions /= 2;
+    }
+    
+    private int count(int i) {
+        return (int) (table[i >>> 4] >>> ((i & 15) << 2)) & 0xf;
+    }
+    
+    private int index(int h, int row) {
+        long x = (h + SEEDS[row]) * SEEDS[row];
+        x += x >>> 32;
+        return row * width + ((int) x & (width - 1));
+    }
+    
+    private static int spread(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
+
+class TinyLfuCacheSupplier implements DictionarySupplier {
+    private final int capacity;
+    private final DictionarySupplier indexSupplier;
+    
+    /**
+     * Constructs empty {@code TinyLfuCache}'s.
+     * 
+     * @param capacity the most entries each holds
+     * @param indexSupplier makes the dictionaries that find the entries by key
+     * 
+     * @see TinyLfuCache
+     */
+    public TinyLfuCacheSupplier(int capacity, DictionarySupplier indexSupplier) {
+        this.capacity = capacity;
+        this.indexSupplier = indexSupplier;
+    }
+    
+    public TinyLfuCacheSupplier(int capacity) {
+        this(capacity, LRUCache.DEF_INDEX);
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return new TinyLfuCache<K, V>(capacity, indexSupplier);
+    }
+    
+    public String toString() {
+        if (indexSupplier == LRUCache.DEF_INDEX)
+            return String.format("TLFU[%d]", capacity);
+        return String.format("TLFU[%d]:%s", capacity, indexSupplier);
+    }
+}
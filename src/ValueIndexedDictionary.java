@@ -0,0 +1,172 @@
+/*
+ * ValueIndexedDictionary.java
+ * 
+ * Copyright (c) 2013 Jackson Scholl.
+ */
+
+import java.util.*;
+
+/**
+ * A dictionary that keeps count of how many keys map to each value, so {@code containsValue} is a hash lookup instead
+ * of a scan.
+ * <p>
+ * It wraps another dictionary, which stores the mappings and answers everything else. Every {@code put} and
+ * {@code delete} also updates the count of the old and new values, which costs a hash lookup or two, and the index
+ * takes a {@link HashMap} entry and a counter for each distinct value. It isn't thread-safe, even around a thread-safe
+ * dictionary.
+ * 
+ * @author Jackson Scholl
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ValueIndexedDictionary<K extends Comparable<K>, V> extends AbstractDictionary<K, V> {
+    private final Dictionary<K, V> dict;
+    private final Map<V, Count> counts; // how many keys map to each value; values no key maps to are left out
+    
+    /**
+     * Indexes the values of the given dictionary, which from then on must only be changed through this one.
+     * 
+     * @param dictionary the dictionary to wrap
+     */
+    public ValueIndexedDictionary(Dictionary<K, V> dictionary) {
+        dict = dictionary;
+        counts = new HashMap<V, Count>();
+        dict.forEach(new EntryVisitor<K, V>() {
+            public void visit(K key, V value) {
+                add(value);
+            }
+        });
+    }
+    
+    public int size() {
+        return dict.size();
+    }
+    
+    public boolean isEmpty() {
+        return dict.isEmpty();
+    }
+    
+    public V get(K key) throws NullPointerException {
+        return dict.get(key);
+    }
+    
+    public boolean containsKey(K key) throws NullPointerException {
+        return dict.containsKey(key);
+    }
+    
+    public boolean containsValue(V value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Value is not allowed to be null");
+        return counts.containsKey(value);
+    }
+    
+    public Set<K> getAllKeys() {
+        return dict.getAllKeys();
+    }
+    
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        dict.forEach(visitor);
+    }
+    
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return dict.iterator();
+    }
+    
+    public V put(K key, V value) throws NullPointerException {
+        V previousValue = dict.put(key, value);
+        if (previousValue != null)
+            remove(previousValue);
+        add(value);
+        return previousValue;
+    }
+    
+    public V delete(K key) throws NullPointerException {
+        V previousValue = dict.delete(key);
+        if (previousValue != null)
+            remove(previousValue);
+        return previousValue;
+    }
+    
+    /**
+     * Looks up the values being replaced first, so that the wrapped dictionary still gets the whole batch at once.
+     */
+    public void putAll(Map<? extends K, ? extends V> m) throws NullPointerException {
+        checkEntries(m);
+        Map<K, V> replaced = dict.getAll(m.keySet());
+        dict.putAll(m);
+        for (V value : replaced.values())
+            remove(value);
+        for (V value : m.values())
+            add(value);
+    }
+    
+    public Map<K, V> getAll(Collection<? extends K> keys) throws NullPointerException {
+        return dict.getAll(keys);
+    }
+    
+    /**
+     * Looks up the values being deleted first, so that the wrapped dictionary still gets the whole batch at once.
+     */
+    public int deleteAll(Collection<? extends K> keys) throws NullPointerException {
+        checkKeys(keys);
+        Map<K, V> deleted = dict.getAll(keys);
+        int n = dict.deleteAll(keys);
+        for (V value : deleted.values())
+            remove(value);
+        return n;
+    }
+    
+    public void clear() {
+        dict.clear();
+        counts.clear();
+    }
+    
+    private void add(V value) {
+        Count c = counts.get(value);
+        if (c == null)
+            counts.put(value, new Count());
+        else
+            c.n++;
+    }
+    
+    private void remove(V value) {
+        Count c = counts.get(value);
+        if (--c.n == 0)
+            counts.remove(value);
+    }
+    
+    public String toString() {
+        return String.format("Value-indexed %s", dict);
+    }
+    
+    /**
+     * A mutable count, so that counting doesn't box a new {@code Integer} each time.
+     */
+    private static class Count {
+        int n = 1;
+    }
+}
+
+class ValueIndexedSupplier implements DictionarySupplier {
+    private final DictionarySupplier supplier;
+    
+    /**
+     * Constructs empty {@code ValueIndexedDictionary}'s around the dictionaries of the given supplier.
+     * 
+     * @param delegateSupplier makes the dictionaries that hold the mappings
+     * 
+     * @see ValueIndexedDictionary
+     */
+    public ValueIndexedSupplier(DictionarySupplier delegateSupplier) {
+        supplier = delegateSupplier;
+    }
+    
+    public <K extends Comparable<K>, V> Dictionary<K, V> getNew() {
+        return new ValueIndexedDictionary<K, V>(supplier.<K, V> getNew());
+    }
+    
+    public String toString() {
+        return "VI:" + supplier;
+    }
+}